@@ -3,38 +3,165 @@ package com.academicprogram;
 import org.zeromq.SocketType;
 import org.zeromq.ZContext;
 import org.zeromq.ZMQ;
+import org.zeromq.ZMQ.Poller;
 import java.io.FileWriter;
 import java.io.IOException;
 
 public class AcademicProgram {
+    // Time budget for the reply (-Dsolicitud.plazoMs, 0 = wait forever). It travels as an absolute
+    // deadline so every hop can drop the request once nobody is waiting for it. Allocations only get
+    // one when the property is set: the server may hold them until the semester-opening cutoff.
+    private static final boolean PLAZO_EXPLICITO = System.getProperty("solicitud.plazoMs") != null;
+    private static final long PLAZO_MS = Long.getLong("solicitud.plazoMs", 30_000);
+    // Asynchronous allocation (-Dsolicitud.asincrona=true): the DepartmentSchool answers "Aceptada" right
+    // away and the result is pushed by the servers' result publishers (-Dresultados.direcciones, PUB
+    // address; catch-up is served on the next port). With -Dresultados.esperar=false it only submits.
+    private static final boolean ASINCRONA = Boolean.getBoolean("solicitud.asincrona");
+    private static final boolean ESPERAR_RESULTADO =
+            Boolean.parseBoolean(System.getProperty("resultados.esperar", "true"));
+    private static final String[] RESULTADOS =
+            System.getProperty("resultados.direcciones", "tcp://localhost:5557").split(",");
+    // A request the server put on its waitlist ("requestId,Resultado: EnEspera,faculty/program/") gets
+    // its final result on the same topic; it is waited for up to -Despera.plazoMs, which should match
+    // the server's -Despera.maximaMs
+    private static final long ESPERA_MS = Long.getLong("espera.plazoMs", 600_000);
+    // Room attributes every room of an allocation must have (-Dsolicitud.requisitos), e.g.
+    // "capacidad=40;edificio=B;equipo=proyector+pc"; the server picks the smallest free rooms that fit
+    private static final String REQUISITOS = System.getProperty("solicitud.requisitos", "");
+    // How often missed results are requested again while waiting
+    private static final long RECUPERACION_MS = 1000;
+
     public static void main(String[] args) {
-        if (args.length != 6) {
-            System.err.println("Usage: AcademicProgram <programName> <semester> <numClassrooms> <numLabs> <facultyIp> <facultyPort>");
-            System.exit(1);
+        String programName;
+        String semester;
+        String request;
+        String facultyIp;
+        int facultyPort;
+        boolean asincrona = false;
+        long plazoMs = PLAZO_MS;
+
+        try {
+            if (args.length == 7 && "LIBERAR".equals(args[0])) {
+                // Return rooms held by the program: "LIBERAR,programName,semester,numClassrooms,numLabs"
+                programName = args[1];
+                semester = args[2];
+                request = String.join(",", "LIBERAR", programName, semester,
+                                      String.valueOf(Integer.parseInt(args[3])),
+                                      String.valueOf(Integer.parseInt(args[4])));
+                facultyIp = args[5];
+                facultyPort = Integer.parseInt(args[6]);
+            } else if (args.length == 5 && "CANCELAR".equals(args[0])) {
+                // Cancel a previous allocation by its requestId: "CANCELAR,programName,requestId"
+                programName = args[1];
+                semester = "cancelaciones";
+                request = String.join(",", "CANCELAR", programName, args[2]);
+                facultyIp = args[3];
+                facultyPort = Integer.parseInt(args[4]);
+            } else if (args.length == 4 && "STATUS".equals(args[0])) {
+                // What happened to earlier requests, e.g. after losing the connection: "STATUS,id1,id2,..."
+                programName = "STATUS";
+                semester = "status";
+                request = "STATUS," + args[1];
+                facultyIp = args[2];
+                facultyPort = Integer.parseInt(args[3]);
+            } else if ((args.length == 4 || args.length == 5) && "STATS".equals(args[0])) {
+                // Allocation aggregates for the faculty, or for one program: "STATS,semester[,programName]"
+                programName = args.length == 5 ? args[2] : "STATS";
+                semester = args[1];
+                request = args.length == 5 ? String.join(",", "STATS", semester, programName)
+                                           : String.join(",", "STATS", semester);
+                facultyIp = args[args.length - 2];
+                facultyPort = Integer.parseInt(args[args.length - 1]);
+            } else if (args.length == 4 && "CONSULTA".equals(args[0])) {
+                // Read-only availability query, answered from the servers' in-memory snapshot: "CONSULTA,semester"
+                programName = "CONSULTA";
+                semester = args[1];
+                request = String.join(",", "CONSULTA", semester);
+                facultyIp = args[2];
+                facultyPort = Integer.parseInt(args[3]);
+            } else if (args.length == 6 || args.length == 7) {
+                programName = args[0];
+                semester = args[1];
+                int numClassrooms = Integer.parseInt(args[2]);
+                int numLabs = Integer.parseInt(args[3]);
+                facultyIp = args[4];
+                facultyPort = Integer.parseInt(args[5]);
+
+                // Build message: format "programName,semester,numClassrooms,numLabs[,leaseSeconds[,requirements]]"
+                request = String.join(",", programName, semester,
+                                      String.valueOf(numClassrooms),
+                                      String.valueOf(numLabs));
+                if (!PLAZO_EXPLICITO) {
+                    plazoMs = 0;
+                }
+                if (!REQUISITOS.isBlank()) {
+                    if (REQUISITOS.contains(",")) {
+                        System.err.println("Error: -Dsolicitud.requisitos cannot contain commas.");
+                        System.exit(1);
+                        return;
+                    }
+                    // Requirements go last, so a request without a lease sends 0 (no lease)
+                    request += "," + (args.length == 7 ? Long.parseLong(args[6]) : 0) + "," + REQUISITOS;
+                } else if (args.length == 7) {
+                    request += "," + Long.parseLong(args[6]);
+                }
+                if (ASINCRONA) {
+                    asincrona = true;
+                    request = "ASINC," + request;
+                }
+            } else {
+                System.err.println("Usage: AcademicProgram <programName> <semester> <numClassrooms> <numLabs> <facultyIp> <facultyPort> [leaseSeconds]");
+                System.err.println("       AcademicProgram LIBERAR <programName> <semester> <numClassrooms> <numLabs> <facultyIp> <facultyPort>");
+                System.err.println("       AcademicProgram CANCELAR <programName> <requestId> <facultyIp> <facultyPort>");
+                System.err.println("       AcademicProgram CONSULTA <semester> <facultyIp> <facultyPort>");
+                System.err.println("       AcademicProgram STATS <semester> [<programName>] <facultyIp> <facultyPort>");
+                System.err.println("       AcademicProgram STATUS <requestId>[,<requestId>...] <facultyIp> <facultyPort>");
+                System.exit(1);
+                return;
+            }
+        } catch (NumberFormatException e) {
+            System.err.println("Error: numClassrooms, numLabs, leaseSeconds and facultyPort must be integers.");
+            return;
         }
-        
-        String programName = args[0];
-        String semester = args[1];
-        int numClassrooms = Integer.parseInt(args[2]);
-        int numLabs = Integer.parseInt(args[3]);
-        String facultyIp = args[4];
-        int facultyPort = Integer.parseInt(args[5]);
-        
+
         try (ZContext context = new ZContext()) {
             ZMQ.Socket socket = context.createSocket(SocketType.REQ);
             socket.connect("tcp://" + facultyIp + ":" + facultyPort);
-            
-            // Build message: format "programName;semester;numClassrooms;numLabs"
-            String request = String.join(",", programName, semester, 
-                                        String.valueOf(numClassrooms), 
-                                        String.valueOf(numLabs));
-            
+
+            if (plazoMs > 0) {
+                request += ",plazo=" + (System.currentTimeMillis() + plazoMs);
+                socket.setReceiveTimeOut((int) Math.min(Integer.MAX_VALUE, plazoMs));
+            }
             socket.send(request.getBytes(ZMQ.CHARSET), 0);
-            
-            // Receive response
+
+            // Receive response, or give up when the deadline passes
             byte[] responseBytes = socket.recv(0);
-            String response = new String(responseBytes, ZMQ.CHARSET);
-            
+            String response = responseBytes != null
+                    ? new String(responseBytes, ZMQ.CHARSET)
+                    : "Timeout: no reply within " + plazoMs + " ms";
+            socket.close();
+
+            // Accepted: "requestId,Aceptada,faculty/program/". The reply socket is already released;
+            // the result arrives on the topic.
+            String[] aceptada = response.split(",");
+            if (asincrona && aceptada.length == 3 && "Aceptada".equals(aceptada[1])) {
+                System.out.println("Request accepted: " + aceptada[0] + " (topic " + aceptada[2] + ")");
+                if (!ESPERAR_RESULTADO) {
+                    return;
+                }
+                String resultado = esperarResultado(context, aceptada[0], aceptada[2], plazoMs);
+                response = resultado != null ? resultado
+                        : aceptada[0] + ",Timeout: no result published within " + plazoMs + " ms";
+            } else if (aceptada.length == 3 && "Resultado: EnEspera".equals(aceptada[1])) {
+                System.out.println("Request waitlisted: " + aceptada[0] + " (topic " + aceptada[2] + ")");
+                if (!ESPERAR_RESULTADO) {
+                    return;
+                }
+                String resultado = esperarResultado(context, aceptada[0], aceptada[2], ESPERA_MS);
+                response = resultado != null ? resultado
+                        : aceptada[0] + ",Timeout: still waitlisted after " + ESPERA_MS + " ms";
+            }
+
             // Save to file: filename based on semester
             String fileName = "response_" + semester + ".txt";
             try (FileWriter writer = new FileWriter(fileName, true)) {
@@ -42,10 +169,61 @@ public class AcademicProgram {
             } catch (IOException e) {
                 System.err.println("Error saving response: " + e.getMessage());
             }
-            
+
             System.out.println("Response received: " + response);
-        } catch (NumberFormatException e) {
-            System.err.println("Error: numClassrooms and numLabs must be integers.");
         }
     }
+
+    /**
+     * Waits on the result topic of every server for the result of requestId, for up to plazoMs (0 = forever).
+     * The SUB only sees what is published after it connects, so each server is also asked for the
+     * retained results of the topic, at the start and every second: a result published before the
+     * subscription took effect is not lost.
+     */
+    private static String esperarResultado(ZContext context, String requestId, String tema, long plazoMs) {
+        Poller poller = context.createPoller(2 * RESULTADOS.length);
+        ZMQ.Socket[] recuperacion = new ZMQ.Socket[RESULTADOS.length];
+        long[] desde = new long[RESULTADOS.length];
+        for (int i = 0; i < RESULTADOS.length; i++) {
+            ZMQ.Socket suscriptor = context.createSocket(SocketType.SUB);
+            suscriptor.connect(RESULTADOS[i]);
+            suscriptor.subscribe(tema.getBytes(ZMQ.CHARSET));
+            poller.register(suscriptor, Poller.POLLIN);
+            int dosPuntos = RESULTADOS[i].lastIndexOf(':');
+            recuperacion[i] = context.createSocket(SocketType.DEALER);
+            recuperacion[i].connect(RESULTADOS[i].substring(0, dosPuntos + 1)
+                    + (Integer.parseInt(RESULTADOS[i].substring(dosPuntos + 1)) + 1));
+            poller.register(recuperacion[i], Poller.POLLIN);
+        }
+
+        long limite = plazoMs > 0 ? System.currentTimeMillis() + plazoMs : Long.MAX_VALUE;
+        long proximaRecuperacion = 0;
+        while (System.currentTimeMillis() < limite) {
+            if (System.currentTimeMillis() >= proximaRecuperacion) {
+                for (int i = 0; i < RESULTADOS.length; i++) {
+                    recuperacion[i].send("RECUPERAR " + desde[i] + " " + tema, ZMQ.DONTWAIT);
+                }
+                proximaRecuperacion = System.currentTimeMillis() + RECUPERACION_MS;
+            }
+            poller.poll(Math.min(RECUPERACION_MS, Math.max(1, limite - System.currentTimeMillis())));
+            for (int i = 0; i < poller.getSize(); i++) {
+                if (!poller.pollin(i)) {
+                    continue;
+                }
+                // Every message is topic (or FIN), sequence and "requestId,Resultado: ..."
+                ZMQ.Socket origen = poller.getSocket(i);
+                String tipo = origen.recvStr();
+                long secuencia = Long.parseLong(origen.recvStr());
+                String resultado = origen.recvStr();
+                if (resultado.startsWith(requestId + ",")) {
+                    return resultado;
+                }
+                // Only catch-up replies move the starting point: the SUB may have missed earlier ones
+                if (i % 2 == 1 && !"FIN".equals(tipo)) {
+                    desde[i / 2] = Math.max(desde[i / 2], secuencia);
+                }
+            }
+        }
+        return null;
+    }
 }
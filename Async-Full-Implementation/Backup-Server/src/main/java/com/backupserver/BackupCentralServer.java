@@ -2,22 +2,136 @@ package com.backupserver;
 
 import org.zeromq.ZContext;
 import org.zeromq.ZMQ;
+import org.zeromq.ZMQ.Poller;
+import org.zeromq.ZMsg;
 import org.zeromq.SocketType;
 
 import java.sql.*;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 public class BackupCentralServer {
 
-    private static final ExecutorService pool = Executors.newFixedThreadPool(10);
+    private static final String ROL = "respaldo";
+    private static final int PUERTO_METRICAS = Integer.getInteger("metricas.puerto", 9104);
+    // requestId que se pueden consultar en un solo STATUS
+    private static final int MAXIMO_ESTADOS = Integer.getInteger("estado.maximo", 500);
+
+    private static final Metricas.Contador aprobadas = Metricas.contador("servidor_solicitudes_total",
+            "Solicitudes procesadas por resultado", "resultado", "Aprobada");
+    private static final Metricas.Contador denegadas = Metricas.contador("servidor_solicitudes_total",
+            "Solicitudes procesadas por resultado", "resultado", "Denegada");
+    private static final Metricas.Contador errores = Metricas.contador("servidor_solicitudes_total",
+            "Solicitudes procesadas por resultado", "resultado", "Error");
+    private static final Metricas.Contador liberaciones = Metricas.contador("servidor_solicitudes_total",
+            "Solicitudes procesadas por resultado", "resultado", "Liberada");
+    private static final Metricas.Contador cancelaciones = Metricas.contador("servidor_solicitudes_total",
+            "Solicitudes procesadas por resultado", "resultado", "Cancelada");
+    private static final Metricas.Contador vencidas = Metricas.contador("servidor_solicitudes_total",
+            "Solicitudes procesadas por resultado", "resultado", "Timeout");
+    // Descartes por plazo vencido en cada salto: al llegar al socket y al entrar a cada etapa previa a la BD
+    private static final Metricas.Contador vencidasEntrada = Plazo.descartes("entrada");
+    private static final Metricas.Contador vencidasDecodificar = Plazo.descartes("decodificar");
+    private static final Metricas.Contador vencidasValidar = Plazo.descartes("validar");
+    private static final Metricas.Contador vencidasAsignar = Plazo.descartes("asignar");
+    private static final Metricas.Histograma duracion = Metricas.histograma("servidor_solicitud_duracion_segundos",
+            "Tiempo desde que llega la solicitud hasta que sale su respuesta", Metricas.LATENCIA_SEGUNDOS);
+    private static final Metricas.Contador persistenciasFallidas = Metricas.contador(
+            "servidor_persistencia_fallida_total", "Solicitudes ya resueltas cuyo registro en la tabla Solicitud falló");
+    private static final Metricas.Contador enVuelo = Metricas.indicadorMovil("servidor_mensajes_en_vuelo",
+            "Mensajes recibidos del socket que aún no tienen respuesta");
+    private static final Metricas.Contador pings = Metricas.contador("servidor_healthcheck_pings_total",
+            "PING recibidos en el puerto de healthcheck");
+    private static final Metricas.Contador consultas = Metricas.contador("servidor_consultas_total",
+            "Consultas de disponibilidad respondidas desde la instantánea en memoria");
+
+    // Estado por requestId: desde memoria si se recuerda la solicitud, si no desde la tabla Solicitud
+    private static final Metricas.Contador estadosMemoria = Metricas.contador("servidor_estados_total",
+            "requestId consultados con STATUS, por dónde se encontró", "origen", "memoria");
+    private static final Metricas.Contador estadosBase = Metricas.contador("servidor_estados_total",
+            "requestId consultados con STATUS, por dónde se encontró", "origen", "base");
+    private static final Metricas.Contador estadosDesconocidos = Metricas.contador("servidor_estados_total",
+            "requestId consultados con STATUS, por dónde se encontró", "origen", "desconocido");
+
+    // Consultas de solo lectura: se responden desde memoria, sin pasar por el pipeline ni la base de datos
+    private static final DisponibilidadCache disponibilidad =
+            new DisponibilidadCache(Long.getLong("disponibilidad.limiteMs", 5000));
+
+    // Aulas libres por semestre, tipo y atributos: la asignación elige de aquí la que mejor se ajusta (-Dindice.*)
+    private static final IndiceAulas indice = new IndiceAulas();
+
+    // Liberaciones y vencimientos: aulas que vuelven al inventario, persistidas en lotes
+    private static final LiberadorAulas liberador =
+            new LiberadorAulas(Long.getLong("liberacion.intervaloMs", 200));
+    private static final RegistroConcesiones concesiones =
+            new RegistroConcesiones(Long.getLong("concesiones.tickMs", 1000), liberador);
+
+    // Agregados por semestre, facultad y programa para STATS, actualizados con cada decisión (-Destadisticas.*)
+    private static final EstadisticasAsignacion estadisticas = new EstadisticasAsignacion();
+    private static final Metricas.Contador consultasEstadisticas = Metricas.contador("servidor_estadisticas_consultas_total",
+            "Consultas STATS respondidas desde los agregados en memoria");
+
+    private static final Metricas.Contador recargasPedidas = Metricas.contador("servidor_recargas_pedidas_total",
+            "Recargas de referencia y disponibilidad pedidas con RECARGAR");
+
+    // Apertura de semestre: asignación por lotes al corte en vez de orden de llegada (-Dapertura.*)
+    private static final AperturaSemestre apertura =
+            new AperturaSemestre(concesiones, disponibilidad, indice, estadisticas, aprobadas, denegadas, errores);
+
+    // Asignaciones sin aulas que esperan a que vuelvan, en vez de denegarse (-Despera.*)
+    private static final ListaEspera espera =
+            new ListaEspera(BackupCentralServer::reintentarEnEspera, BackupCentralServer::vencerEnEspera);
+
+    // Reintentos por requestId (DepartmentSchool reenvía por el otro HealthCheckManager): no se procesan dos veces
+    private static final SolicitudesRecientes recientes = new SolicitudesRecientes();
+
+    // Resultados finales publicados por tema para los clientes asíncronos (-Dresultados.*)
+    private static final Resultados resultados = new Resultados();
+
+    // Facultades y programas en memoria: la validación no consulta la base de datos
+    private static final DatosReferencia referencia = new DatosReferencia();
+
+    // Pipeline decodificar -> validar -> asignar -> persistir -> responder; cada etapa con su cola
+    // acotada y sus hilos (-Detapa.<nombre>.hilos / .cola). Un trabajo cuya etapa lanza una
+    // excepción no controlada se responde con error en fallo()
+    private static final Etapa<Trabajo> etapaResponder =
+            Etapa.de("responder", 1, 1000, BackupCentralServer::enviarRespuesta);
+    private static final Etapa<Trabajo> etapaPersistir =
+            Etapa.porLotes("persistir", 1, 5000, 500, BackupCentralServer::persistir)
+                    .alFallar(BackupCentralServer::fallo);
+    // asignar es la etapa que trabaja contra la base de datos: su concurrencia la ajusta un
+    // límite adaptativo según la latencia que mide (-Dlimite.asignar.*)
+    private static final LimiteConcurrencia limiteAsignar = LimiteConcurrencia.desdePropiedades("asignar");
+    private static final Etapa<Trabajo> etapaAsignar =
+            Etapa.conLimite("asignar", 1000, limiteAsignar, BackupCentralServer::asignar)
+                    .alFallar(BackupCentralServer::fallo);
+    private static final Etapa<Trabajo> etapaValidar =
+            Etapa.de("validar", 2, 1000, BackupCentralServer::validar).alFallar(BackupCentralServer::fallo);
+    private static final Etapa<Trabajo> etapaDecodificar =
+            Etapa.de("decodificar", 1, 1000, BackupCentralServer::decodificar)
+                    .alFallar(BackupCentralServer::fallo);
+    // Fuera del pipeline: STATUS que necesitan buscar en la tabla Solicitud
+    private static final Etapa<Trabajo> etapaEstado =
+            Etapa.de("estado", 1, 1000, BackupCentralServer::consultarEstado).alFallar(BackupCentralServer::fallo);
+
+    // Los hilos de asignar y persistir conservan su conexión en vez de abrir una por solicitud
+    private static final ThreadLocal<Connection> conexionHilo = new ThreadLocal<>();
+
+    private static final LogAsincrono.Tipo logSinAulas = LogAsincrono.tipo("servidor.sinAulas",
+            LogAsincrono.Nivel.WARN, 1, 50);
+    private static final LogAsincrono.Tipo logValidacion = LogAsincrono.tipo("servidor.validacion",
+            LogAsincrono.Nivel.INFO, 1, 50);
+    private static final LogAsincrono.Tipo logError = LogAsincrono.tipo("servidor.error",
+            LogAsincrono.Nivel.ERROR, 1, 20);
 
     public static void main(String[] args) {
         System.out.println("Iniciando Servidor Central Worker...");
 
         // Verificar conexión a la base de datos antes de continuar
-        try (Connection testConn = ConexionDB.conectar()) {
+        Connection testConn = ConexionDB.conectar();
+        try {
             if (testConn == null || testConn.isClosed()) {
                 System.err.println("No se pudo conectar a la base de datos. Terminando el servidor.");
                 return;
@@ -27,14 +141,32 @@ public class BackupCentralServer {
         } catch (SQLException e) {
             System.err.println("Error al conectar a la base de datos: " + e.getMessage());
             return;
+        } finally {
+            ConexionDB.cerrar(testConn);
         }
 
+        registrarIndicadores();
+        Metricas.exponer(PUERTO_METRICAS);
+        referencia.iniciar();
+        disponibilidad.iniciar();
+        indice.iniciar();
+        liberador.alPersistir(aulas -> {
+            indice.liberar(aulas);
+            disponibilidad.recargarPronto();
+        });
+        disponibilidad.alRecargar(() -> espera.pasada(disponibilidad::disponibles));
+        estadisticas.iniciar();
+        apertura.iniciar();
+        resultados.iniciar();
+
         try (ZContext context = new ZContext()) {
-            // Cambio: REP socket para recibir requests del HealthCheck
-            ZMQ.Socket worker = context.createSocket(SocketType.REP);
+            // ROUTER: las respuestas pueden salir en otro orden (o mucho después, en la apertura),
+            // cosa que un REP no permite. El sobre de cada solicitud viaja con su respuesta.
+            ZMQ.Socket worker = context.createSocket(SocketType.ROUTER);
             worker.bind("tcp://*:5556");
+            CanalRespuestas respuestas = new CanalRespuestas(context);
 
-            // Hilo de healthcheck que responde "PONG" a "PING" en puerto 6000
+            // Hilo de healthcheck que responde "PONG" y la carga del servidor a "PING" en puerto 6000
             new Thread(() -> {
                 try (ZContext healthContext = new ZContext()) {
                     ZMQ.Socket responder = healthContext.createSocket(SocketType.REP);
@@ -43,7 +175,8 @@ public class BackupCentralServer {
                     while (!Thread.currentThread().isInterrupted()) {
                         String msg = responder.recvStr();
                         if ("PING".equals(msg)) {
-                            responder.send("PONG");
+                            pings.inc();
+                            responder.send("PONG;" + carga());
                         } else {
                             responder.send("UNKNOWN");
                         }
@@ -51,111 +184,563 @@ public class BackupCentralServer {
                 }
             }).start();
 
-            System.out.println("Worker REP activo en puerto 5556. Esperando solicitudes...");
+            System.out.println("Worker ROUTER activo en puerto 5556. Esperando solicitudes...");
+
+            Poller poller = context.createPoller(2);
+            poller.register(worker, Poller.POLLIN);
+            poller.register(respuestas.entrada(), Poller.POLLIN);
 
             while (!Thread.currentThread().isInterrupted()) {
-                // REP recibe mensaje directamente
-                String mensaje = worker.recvStr(0);
-
-                // Procesar en thread pool para mantener asincronía
-                pool.execute(() -> {
-                    String respuesta = procesarSolicitud(mensaje);
-                    // REP envía respuesta directamente
-                    synchronized (worker) {
-                        worker.send(respuesta);
+                if (poller.poll(1000) <= 0) {
+                    continue;
+                }
+                if (poller.pollin(1)) {
+                    respuestas.reenviar(worker);
+                }
+                if (!poller.pollin(0)) {
+                    continue;
+                }
+                ZMsg sobre = ZMsg.recvMsg(worker);
+                String mensaje = sobre.removeLast().getString(ZMQ.CHARSET);
+                long plazo = Plazo.leer(mensaje);
+                if (plazo > 0) {
+                    mensaje = Plazo.quitar(mensaje);
+                    if (Plazo.vencido(plazo)) {
+                        // Venció en tránsito o esperando en el socket: no entra al pipeline
+                        vencidasEntrada.inc();
+                        vencidas.inc();
+                        int coma = mensaje.indexOf(',');
+                        sobre.add(Plazo.respuesta(coma > 0 ? mensaje.substring(0, coma) : "Error", "servidor"));
+                        sobre.send(worker);
+                        continue;
+                    }
+                }
+                if (esConsulta(mensaje) || esEstadisticas(mensaje)) {
+                    // Lectura pura: se contesta en este mismo hilo, sin esperar detrás de las asignaciones
+                    sobre.add(esConsulta(mensaje) ? procesarConsulta(mensaje) : procesarEstadisticas(mensaje));
+                    sobre.send(worker);
+                    continue;
+                }
+                if (esRecarga(mensaje)) {
+                    // Tras una carga masiva del inventario: la lectura de la base va a los hilos de recarga
+                    referencia.recargarPronto();
+                    disponibilidad.recargarPronto();
+                    indice.recargarPronto();
+                    recargasPedidas.inc();
+                    sobre.add(mensaje.substring(0, mensaje.indexOf(',')) + ",Recarga programada");
+                    sobre.send(worker);
+                    continue;
+                }
+                if (esEstado(mensaje)) {
+                    // Si todos los requestId están en memoria se contesta aquí; si no, la etapa estado
+                    // los busca en la base de datos sin detener este hilo
+                    String[] partes = mensaje.split(",");
+                    String respuesta = estadoEnMemoria(partes);
+                    if (respuesta == null) {
+                        Trabajo trabajo = new Trabajo(mensaje, estado -> respuestas.enviar(sobre, estado),
+                                System.nanoTime(), plazo);
+                        trabajo.partes = partes;
+                        if (etapaEstado.ofrecer(trabajo)) {
+                            continue;
+                        }
+                        errores.inc();
+                        respuesta = partes[0] + ",Error: Servidor saturado, reintente en " + reintentoMs() + " ms";
                     }
-                });
+                    sobre.add(respuesta);
+                    sobre.send(worker);
+                    continue;
+                }
+                int coma = mensaje.indexOf(',');
+                String requestId = coma > 0 ? mensaje.substring(0, coma) : null;
+                if (requestId != null && !recientes.registrar(requestId, respuesta -> respuestas.enviar(sobre, respuesta))) {
+                    continue;
+                }
+                enVuelo.inc();
+                long recibido = System.nanoTime();
+                String solicitud = mensaje;
+                Trabajo trabajo = new Trabajo(solicitud, respuesta -> {
+                    respuestas.enviar(sobre, respuesta);
+                    if (requestId != null) {
+                        recientes.completar(requestId, respuesta);
+                    }
+                    publicarResultado(solicitud, respuesta);
+                    duracion.observarDesde(recibido);
+                    enVuelo.dec();
+                }, recibido, plazo);
+                if (!etapaDecodificar.ofrecer(trabajo)) {
+                    // Este hilo nunca espera una cola: si el pipeline está lleno se responde de inmediato,
+                    // con lo que tardaría en vaciarse al límite y la latencia actuales
+                    errores.inc();
+                    enVuelo.dec();
+                    if (requestId != null) {
+                        recientes.olvidar(requestId);
+                    }
+                    sobre.add((requestId != null ? requestId : "Error")
+                            + ",Error: Servidor saturado, reintente en " + reintentoMs() + " ms");
+                    sobre.send(worker);
+                }
             }
         }
     }
 
-    private static String procesarSolicitud(String data) {
+    /**
+     * Publica el resultado de una asignación (también las resueltas al corte de la apertura).
+     * Solo las asignaciones terminan en Aprobada o Denegada, y su mensaje trae
+     * requestId,semestre,facultad,programa,...
+     */
+    private static void publicarResultado(String mensaje, String respuesta) {
+        if (!respuesta.endsWith("Aprobada") && !respuesta.endsWith("Denegada")) {
+            return;
+        }
+        String[] partes = mensaje.split(",", 5);
+        if (partes.length == 5) {
+            resultados.publicar(partes[2], partes[3], respuesta);
+        }
+    }
+
+    /** Sugerencia de reintento para un rechazo por saturación: lo que tarda en vaciarse el pipeline. */
+    private static long reintentoMs() {
+        return limiteAsignar.esperaEstimadaMs(etapaDecodificar.pendientes() + etapaValidar.pendientes()
+                + etapaAsignar.pendientes());
+    }
+
+    private static boolean esConsulta(String data) {
+        int coma = data.indexOf(',');
+        return coma >= 0 && data.startsWith("CONSULTA,", coma + 1);
+    }
+
+    // Esperamos: requestId,CONSULTA,semestre[,facultad]
+    private static String procesarConsulta(String data) {
+        String[] partes = data.split(",");
+        if (partes.length < 3) {
+            errores.inc();
+            return partes[0] + ",Error: Formato de consulta inválido.";
+        }
+        consultas.inc();
+        return partes[0] + "," + disponibilidad.consultar(partes[2]);
+    }
+
+    private static boolean esEstadisticas(String data) {
+        int coma = data.indexOf(',');
+        return coma >= 0 && data.startsWith("STATS,", coma + 1);
+    }
+
+    // Esperamos: requestId,STATS,semestre,facultad[,programa]
+    private static String procesarEstadisticas(String data) {
+        String[] partes = data.split(",");
+        if (partes.length != 4 && partes.length != 5) {
+            errores.inc();
+            return partes[0] + ",Error: Formato de STATS inválido.";
+        }
+        consultasEstadisticas.inc();
+        return partes[0] + "," + estadisticas.consultar(partes[2], partes[3], partes.length == 5 ? partes[4] : null);
+    }
+
+    // Esperamos: requestId,RECARGAR (lo envía CargadorInventario directo a cada servidor)
+    private static boolean esRecarga(String data) {
+        int coma = data.indexOf(',');
+        return coma >= 0 && data.substring(coma + 1).equals("RECARGAR");
+    }
+
+    private static boolean esEstado(String data) {
+        int coma = data.indexOf(',');
+        return coma >= 0 && data.startsWith("STATUS,", coma + 1);
+    }
+
+    /**
+     * Esperamos: requestId,STATUS,id1[,id2...]. Responde requestId,Estado: id1=Aprobada;id2=EnProceso;...
+     * Devuelve null si alguno ya no está en memoria y hay que buscarlo en la base de datos.
+     */
+    private static String estadoEnMemoria(String[] partes) {
+        if (partes.length < 3 || partes.length - 2 > MAXIMO_ESTADOS) {
+            errores.inc();
+            return partes[0] + ",Error: STATUS lleva entre 1 y " + MAXIMO_ESTADOS + " requestId.";
+        }
+        Map<String, String> estados = new HashMap<>();
+        if (!estadosRecientes(partes, estados).isEmpty()) {
+            return null;
+        }
+        estadosMemoria.sumar(estados.size());
+        return respuestaEstado(partes, estados);
+    }
+
+    // Etapa estado: lo que no está en memoria se busca en la tabla Solicitud, con una conexión
+    // propia para no esperar detrás de las asignaciones
+    private static void consultarEstado(Trabajo trabajo) {
+        String[] partes = trabajo.partes;
         try {
-            // Esperamos: requestId,semestre,facultad,programa,cantSalones,cantLabs
-            String[] partes = data.split(",");
-            if (partes.length != 6) {
-                return "Error: Formato de solicitud inválido. Se esperan 6 campos.";
-            }
-            
-            String requestId = partes[0];
-            String semestre = partes[1];
-            String facultad = partes[2];
-            String programa = partes[3];
-            int cantSalones = Integer.parseInt(partes[4]);
-            int cantLabs = Integer.parseInt(partes[5]);
+            Map<String, String> estados = new HashMap<>();
+            List<String> faltantes = estadosRecientes(partes, estados);
+            estadosMemoria.sumar(estados.size());
+            Map<String, String> persistidos = estadosPersistidos(conexionHilo(), faltantes);
+            estadosBase.sumar(persistidos.size());
+            estadosDesconocidos.sumar(faltantes.size() - persistidos.size());
+            estados.putAll(persistidos);
+            terminar(trabajo, respuestaEstado(partes, estados));
+        } catch (SQLException e) {
+            descartarConexionHilo();
+            errores.inc();
+            logError.error("Error consultando estados: {}", e, trabajo.mensaje);
+            terminar(trabajo, partes[0] + ",Error: No se pudo consultar el estado: " + e.getMessage());
+        }
+    }
 
-            if(!validacionData(semestre, facultad, programa, cantSalones, cantLabs)){
-                return requestId + ",Error: Los datos ingresados en la solicitud son inválidos!";
+    // Anota en "estados" los que se recuerdan y devuelve los que no
+    private static List<String> estadosRecientes(String[] partes, Map<String, String> estados) {
+        List<String> faltantes = new ArrayList<>();
+        for (int i = 2; i < partes.length; i++) {
+            String respuesta = recientes.estado(partes[i]);
+            if (respuesta == null) {
+                faltantes.add(partes[i]);
+            } else {
+                estados.put(partes[i], respuesta.isEmpty() ? "EnProceso" : resultado(respuesta));
             }
+        }
+        return faltantes;
+    }
 
-            Connection conn = ConexionDB.conectar();
-
-            int salonesDisponibles = contarAulas(conn, "Salon", semestre, "Disponible");
-            int laboratoriosDisponibles = contarAulas(conn, "Laboratorio", semestre, "Disponible");
+    private static String respuestaEstado(String[] partes, Map<String, String> estados) {
+        StringBuilder respuesta = new StringBuilder(partes[0]).append(",Estado: ");
+        for (int i = 2; i < partes.length; i++) {
+            respuesta.append(i == 2 ? "" : ";").append(partes[i]).append('=')
+                    .append(estados.getOrDefault(partes[i], "Desconocida"));
+        }
+        return respuesta.toString();
+    }
 
-            boolean asignadoSalones = salonesDisponibles >= cantSalones;
-            boolean asignadoLabs = laboratoriosDisponibles >= cantLabs;
+    // "requestId,Resultado: Aprobada" -> "Aprobada"; "requestId,Error: ..." -> "Error: ..."
+    private static String resultado(String respuesta) {
+        String resultado = respuesta.substring(respuesta.indexOf(',') + 1);
+        resultado = resultado.startsWith("Resultado: ") ? resultado.substring("Resultado: ".length()) : resultado;
+        // "EnEspera,facultad/programa/": el tema no va en la respuesta de STATUS
+        return resultado.startsWith("EnEspera,") ? "EnEspera" : resultado;
+    }
 
-            if (asignadoSalones) {
-                asignarAulas(conn, programa, "Salon", cantSalones);
+    // Etapa decodificar. Esperamos: requestId,semestre,facultad,programa,cantSalones,cantLabs[,duracionSegundos]
+    // o bien requestId,LIBERAR,semestre,facultad,programa,cantSalones,cantLabs / requestId,CANCELAR,...
+    private static void decodificar(Trabajo trabajo) {
+        new EventosJFR.ColaEspera().registrar(trabajo.mensaje, System.nanoTime() - trabajo.recibido);
+        if (vencido(trabajo, vencidasDecodificar)) {
+            return;
+        }
+        String[] partes = trabajo.mensaje.split(",");
+        trabajo.partes = partes;
+        try {
+            if (partes.length > 1 && "CANCELAR".equals(partes[1])) {
+                if (partes.length != 5) {
+                    errores.inc();
+                    terminar(trabajo, partes[0] + ",Error: Formato de cancelación inválido. Se esperan 5 campos.");
+                    return;
+                }
+                trabajo.tipo = Trabajo.Tipo.CANCELAR;
+                etapaAsignar.enviar(trabajo);
+                return;
+            }
+            if (partes.length > 1 && "LIBERAR".equals(partes[1])) {
+                if (partes.length != 7) {
+                    errores.inc();
+                    terminar(trabajo, partes[0] + ",Error: Formato de liberación inválido. Se esperan 7 campos.");
+                    return;
+                }
+                trabajo.tipo = Trabajo.Tipo.LIBERAR;
+                trabajo.solicitud = new Solicitud(partes[0], partes[2], partes[3], partes[4],
+                        Integer.parseInt(partes[5]), Integer.parseInt(partes[6]), 0L);
+                etapaValidar.enviar(trabajo);
+                return;
+            }
+            if (partes.length < 6 || partes.length > 8) {
+                errores.inc();
+                terminar(trabajo, "Error: Formato de solicitud inválido. Se esperan 6 campos.");
+                return;
             }
+            trabajo.tipo = Trabajo.Tipo.ASIGNAR;
+            trabajo.solicitud = new Solicitud(partes[0], partes[1], partes[2], partes[3],
+                    Integer.parseInt(partes[4]), Integer.parseInt(partes[5]),
+                    partes.length >= 7 ? Long.parseLong(partes[6]) * 1000L : 0L,
+                    partes.length == 8 ? IndiceAulas.Requisitos.leer(partes[7]) : IndiceAulas.Requisitos.NINGUNO);
+            etapaValidar.enviar(trabajo);
+        } catch (IllegalArgumentException e) {
+            errores.inc();
+            terminar(trabajo, partes[0] + ",Error: Los datos ingresados en la solicitud son inválidos!");
+        }
+    }
 
-            if (!asignadoLabs && (salonesDisponibles - cantSalones) >= (cantLabs - laboratoriosDisponibles)) {
-                asignarAulas(conn, programa, "Laboratorio", laboratoriosDisponibles);
-                asignarAulas(conn, programa, "Salon", cantLabs - laboratoriosDisponibles);
-                asignadoLabs = true;
-            } else if (asignadoLabs) {
-                asignarAulas(conn, programa, "Laboratorio", cantLabs);
+    // Etapa validar: solo datos de referencia en memoria
+    private static void validar(Trabajo trabajo) {
+        if (vencido(trabajo, vencidasValidar)) {
+            return;
+        }
+        Solicitud solicitud = trabajo.solicitud;
+        EventosJFR.ValidacionData evValidacion = new EventosJFR.ValidacionData();
+        evValidacion.begin();
+        boolean valida = validacionData(solicitud.semestre, solicitud.facultad, solicitud.programa,
+                solicitud.cantSalones, solicitud.cantLabs);
+        evValidacion.valida = valida;
+        evValidacion.registrar(solicitud);
+        if (!valida) {
+            errores.inc();
+            terminar(trabajo, solicitud.requestId + ",Error: Los datos ingresados en la solicitud son inválidos!");
+            return;
+        }
+        if (trabajo.tipo == Trabajo.Tipo.ASIGNAR) {
+            estadisticas.solicitud(solicitud);
+        }
+        // Retenida para la apertura de semestre: se responde al corte
+        if (trabajo.tipo == Trabajo.Tipo.ASIGNAR && apertura.retener(solicitud, trabajo.plazo, trabajo.responder)) {
+            return;
+        }
+        etapaAsignar.enviar(trabajo);
+    }
+
+    // Etapa asignar: la única que cambia el inventario
+    private static void asignar(Trabajo trabajo) {
+        // Última revisión: desde aquí la solicitud toca el inventario y ya no se descarta
+        if (vencido(trabajo, vencidasAsignar)) {
+            return;
+        }
+        try {
+            switch (trabajo.tipo) {
+                case CANCELAR:
+                    terminar(trabajo, procesarCancelacion(trabajo.partes));
+                    break;
+                case LIBERAR:
+                    terminar(trabajo, procesarLiberacion(conexionHilo(), trabajo.solicitud));
+                    break;
+                default:
+                    boolean reintento = trabajo.enEsperaDesde != 0;
+                    asignarSolicitud(conexionHilo(), trabajo);
+                    if (!"EnEspera".equals(trabajo.status)) {
+                        etapaPersistir.enviar(trabajo);
+                    } else if (!reintento) {
+                        // El resultado final se publica en el tema del programa, donde el cliente lo espera
+                        Solicitud solicitud = trabajo.solicitud;
+                        terminar(trabajo, solicitud.requestId + ",Resultado: EnEspera," + solicitud.facultad + "/"
+                                + solicitud.programa + "/");
+                    }
+            }
+        } catch (SQLException e) {
+            descartarConexionHilo();
+            limiteAsignar.error();
+            if (trabajo.enEsperaDesde != 0 && espera.agregar(trabajo, trabajo.tipoEspera)) {
+                // Un reintento que falló por la base de datos vuelve a su lugar en la lista
+                logError.error("Error reintentando solicitud en espera: {}", e, trabajo.mensaje);
+                return;
             }
+            errores.inc();
+            logError.error("Error procesando solicitud: {}", e, trabajo.mensaje);
+            terminar(trabajo, "Error,Error procesando solicitud: " + e.getMessage());
+        }
+    }
 
-            String status;
-            if (asignadoSalones && asignadoLabs) {
-                status = "Aprobada";
-            } else {
-                System.err.println("⚠️ ALERTA: No hay suficientes aulas para " + programa + " en " + semestre);
-                status = "Denegada";
+    private static void asignarSolicitud(Connection conn, Trabajo trabajo) throws SQLException {
+        Solicitud solicitud = trabajo.solicitud;
+        int cantSalones = solicitud.cantSalones;
+        int cantLabs = solicitud.cantLabs;
+
+        int salonesDisponibles = contarAulas(solicitud, "Salon");
+        int laboratoriosDisponibles = contarAulas(solicitud, "Laboratorio");
+
+        boolean asignadoSalones = salonesDisponibles >= cantSalones;
+        boolean asignadoLabs = laboratoriosDisponibles >= cantLabs;
+        List<Integer> asignadas = new ArrayList<>();
+        int desbordes = 0;   // laboratorios que se cubren con salones
+
+        // Los conteos pueden quedar cortos al reservar (otro hilo se llevó las aulas o el índice
+        // iba atrasado): solo se aprueba si cada reserva trajo exactamente lo pedido
+        if (asignadoSalones) {
+            asignadoSalones = tomarAulas(conn, solicitud, "Salon", cantSalones, asignadas);
+        }
+
+        if (!asignadoLabs && (salonesDisponibles - cantSalones) >= (cantLabs - laboratoriosDisponibles)) {
+            boolean laboratorios = tomarAulas(conn, solicitud, "Laboratorio", laboratoriosDisponibles, asignadas);
+            boolean salones = tomarAulas(conn, solicitud, "Salon", cantLabs - laboratoriosDisponibles, asignadas);
+            desbordes = cantLabs - laboratoriosDisponibles;
+            asignadoLabs = laboratorios && salones;
+        } else if (asignadoLabs) {
+            asignadoLabs = tomarAulas(conn, solicitud, "Laboratorio", cantLabs, asignadas);
+        }
+
+        if (asignadoSalones && asignadoLabs) {
+            trabajo.status = "Aprobada";
+            aprobadas.inc();
+            if (trabajo.enEsperaDesde != 0) {
+                espera.asignada(trabajo);
             }
+            concesiones.registrar(solicitud, asignadas, solicitud.duracionMs);
+            estadisticas.aprobada(solicitud, cantSalones + desbordes, cantLabs - desbordes, desbordes);
+        } else if (espera.agregar(trabajo, asignadoSalones ? 1 : 0)) {
+            trabajo.status = "EnEspera";
+            // Tampoco se queda con lo que alcanzó a marcar: se reintenta entera cuando vuelvan aulas
+            liberador.encolar(asignadas);
+        } else {
+            logSinAulas.log("⚠️ ALERTA: No hay suficientes aulas para {} en {}", solicitud.programa, solicitud.semestre);
+            trabajo.status = "Denegada";
+            denegadas.inc();
+            estadisticas.denegada(solicitud);
+            // Una solicitud denegada no se queda con las aulas que alcanzó a marcar
+            liberador.encolar(asignadas);
+        }
+    }
+
+    /** Reserva y marca aulas del tipo, las agrega a "asignadas" y dice si alcanzaron las pedidas. */
+    private static boolean tomarAulas(Connection conn, Solicitud solicitud, String tipo, int cantidad,
+                                      List<Integer> asignadas) throws SQLException {
+        List<Integer> aulas = asignarAulas(conn, solicitud, tipo, cantidad);
+        asignadas.addAll(aulas);
+        return aulas.size() == cantidad;
+    }
+
+    /**
+     * Reintento de una solicitud en espera: un Trabajo nuevo, porque el original ya respondió
+     * "EnEspera" por el socket. Su respuesta final queda para STATUS y se publica en Resultados.
+     */
+    private static boolean reintentarEnEspera(Trabajo enEspera) {
+        return etapaAsignar.ofrecer(desdeEspera(enEspera));
+    }
 
-            insertarSolicitud(conn, semestre, facultad, programa, cantSalones, cantLabs, status);
-            conn.close();
-            
+    /** Pasó el tiempo máximo en espera: se deniega, se registra y se publica. */
+    private static void vencerEnEspera(Trabajo enEspera) {
+        Trabajo trabajo = desdeEspera(enEspera);
+        trabajo.status = "Denegada";
+        denegadas.inc();
+        estadisticas.denegada(trabajo.solicitud);
+        etapaPersistir.enviar(trabajo);
+    }
+
+    private static Trabajo desdeEspera(Trabajo enEspera) {
+        String requestId = enEspera.solicitud.requestId;
+        Trabajo trabajo = new Trabajo(enEspera.mensaje, respuesta -> {
+            recientes.completar(requestId, respuesta);
+            publicarResultado(enEspera.mensaje, respuesta);
+        }, System.nanoTime(), 0);
+        trabajo.tipo = Trabajo.Tipo.ASIGNAR;
+        trabajo.partes = enEspera.partes;
+        trabajo.solicitud = enEspera.solicitud;
+        trabajo.enEsperaDesde = enEspera.enEsperaDesde;
+        trabajo.ultimoIntento = enEspera.ultimoIntento;
+        trabajo.tipoEspera = enEspera.tipoEspera;
+        return trabajo;
+    }
+
+    // Etapa persistir: un INSERT de varias filas por lote. El inventario ya se actualizó en asignar,
+    // así que un fallo aquí solo pierde el registro histórico, no cambia el resultado.
+    private static void persistir(List<Trabajo> lote) {
+        List<EventosJFR.InsertarSolicitud> eventos = new ArrayList<>(lote.size());
+        for (Trabajo trabajo : lote) {
+            EventosJFR.InsertarSolicitud evInsertar = new EventosJFR.InsertarSolicitud();
+            evInsertar.begin();
+            eventos.add(evInsertar);
+        }
+        try {
+            insertarSolicitudes(conexionHilo(), lote);
+        } catch (SQLException e) {
+            descartarConexionHilo();
+            persistenciasFallidas.sumar(lote.size());
+            logError.error("No se pudieron registrar {} solicitudes", e, lote.size());
+        }
+        for (int i = 0; i < lote.size(); i++) {
+            Trabajo trabajo = lote.get(i);
+            eventos.get(i).status = trabajo.status;
+            eventos.get(i).registrar(trabajo.solicitud);
             // Incluir requestId en la respuesta para correlación
-            return requestId + ",Resultado: " + status;
-            
-        } catch (Exception e) {
-            e.printStackTrace();
-            return "Error,Error procesando solicitud: " + e.getMessage();
+            terminar(trabajo, trabajo.solicitud.requestId + ",Resultado: " + trabajo.status);
+        }
+    }
+
+    // Etapa responder: devuelve la respuesta al hilo dueño del socket
+    private static void enviarRespuesta(Trabajo trabajo) {
+        trabajo.responder.accept(trabajo.respuesta);
+    }
+
+    /** Si el plazo del trabajo venció, lo responde "Timeout" y devuelve true: no pasa a la etapa siguiente. */
+    private static boolean vencido(Trabajo trabajo, Metricas.Contador descartes) {
+        if (!Plazo.vencido(trabajo.plazo)) {
+            return false;
+        }
+        descartes.inc();
+        vencidas.inc();
+        int coma = trabajo.mensaje.indexOf(',');
+        terminar(trabajo, Plazo.respuesta(coma > 0 ? trabajo.mensaje.substring(0, coma) : "Error", "servidor"));
+        return true;
+    }
+
+    /**
+     * Una etapa lanzó una excepción no controlada con el trabajo en mano: se responde igual con
+     * error, para que el cliente no quede esperando ni la solicitud en curso en recientes.
+     */
+    private static void fallo(Trabajo trabajo, RuntimeException e) {
+        if (trabajo.respuesta != null) {
+            return;   // ya se había respondido antes de fallar
+        }
+        errores.inc();
+        int coma = trabajo.mensaje.indexOf(',');
+        String requestId = trabajo.solicitud != null ? trabajo.solicitud.requestId
+                : coma > 0 ? trabajo.mensaje.substring(0, coma) : "Error";
+        terminar(trabajo, requestId + ",Error: Error procesando solicitud: " + e.getMessage());
+    }
+
+    private static void terminar(Trabajo trabajo, String respuesta) {
+        trabajo.respuesta = respuesta;
+        etapaResponder.enviar(trabajo);
+    }
+
+    private static Connection conexionHilo() throws SQLException {
+        Connection conn = conexionHilo.get();
+        if (conn == null || conn.isClosed()) {
+            conn = ConexionDB.conectar();
+            if (conn == null) {
+                throw new SQLException("Sin conexión a la base de datos");
+            }
+            conexionHilo.set(conn);
+        }
+        return conn;
+    }
+
+    private static void descartarConexionHilo() {
+        ConexionDB.cerrar(conexionHilo.get());
+        conexionHilo.remove();
+    }
+
+    // Esperamos: requestId,LIBERAR,semestre,facultad,programa,cantSalones,cantLabs (ya validada)
+    private static String procesarLiberacion(Connection conn, Solicitud solicitud) throws SQLException {
+        List<Integer> aulas = new ArrayList<>();
+        aulas.addAll(aulasDelPrograma(conn, solicitud.programa, "Salon", solicitud.semestre, solicitud.cantSalones));
+        aulas.addAll(aulasDelPrograma(conn, solicitud.programa, "Laboratorio", solicitud.semestre, solicitud.cantLabs));
+
+        int liberadas = concesiones.liberar(aulas);
+        liberaciones.inc();
+        return solicitud.requestId + ",Resultado: Liberada (" + liberadas + " aulas)";
+    }
+
+    // Esperamos: requestId,CANCELAR,requestIdOriginal,facultad,programa
+    private static String procesarCancelacion(String[] partes) {
+        String requestId = partes[0];
+        String original = partes[2];
+        String programa = partes[4];
+
+        int liberadas = concesiones.cancelar(original, programa);
+        if (liberadas < 0) {
+            errores.inc();
+            return requestId + ",Error: No hay una asignación vigente " + original + " para " + programa;
         }
+        cancelaciones.inc();
+        return requestId + ",Resultado: Cancelada (" + liberadas + " aulas)";
     }
 
     // Método de validación actualizado para recibir parámetros individuales
     private static boolean validacionData(String semestre, String facultad, String programa, int cantSalones, int cantLabs){
         try{
-            Connection conn = ConexionDB.conectar();
-
             // Validar semestre
             if(!semestre.equals("2025-10") && !semestre.equals("2025-20")){
                 throw new Exception("Semestre ingresado inválido");
             }
 
-            // Validar facultad
-            String sql = "SELECT id FROM Facultad WHERE nombre = ?";
-            try(PreparedStatement ps = conn.prepareStatement(sql)){
-                ps.setString(1, facultad);
-                ResultSet rs = ps.executeQuery();
-                if(!rs.next()){
-                    throw new Exception("La facultad ingresada no existe");
-                }
+            // Validar facultad y programa contra los datos de referencia en memoria
+            if(referencia.facultad(facultad) == null){
+                throw new Exception("La facultad ingresada no existe");
             }
-
-            // Validar programa
-            sql = "SELECT id FROM Programa WHERE nombre = ?";
-            try(PreparedStatement ps = conn.prepareStatement(sql)){
-                ps.setString(1, programa);
-                ResultSet rs = ps.executeQuery();
-                if(!rs.next()){
-                    throw new Exception("El Programa ingresado no existe");
-                }
+            if(referencia.programa(programa) == null){
+                throw new Exception("El Programa ingresado no existe");
             }
 
             // Validar cantidades
@@ -163,78 +748,154 @@ public class BackupCentralServer {
                 throw new Exception("Cantidad de Salones o Laboratorios inválida");
             }
 
-            conn.close();
             return true;
 
         }catch(Exception e){
-            System.out.println("Error procesando solicitud: " + e.getMessage());
+            logValidacion.log("Error procesando solicitud: {}", e.getMessage());
             return false;
         }
     }
 
-    private static int contarAulas(Connection conn, String tipo, String semestre, String estado) throws SQLException {
-        String sql = "SELECT COUNT(*) FROM Aulas a WHERE a.tipo = ? AND a.status = ? AND a.semestre = ? AND a.programa_id IS NULL";
-        try (PreparedStatement ps = conn.prepareStatement(sql)) {
-            ps.setString(1, tipo);
-            ps.setString(2, estado);
-            ps.setString(3, semestre);
-            ResultSet rs = ps.executeQuery();
-            return rs.next() ? rs.getInt(1) : 0;
-        }
+    private static void registrarIndicadores() {
+        Metricas.indicador("servidor_rol", "Rol de este servidor (1 = activo para el rol indicado)", () -> 1, "rol", ROL);
+    }
+
+    /**
+     * Carga que acompaña al PONG para que el HealthCheckManager reparta según ella: trabajos en
+     * las colas del pipeline, conexiones JDBC abiertas, p99 de las solicitudes desde el PING
+     * anterior y versión del inventario en memoria.
+     */
+    private static String carga() {
+        int cola = etapaDecodificar.pendientes() + etapaValidar.pendientes() + etapaAsignar.pendientes()
+                + etapaPersistir.pendientes() + etapaResponder.pendientes();
+        return "cola=" + cola
+                + ";conexiones=" + ConexionDB.enUso()
+                + ";p99Ms=" + duracion.percentilReciente(0.99) * 1000
+                + ";version=" + disponibilidad.version();
     }
 
-    private static void asignarAulas(Connection conn, String programa, String tipo, int cantidad) throws SQLException {
+    private static int contarAulas(Solicitud solicitud, String tipo) {
+        EventosJFR.ContarAulas evento = new EventosJFR.ContarAulas();
+        evento.begin();
+        int disponibles = indice.contar(solicitud.semestre, tipo, solicitud.requisitos);
+        evento.tipo = tipo;
+        evento.disponibles = disponibles;
+        evento.registrar(solicitud);
+        return disponibles;
+    }
+
+    private static List<Integer> asignarAulas(Connection conn, Solicitud solicitud, String tipo, int cantidad) throws SQLException {
+        EventosJFR.AsignarAulas evento = new EventosJFR.AsignarAulas();
+        evento.begin();
+        String programa = solicitud.programa;
         int program_id = 0;
 
-        // Paso 1: Obtener ID del programa
-        String program_id_query = "SELECT id FROM Programa WHERE nombre = ?";
-        try (PreparedStatement ps = conn.prepareStatement(program_id_query)) {
-            ps.setString(1, programa);
-            ResultSet rs = ps.executeQuery();
-            if (rs.next()) {
-                program_id = rs.getInt(1);
-            }
-            rs.close();
+        // Paso 1: Obtener ID del programa (datos de referencia en memoria)
+        Integer id_programa = referencia.programa(programa);
+        if (id_programa != null) {
+            program_id = id_programa;
         }
 
-        // Paso 2: Obtener IDs de aulas disponibles
-        ArrayList<Integer> idsDisponibles = new ArrayList<>();
-        String status_query = "SELECT id FROM Aulas WHERE status = 'Disponible' AND tipo = ? LIMIT ?";
-        try (PreparedStatement stmt = conn.prepareStatement(status_query)) {
-            stmt.setString(1, tipo);
-            stmt.setInt(2, cantidad);
-            ResultSet rs_status = stmt.executeQuery();
-            while (rs_status.next()) {
-                idsDisponibles.add(rs_status.getInt("id"));
-            }
-        }
+        // Paso 2: Reservar en el índice las aulas libres que mejor se ajustan a los requisitos
+        List<Integer> reservadas = indice.reservar(solicitud.semestre, tipo, cantidad, solicitud.requisitos);
 
-        // Paso 3: Actualizar aulas individualmente
-        String update_query = "UPDATE Aulas SET status = ?, programa_id = ? WHERE id = ?";
+        // Paso 3: Actualizar aulas individualmente; si alguna ya no estaba libre (el índice iba
+        // atrasado respecto de un cambio hecho fuera del servidor) sigue ocupada en el índice y no se cuenta
+        ArrayList<Integer> idsDisponibles = new ArrayList<>();
+        boolean desactualizado = false;
+        String update_query = "UPDATE Aulas SET status = ?, programa_id = ? WHERE id = ? "
+                + "AND status = 'Disponible' AND programa_id IS NULL";
         try (PreparedStatement updateStmt = conn.prepareStatement(update_query)) {
-            for (int id : idsDisponibles) {
+            for (int id : reservadas) {
                 updateStmt.setString(1, "Ocupado");
                 updateStmt.setInt(2, program_id);
                 updateStmt.setInt(3, id);
-                updateStmt.executeUpdate();
+                if (updateStmt.executeUpdate() == 1) {
+                    idsDisponibles.add(id);
+                } else {
+                    desactualizado = true;
+                }
             }
+        } catch (SQLException e) {
+            // Se desconoce cuáles quedaron marcadas: la próxima reconstrucción del índice lo corrige
+            indice.recargarPronto();
+            throw e;
+        } finally {
+            indice.confirmar(reservadas);
+        }
+        if (desactualizado) {
+            indice.recargarPronto();
         }
+        disponibilidad.descontar(solicitud.semestre, tipo, idsDisponibles.size());
+        evento.tipo = tipo;
+        evento.asignadas = idsDisponibles.size();
+        evento.registrar(solicitud);
+        return idsDisponibles;
     }
 
-    private static void insertarSolicitud(Connection conn, String semestre, String facultad, String programa,
-                                          int cantSalones, int cantLabs, String status) throws SQLException {
-
-        String sql = "INSERT INTO Solicitud (semestre, facultad_id, programa_id, cant_salon, cant_lab, status) " +
-                     "VALUES (?, " +
-                     "(SELECT id FROM Facultad WHERE nombre = ?), " +
-                     "(SELECT id FROM Programa WHERE nombre = ?), ?, ?, ?)";
+    // Aulas ocupadas por el programa que todavía no están en cola de liberación
+    private static List<Integer> aulasDelPrograma(Connection conn, String programa, String tipo, String semestre,
+                                                  int cantidad) throws SQLException {
+        List<Integer> ids = new ArrayList<>();
+        if (cantidad <= 0) {
+            return ids;
+        }
+        String sql = "SELECT a.id FROM Aulas a JOIN Programa p ON a.programa_id = p.id "
+                + "WHERE p.nombre = ? AND a.tipo = ? AND a.semestre = ? AND a.status = 'Ocupado'";
         try (PreparedStatement ps = conn.prepareStatement(sql)) {
-            ps.setString(1, semestre);
-            ps.setString(2, facultad);
-            ps.setString(3, programa);
-            ps.setInt(4, cantSalones);
-            ps.setInt(5, cantLabs);
-            ps.setString(6, status);
+            ps.setString(1, programa);
+            ps.setString(2, tipo);
+            ps.setString(3, semestre);
+            ResultSet rs = ps.executeQuery();
+            while (rs.next() && ids.size() < cantidad) {
+                int id = rs.getInt(1);
+                if (!liberador.pendiente(id)) {
+                    ids.add(id);
+                }
+            }
+        }
+        return ids;
+    }
+
+    // Estado registrado de las solicitudes que ya no están en memoria; las que no aparecen no se conocen
+    private static Map<String, String> estadosPersistidos(Connection conn, List<String> requestIds)
+            throws SQLException {
+        StringBuilder sql = new StringBuilder("SELECT request_id, status FROM Solicitud WHERE request_id IN (");
+        for (int i = 0; i < requestIds.size(); i++) {
+            sql.append(i == 0 ? "?" : ", ?");
+        }
+        Map<String, String> estados = new HashMap<>();
+        try (PreparedStatement ps = conn.prepareStatement(sql.append(")").toString())) {
+            for (int i = 0; i < requestIds.size(); i++) {
+                ps.setString(i + 1, requestIds.get(i));
+            }
+            ResultSet rs = ps.executeQuery();
+            while (rs.next()) {
+                estados.put(rs.getString(1), rs.getString(2));
+            }
+        }
+        return estados;
+    }
+
+    // Un solo INSERT con una fila por solicitud del lote
+    private static void insertarSolicitudes(Connection conn, List<Trabajo> lote) throws SQLException {
+        StringBuilder sql = new StringBuilder("INSERT INTO Solicitud (request_id, semestre, facultad_id, programa_id, "
+                + "cant_salon, cant_lab, status) VALUES ");
+        for (int i = 0; i < lote.size(); i++) {
+            sql.append(i == 0 ? "(?, ?, ?, ?, ?, ?, ?)" : ", (?, ?, ?, ?, ?, ?, ?)");
+        }
+        try (PreparedStatement ps = conn.prepareStatement(sql.toString())) {
+            int c = 1;
+            for (Trabajo trabajo : lote) {
+                Solicitud solicitud = trabajo.solicitud;
+                ps.setString(c++, solicitud.requestId);
+                ps.setString(c++, solicitud.semestre);
+                ps.setObject(c++, referencia.facultad(solicitud.facultad));
+                ps.setObject(c++, referencia.programa(solicitud.programa));
+                ps.setInt(c++, solicitud.cantSalones);
+                ps.setInt(c++, solicitud.cantLabs);
+                ps.setString(c++, trabajo.status);
+            }
             ps.executeUpdate();
         }
     }
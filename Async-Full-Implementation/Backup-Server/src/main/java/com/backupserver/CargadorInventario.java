@@ -0,0 +1,369 @@
+package com.backupserver;
+
+import org.zeromq.SocketType;
+import org.zeromq.ZContext;
+import org.zeromq.ZMQ;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Carga masiva del inventario para abrir un semestre:
+ *   java ... com.backupserver.CargadorInventario <directorio>
+ * Lee del directorio los archivos que existan, cada uno con una línea de cabecera:
+ *   facultades.csv  nombre
+ *   programas.csv   nombre,facultad
+ *   aulas.csv       id,tipo,semestre,capacidad,edificio,equipamiento
+ * (tipo Salon o Laboratorio; capacidad, edificio y equipamiento pueden ir vacíos, y el
+ * equipamiento son etiquetas separadas por '+', p. ej. proyector+pc)
+ *
+ * Las facultades van primero porque los programas las referencian; después programas y aulas
+ * se cargan a la vez. Cada tabla reparte sus lotes de -Dcarga.lote (1000) filas entre
+ * -Dcarga.hilos (4) hilos, cada uno con su conexión. Cada lote es un solo INSERT de varias filas
+ * en su propia transacción, y es un upsert (ON DUPLICATE KEY UPDATE): volver a cargar el mismo
+ * archivo no duplica nada, así que si un lote falla basta con correr la carga de nuevo. Un aula
+ * que ya existe conserva su estado y su programa: recargar no libera aulas asignadas.
+ *
+ * Al terminar se envía RECARGAR a cada servidor de -Dcarga.servidores (primario y respaldo)
+ * para que refresquen facultades, programas, disponibilidad e índice de aulas sin esperar a su
+ * próximo ciclo.
+ */
+public class CargadorInventario {
+
+    private static final List<Object[]> FIN = new ArrayList<>(0);
+    private static final long ESPERA_SERVIDOR_MS = 5000;
+
+    private final int hilos = Math.max(1, Integer.getInteger("carga.hilos", 4));
+    private final int filasPorLote = Math.max(1, Integer.getInteger("carga.lote", 1000));
+    private final String[] servidores = System.getProperty("carga.servidores",
+            "tcp://10.43.103.67:5556,tcp://10.43.96.42:5556").split(",");
+    private final File directorio;
+
+    public static void main(String[] args) {
+        if (args.length != 1) {
+            System.out.println("Uso: java CargadorInventario <directorio con facultades.csv, programas.csv, aulas.csv>");
+            return;
+        }
+        CargadorInventario cargador = new CargadorInventario(new File(args[0]));
+        long inicio = System.nanoTime();
+        try {
+            cargador.cargar();
+        } catch (SQLException | IOException e) {
+            System.err.println("Error en la carga: " + e.getMessage());
+            System.exit(1);
+        }
+        System.out.println("Carga terminada en " + (System.nanoTime() - inicio) / 1_000_000 + " ms");
+        cargador.avisarServidores();
+    }
+
+    private CargadorInventario(File directorio) {
+        this.directorio = directorio;
+    }
+
+    private void cargar() throws SQLException, IOException {
+        cargar(new Tabla("Facultad", "(nombre)", "(?)", "nombre = VALUES(nombre)", 1, campos -> campos));
+
+        Map<String, Integer> facultades = facultades();
+        Tabla programas = new Tabla("Programa", "(nombre, facultad_id)", "(?, ?)",
+                "facultad_id = VALUES(facultad_id)", 2, campos -> {
+                    Integer facultad = facultades.get(campos[1]);
+                    if (facultad == null) {
+                        throw new IllegalArgumentException("facultad desconocida: " + campos[1]);
+                    }
+                    return new Object[] {campos[0], facultad};
+                });
+        Tabla aulas = new Tabla("Aulas", "(id, tipo, status, semestre, capacidad, edificio, equipamiento)",
+                "(?, ?, 'Disponible', ?, ?, ?, ?)",
+                "tipo = VALUES(tipo), semestre = VALUES(semestre), capacidad = VALUES(capacidad), "
+                        + "edificio = VALUES(edificio), equipamiento = VALUES(equipamiento)", 6, campos -> {
+                    if (!"Salon".equals(campos[1]) && !"Laboratorio".equals(campos[1])) {
+                        throw new IllegalArgumentException("tipo inválido: " + campos[1]);
+                    }
+                    return new Object[] {Integer.parseInt(campos[0]), campos[1], campos[2],
+                            campos[3].isEmpty() ? 0 : Integer.parseInt(campos[3]),
+                            campos[4].isEmpty() ? null : campos[4],
+                            campos[5].isEmpty() ? null : campos[5]};
+                });
+
+        // Programas y aulas no dependen entre sí
+        Exception[] error = new Exception[1];
+        Thread hiloProgramas = new Thread(() -> {
+            try {
+                cargar(programas);
+            } catch (SQLException | IOException e) {
+                error[0] = e;
+            }
+        }, "carga-Programa");
+        hiloProgramas.start();
+        cargar(aulas);
+        try {
+            hiloProgramas.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (error[0] instanceof SQLException) {
+            throw (SQLException) error[0];
+        }
+        if (error[0] instanceof IOException) {
+            throw (IOException) error[0];
+        }
+    }
+
+    /**
+     * Lee el archivo de la tabla en lotes y los reparte por una cola acotada entre los hilos
+     * de escritura: la lectura espera si la base de datos va más lenta.
+     */
+    private void cargar(Tabla tabla) throws SQLException, IOException {
+        File archivo = new File(directorio, tabla.archivo());
+        if (!archivo.isFile()) {
+            return;
+        }
+        long inicio = System.nanoTime();
+        ArrayBlockingQueue<List<Object[]>> cola = new ArrayBlockingQueue<>(2 * hilos);
+        List<Escritor> escritores = new ArrayList<>(hilos);
+        for (int i = 0; i < hilos; i++) {
+            Connection conn = ConexionDB.conectar();
+            if (conn == null) {
+                for (Escritor escritor : escritores) {
+                    escritor.terminar(cola);
+                }
+                throw new SQLException("Sin conexión a la base de datos");
+            }
+            Escritor escritor = new Escritor(tabla, conn, cola);
+            escritores.add(escritor);
+            escritor.hilo.start();
+        }
+
+        long rechazadas = 0;
+        try (BufferedReader lector = Files.newBufferedReader(archivo.toPath(), StandardCharsets.UTF_8)) {
+            String linea = lector.readLine();   // cabecera
+            int numero = 1;
+            List<Object[]> lote = new ArrayList<>(filasPorLote);
+            while ((linea = lector.readLine()) != null) {
+                numero++;
+                if (linea.isBlank()) {
+                    continue;
+                }
+                String[] campos = linea.split(",", -1);
+                try {
+                    if (campos.length != tabla.campos) {
+                        throw new IllegalArgumentException("se esperan " + tabla.campos + " campos");
+                    }
+                    for (int i = 0; i < campos.length; i++) {
+                        campos[i] = campos[i].trim();
+                    }
+                    lote.add(tabla.convertir.apply(campos));
+                } catch (IllegalArgumentException e) {
+                    rechazadas++;
+                    System.err.println(archivo.getName() + ":" + numero + ": " + e.getMessage());
+                    continue;
+                }
+                if (lote.size() == filasPorLote) {
+                    poner(cola, lote);
+                    lote = new ArrayList<>(filasPorLote);
+                }
+            }
+            if (!lote.isEmpty()) {
+                poner(cola, lote);
+            }
+        } finally {
+            for (Escritor escritor : escritores) {
+                escritor.terminar(cola);
+            }
+        }
+
+        long cargadas = 0;
+        long fallidas = 0;
+        for (Escritor escritor : escritores) {
+            escritor.esperar();
+            cargadas += escritor.cargadas.get();
+            fallidas += escritor.fallidas.get();
+        }
+        long ms = Math.max(1, (System.nanoTime() - inicio) / 1_000_000);
+        System.out.println(tabla.nombre + ": " + cargadas + " filas en " + ms + " ms (" + cargadas * 1000 / ms
+                + " filas/s), " + fallidas + " en lotes fallidos, " + rechazadas + " líneas rechazadas");
+    }
+
+    private static void poner(ArrayBlockingQueue<List<Object[]>> cola, List<Object[]> lote) throws IOException {
+        try {
+            cola.put(lote);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Carga interrumpida");
+        }
+    }
+
+    private static Map<String, Integer> facultades() throws SQLException {
+        Connection conn = ConexionDB.conectar();
+        if (conn == null) {
+            throw new SQLException("Sin conexión a la base de datos");
+        }
+        Map<String, Integer> ids = new HashMap<>();
+        try (PreparedStatement ps = conn.prepareStatement("SELECT id, nombre FROM Facultad");
+             ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                ids.put(rs.getString(2), rs.getInt(1));
+            }
+        } finally {
+            ConexionDB.cerrar(conn);
+        }
+        return ids;
+    }
+
+    /** RECARGAR a cada servidor, directo a su ROUTER; uno que no conteste no detiene la carga. */
+    private void avisarServidores() {
+        try (ZContext context = new ZContext()) {
+            for (String servidor : servidores) {
+                ZMQ.Socket socket = context.createSocket(SocketType.DEALER);
+                socket.setLinger(0);
+                socket.setReceiveTimeOut((int) ESPERA_SERVIDOR_MS);
+                socket.connect(servidor);
+                socket.send(UUID.randomUUID() + ",RECARGAR");
+                String respuesta = socket.recvStr();
+                System.out.println(servidor + ": " + (respuesta != null ? respuesta : "sin respuesta; recargará en su próximo ciclo"));
+            }
+        }
+    }
+
+    /** Cómo se escribe una tabla: columnas, valores de cada fila y qué actualizar si ya existe. */
+    private static final class Tabla {
+
+        final String nombre;
+        final String columnas;
+        final String valores;
+        final String actualizacion;
+        final int campos;
+        final Function<String[], Object[]> convertir;   // IllegalArgumentException si la línea no sirve
+
+        Tabla(String nombre, String columnas, String valores, String actualizacion, int campos,
+              Function<String[], Object[]> convertir) {
+            this.nombre = nombre;
+            this.columnas = columnas;
+            this.valores = valores;
+            this.actualizacion = actualizacion;
+            this.campos = campos;
+            this.convertir = convertir;
+        }
+
+        String archivo() {
+            switch (nombre) {
+                case "Facultad":
+                    return "facultades.csv";
+                case "Programa":
+                    return "programas.csv";
+                default:
+                    return "aulas.csv";
+            }
+        }
+
+        String sql(int filas) {
+            StringBuilder sql = new StringBuilder("INSERT INTO ").append(nombre).append(' ').append(columnas)
+                    .append(" VALUES ");
+            for (int i = 0; i < filas; i++) {
+                sql.append(i == 0 ? "" : ", ").append(valores);
+            }
+            return sql.append(" ON DUPLICATE KEY UPDATE ").append(actualizacion).toString();
+        }
+    }
+
+    /** Un hilo de escritura con su conexión; cada lote en su propia transacción. */
+    private final class Escritor {
+
+        final Tabla tabla;
+        final Connection conn;
+        final Thread hilo;
+        final AtomicLong cargadas = new AtomicLong();
+        final AtomicLong fallidas = new AtomicLong();
+        // El SQL de un lote completo se arma una vez; el último, más corto, aparte
+        private final String sqlLote;
+
+        Escritor(Tabla tabla, Connection conn, ArrayBlockingQueue<List<Object[]>> cola) {
+            this.tabla = tabla;
+            this.conn = conn;
+            this.sqlLote = tabla.sql(filasPorLote);
+            this.hilo = new Thread(() -> escribir(cola), "carga-" + tabla.nombre);
+        }
+
+        void terminar(ArrayBlockingQueue<List<Object[]>> cola) {
+            try {
+                cola.put(FIN);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        void esperar() {
+            try {
+                hilo.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private void escribir(ArrayBlockingQueue<List<Object[]>> cola) {
+            try {
+                conn.setAutoCommit(false);
+                for (List<Object[]> lote = cola.take(); lote != FIN; lote = cola.take()) {
+                    escribirLote(lote);
+                }
+            } catch (SQLException e) {
+                System.err.println("No se pudo preparar la conexión de " + tabla.nombre + ": " + e.getMessage());
+                descartar(cola);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                ConexionDB.cerrar(conn);
+            }
+        }
+
+        private void escribirLote(List<Object[]> lote) {
+            try (PreparedStatement ps = conn.prepareStatement(
+                    lote.size() == filasPorLote ? sqlLote : tabla.sql(lote.size()))) {
+                int c = 1;
+                for (Object[] fila : lote) {
+                    for (Object valor : fila) {
+                        ps.setObject(c++, valor);
+                    }
+                }
+                ps.executeUpdate();
+                conn.commit();
+                cargadas.addAndGet(lote.size());
+            } catch (SQLException e) {
+                try {
+                    conn.rollback();
+                } catch (SQLException ignorada) {
+                    // La conexión sigue; el próximo lote abre otra transacción
+                }
+                fallidas.addAndGet(lote.size());
+                System.err.println("Falló un lote de " + lote.size() + " filas de " + tabla.nombre + ": "
+                        + e.getMessage());
+            }
+        }
+
+        // Sin conexión útil se vacía la cola hasta FIN contando todo como fallido, para no trabar la lectura
+        private void descartar(ArrayBlockingQueue<List<Object[]>> cola) {
+            try {
+                for (List<Object[]> lote = cola.take(); lote != FIN; lote = cola.take()) {
+                    fallidas.addAndGet(lote.size());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
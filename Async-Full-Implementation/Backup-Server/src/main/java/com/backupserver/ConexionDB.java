@@ -7,15 +7,49 @@ import java.sql.SQLException;
 public class ConexionDB {
 
     private static final String DB_URL = "jdbc:mysql://localhost:3306/DistribuidosDB";
-    private static final String USER = "host2"; 
-    private static final String PASSWORD = "12345678"; 
+    private static final String USER = "host1";
+    private static final String PASSWORD = "12345678";
+
+    // No hay pool: cada llamada abre una conexión nueva, así que se mide apertura, uso y fallos
+    private static final Metricas.Contador abiertas = Metricas.contador("servidor_db_conexiones_abiertas_total",
+            "Conexiones JDBC abiertas desde el arranque");
+    private static final Metricas.Contador fallidas = Metricas.contador("servidor_db_conexiones_fallidas_total",
+            "Intentos de conexión JDBC fallidos");
+    private static final Metricas.Contador enUso = Metricas.indicadorMovil("servidor_db_conexiones_en_uso",
+            "Conexiones JDBC abiertas y todavía no cerradas");
+    private static final Metricas.Histograma apertura = Metricas.histograma("servidor_db_apertura_segundos",
+            "Tiempo para abrir una conexión JDBC", Metricas.LATENCIA_SEGUNDOS);
 
     public static Connection conectar() {
+        long inicio = System.nanoTime();
         try {
-            return DriverManager.getConnection(DB_URL, USER, PASSWORD);
+            Connection conn = DriverManager.getConnection(DB_URL, USER, PASSWORD);
+            apertura.observarDesde(inicio);
+            abiertas.inc();
+            enUso.inc();
+            return conn;
         } catch (SQLException e) {
+            fallidas.inc();
             System.err.println("Error al conectar con la base de datos: " + e.getMessage());
             return null;
         }
     }
+
+    /** Conexiones abiertas y todavía no cerradas. */
+    public static long enUso() {
+        return enUso.valor();
+    }
+
+    public static void cerrar(Connection conn) {
+        if (conn == null) {
+            return;
+        }
+        try {
+            conn.close();
+        } catch (SQLException e) {
+            System.err.println("Error al cerrar la conexión: " + e.getMessage());
+        } finally {
+            enUso.dec();
+        }
+    }
 }
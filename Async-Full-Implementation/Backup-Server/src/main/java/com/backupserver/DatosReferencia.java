@@ -0,0 +1,112 @@
+package com.backupserver;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Facultades y programas en memoria (nombre -> id) para validar sin ir a la base de datos.
+ *
+ * Se recarga cada -Dreferencia.refrescoMs (por defecto 60000). Un nombre desconocido
+ * provoca además una recarga inmediata, a lo sumo una por segundo, para que un
+ * programa recién creado no tenga que esperar al siguiente ciclo, y recargarPronto() la pide
+ * desde fuera (RECARGAR, tras una carga masiva del inventario).
+ */
+public class DatosReferencia {
+
+    private static final long RECARGA_MINIMA_NS = 1_000_000_000L;
+
+    private volatile Map<String, Integer> facultades = Collections.emptyMap();
+    private volatile Map<String, Integer> programas = Collections.emptyMap();
+    private volatile long ultimaRecarga;
+    private final ScheduledExecutorService recargas = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "recarga-referencia");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final Metricas.Contador recargadas = Metricas.contador("servidor_referencia_recargas_total",
+            "Recargas de facultades y programas desde la base de datos");
+    private final LogAsincrono.Tipo logError = LogAsincrono.tipo("servidor.referencia",
+            LogAsincrono.Nivel.ERROR, 1, 1);
+
+    public void iniciar() {
+        recargar();
+        long periodo = Long.getLong("referencia.refrescoMs", 60000);
+        recargas.scheduleAtFixedRate(this::recargar, periodo, periodo, TimeUnit.MILLISECONDS);
+    }
+
+    /** Recarga en el hilo de recargas, sin esperar el resultado. */
+    public void recargarPronto() {
+        recargas.execute(this::recargar);
+    }
+
+    /** Id de la facultad, o null si no existe. */
+    public Integer facultad(String nombre) {
+        Integer id = facultades.get(nombre);
+        if (id == null && recargarSiVieja()) {
+            id = facultades.get(nombre);
+        }
+        return id;
+    }
+
+    /** Id del programa, o null si no existe. */
+    public Integer programa(String nombre) {
+        Integer id = programas.get(nombre);
+        if (id == null && recargarSiVieja()) {
+            id = programas.get(nombre);
+        }
+        return id;
+    }
+
+    private boolean recargarSiVieja() {
+        if (System.nanoTime() - ultimaRecarga < RECARGA_MINIMA_NS) {
+            return false;
+        }
+        synchronized (this) {
+            if (System.nanoTime() - ultimaRecarga < RECARGA_MINIMA_NS) {
+                return true;
+            }
+            return recargar();
+        }
+    }
+
+    public synchronized boolean recargar() {
+        ultimaRecarga = System.nanoTime();
+        Connection conn = ConexionDB.conectar();
+        try {
+            if (conn == null) {
+                throw new SQLException("Sin conexión a la base de datos");
+            }
+            Map<String, Integer> nuevasFacultades = leer(conn, "SELECT id, nombre FROM Facultad");
+            Map<String, Integer> nuevosProgramas = leer(conn, "SELECT id, nombre FROM Programa");
+            facultades = nuevasFacultades;
+            programas = nuevosProgramas;
+            recargadas.inc();
+            return true;
+        } catch (SQLException e) {
+            // Se siguen usando los datos anteriores
+            logError.log("No se pudieron recargar facultades y programas: {}", e.getMessage());
+            return false;
+        } finally {
+            ConexionDB.cerrar(conn);
+        }
+    }
+
+    private static Map<String, Integer> leer(Connection conn, String sql) throws SQLException {
+        Map<String, Integer> ids = new HashMap<>();
+        try (PreparedStatement ps = conn.prepareStatement(sql); ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                ids.put(rs.getString(2), rs.getInt(1));
+            }
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,184 @@
+package com.backupserver;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * Una etapa del pipeline del servidor: cola acotada más un grupo de hilos propio.
+ *
+ * Hilos y capacidad se toman de -Detapa.<nombre>.hilos y -Detapa.<nombre>.cola, con los
+ * valores por defecto del constructor. Cada etapa publica su cola, hilos ocupados,
+ * utilización, espera en cola y tiempo de servicio con la etiqueta etapa=<nombre>, así
+ * que la etapa saturada es la que muestra utilización cercana a 1 y cola creciente.
+ * Las etapas por lotes sacan hasta "lote" elementos de una vez y los atienden juntos.
+ * Una etapa con LimiteConcurrencia arranca tantos hilos como el máximo del límite, y cada
+ * hilo espera lugar dentro del límite antes de atender lo que tomó de la cola.
+ * Si el manejador lanza una excepción, cada elemento que tenía en mano pasa por alFallar:
+ * el que lo tomó no debe quedarse sin respuesta porque la etapa falló.
+ */
+public class Etapa<E> {
+
+    private final String nombre;
+    private final int hilos;
+    private final int lote;
+    private final ArrayBlockingQueue<Elemento<E>> cola;
+    private final Consumer<List<E>> manejador;
+    private final LimiteConcurrencia limite;   // null si la etapa usa todos sus hilos
+    private volatile BiConsumer<E, RuntimeException> alFallar;   // null: solo se registra el error
+
+    private final Metricas.Contador ocupados;
+    private final Metricas.Contador rechazos;
+    private final Metricas.Histograma espera;
+    private final Metricas.Histograma servicio;
+    private final LogAsincrono.Tipo logError;
+
+    /** Etapa que atiende un elemento a la vez. */
+    public static <E> Etapa<E> de(String nombre, int hilos, int capacidad, Consumer<E> manejador) {
+        return new Etapa<>(nombre, hilos, capacidad, 1, null, elementos -> manejador.accept(elementos.get(0)));
+    }
+
+    /** Etapa de a un elemento cuya concurrencia la decide un límite adaptativo. */
+    public static <E> Etapa<E> conLimite(String nombre, int capacidad, LimiteConcurrencia limite,
+                                         Consumer<E> manejador) {
+        return new Etapa<>(nombre, limite.maximo(), capacidad, 1, limite,
+                elementos -> manejador.accept(elementos.get(0)));
+    }
+
+    /** Etapa que atiende hasta "lote" elementos juntos (p. ej. un INSERT de varias filas). */
+    public static <E> Etapa<E> porLotes(String nombre, int hilos, int capacidad, int lote,
+                                        Consumer<List<E>> manejador) {
+        return new Etapa<>(nombre, hilos, capacidad, lote, null, manejador);
+    }
+
+    private Etapa(String nombre, int hilos, int capacidad, int lote, LimiteConcurrencia limite,
+                  Consumer<List<E>> manejador) {
+        this.nombre = nombre;
+        this.hilos = limite != null ? hilos : Integer.getInteger("etapa." + nombre + ".hilos", hilos);
+        this.lote = lote;
+        this.cola = new ArrayBlockingQueue<>(Integer.getInteger("etapa." + nombre + ".cola", capacidad));
+        this.manejador = manejador;
+        this.limite = limite;
+
+        Metricas.indicador("servidor_etapa_hilos", "Hilos asignados a la etapa", () -> this.hilos, "etapa", nombre);
+        Metricas.indicador("servidor_etapa_cola", "Elementos esperando en la cola de la etapa", cola::size,
+                "etapa", nombre);
+        Metricas.indicador("servidor_etapa_cola_capacidad", "Capacidad de la cola de la etapa",
+                () -> cola.size() + cola.remainingCapacity(), "etapa", nombre);
+        ocupados = Metricas.indicadorMovil("servidor_etapa_ocupados", "Hilos de la etapa atendiendo un elemento",
+                "etapa", nombre);
+        Metricas.indicador("servidor_etapa_utilizacion", "Hilos ocupados / hilos de la etapa",
+                () -> (double) ocupados.valor() / this.hilos, "etapa", nombre);
+        rechazos = Metricas.contador("servidor_etapa_rechazos_total", "Elementos rechazados por cola llena",
+                "etapa", nombre);
+        espera = Metricas.histograma("servidor_etapa_espera_segundos", "Tiempo en la cola de la etapa",
+                Metricas.LATENCIA_SEGUNDOS, "etapa", nombre);
+        servicio = Metricas.histograma("servidor_etapa_servicio_segundos", "Tiempo de atención en la etapa",
+                Metricas.LATENCIA_SEGUNDOS, "etapa", nombre);
+        logError = LogAsincrono.tipo("servidor.etapa." + nombre, LogAsincrono.Nivel.ERROR, 1, 20);
+
+        for (int i = 0; i < this.hilos; i++) {
+            Thread hilo = new Thread(this::atender, "etapa-" + nombre + "-" + i);
+            hilo.setDaemon(true);
+            hilo.start();
+        }
+    }
+
+    /** Qué hacer con cada elemento cuyo manejador lanzó una excepción (p. ej. responderle con error). */
+    public Etapa<E> alFallar(BiConsumer<E, RuntimeException> alFallar) {
+        this.alFallar = alFallar;
+        return this;
+    }
+
+    /** Encola esperando si la cola está llena: la contrapresión llega a la etapa anterior. */
+    public void enviar(E valor) {
+        try {
+            cola.put(new Elemento<>(valor));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** Encola sin esperar; false si la cola está llena. Para la entrada, que nunca debe bloquearse. */
+    public boolean ofrecer(E valor) {
+        if (cola.offer(new Elemento<>(valor))) {
+            return true;
+        }
+        rechazos.inc();
+        return false;
+    }
+
+    /** Elementos esperando en la cola de la etapa. */
+    public int pendientes() {
+        return cola.size();
+    }
+
+    private void atender() {
+        List<Elemento<E>> tomados = new ArrayList<>(lote);
+        List<E> valores = new ArrayList<>(lote);
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                Elemento<E> primero = cola.poll(1, TimeUnit.SECONDS);
+                if (primero == null) {
+                    continue;
+                }
+                tomados.add(primero);
+                if (lote > 1) {
+                    cola.drainTo(tomados, lote - 1);
+                }
+                if (limite != null) {
+                    limite.adquirir();
+                }
+                long inicio = System.nanoTime();
+                for (Elemento<E> elemento : tomados) {
+                    espera.observarNanos(inicio - elemento.encolado);
+                    valores.add(elemento.valor);
+                }
+                ocupados.inc();
+                try {
+                    manejador.accept(valores);
+                } catch (RuntimeException e) {
+                    logError.error("Error no controlado en la etapa " + nombre + ": {}", e, e.getMessage());
+                    fallar(valores, e);
+                } finally {
+                    if (limite != null) {
+                        limite.liberar(inicio);
+                    }
+                    ocupados.dec();
+                    servicio.observarDesde(inicio);
+                    tomados.clear();
+                    valores.clear();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void fallar(List<E> valores, RuntimeException error) {
+        BiConsumer<E, RuntimeException> alFallar = this.alFallar;
+        if (alFallar == null) {
+            return;
+        }
+        for (E valor : valores) {
+            try {
+                alFallar.accept(valor, error);
+            } catch (RuntimeException e) {
+                logError.error("Error atendiendo una falla en la etapa " + nombre + ": {}", e, e.getMessage());
+            }
+        }
+    }
+
+    private static final class Elemento<E> {
+
+        final E valor;
+        final long encolado = System.nanoTime();
+
+        Elemento(E valor) {
+            this.valor = valor;
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.backupserver;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Devuelve aulas al estado 'Disponible' en lotes.
+ *
+ * Liberaciones, cancelaciones y vencimientos solo encolan ids; un hilo de fondo los
+ * agrupa y los persiste con un UPDATE ... WHERE id IN (...) por lote, en vez de un
+ * UPDATE por aula desde el hilo que atiende la solicitud.
+ */
+public class LiberadorAulas {
+
+    private static final int TAMANO_LOTE = 500;
+
+    private final LinkedBlockingQueue<Integer> cola = new LinkedBlockingQueue<>();
+    private final Set<Integer> pendientes = ConcurrentHashMap.newKeySet();
+    private final long intervaloMs;
+    private volatile Consumer<List<Integer>> alPersistir = aulas -> { };
+
+    private final Metricas.Histograma duracionLote = Metricas.histograma("servidor_liberacion_lote_segundos",
+            "Tiempo de persistir un lote de aulas liberadas", Metricas.LATENCIA_SEGUNDOS);
+    private final Metricas.Contador lotesFallidos = Metricas.contador("servidor_liberacion_lotes_fallidos_total",
+            "Lotes de liberación que fallaron y se reintentarán");
+    private final LogAsincrono.Tipo logError = LogAsincrono.tipo("servidor.liberacion",
+            LogAsincrono.Nivel.ERROR, 1, 5);
+
+    public LiberadorAulas(long intervaloMs) {
+        this.intervaloMs = intervaloMs;
+        Metricas.indicador("servidor_liberaciones_pendientes", "Aulas liberadas que aún no se persisten",
+                pendientes::size);
+        Thread hilo = new Thread(this::persistirEnFondo, "liberador-aulas");
+        hilo.setDaemon(true);
+        hilo.start();
+    }
+
+    /** Encola aulas para liberar; las que ya estaban pendientes se ignoran. */
+    public int encolar(List<Integer> aulas) {
+        int encoladas = 0;
+        for (Integer id : aulas) {
+            if (pendientes.add(id)) {
+                cola.add(id);
+                encoladas++;
+            }
+        }
+        return encoladas;
+    }
+
+    /** Acción a ejecutar con cada lote persistido (p. ej. devolverlo al índice y recargar la disponibilidad). */
+    public void alPersistir(Consumer<List<Integer>> accion) {
+        this.alPersistir = accion;
+    }
+
+    public boolean pendiente(int id) {
+        return pendientes.contains(id);
+    }
+
+    private void persistirEnFondo() {
+        List<Integer> lote = new ArrayList<>(TAMANO_LOTE);
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                Integer primero = cola.poll(intervaloMs, TimeUnit.MILLISECONDS);
+                if (primero == null) {
+                    continue;
+                }
+                lote.add(primero);
+                cola.drainTo(lote, TAMANO_LOTE - 1);
+                persistir(lote);
+                lote.clear();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void persistir(List<Integer> lote) throws InterruptedException {
+        long inicio = System.nanoTime();
+        StringBuilder sql = new StringBuilder(
+                "UPDATE Aulas SET status = 'Disponible', programa_id = NULL WHERE status = 'Ocupado' AND id IN (");
+        for (int i = 0; i < lote.size(); i++) {
+            sql.append(i == 0 ? "?" : ",?");
+        }
+        sql.append(')');
+
+        Connection conn = null;
+        try {
+            conn = ConexionDB.conectar();
+            if (conn == null) {
+                throw new SQLException("Sin conexión a la base de datos");
+            }
+            try (PreparedStatement ps = conn.prepareStatement(sql.toString())) {
+                for (int i = 0; i < lote.size(); i++) {
+                    ps.setInt(i + 1, lote.get(i));
+                }
+                ps.executeUpdate();
+            }
+        } catch (SQLException | RuntimeException e) {
+            // Se vuelven a encolar y se reintenta en el próximo intervalo. Tampoco un error del driver
+            // puede terminar este hilo, el único: las aulas quedarían pendientes para siempre
+            lotesFallidos.inc();
+            logError.error("No se pudo persistir un lote de {} aulas liberadas", e, lote.size());
+            cola.addAll(lote);
+            Thread.sleep(intervaloMs);
+            return;
+        } finally {
+            ConexionDB.cerrar(conn);
+        }
+        pendientes.removeAll(lote);
+        duracionLote.observarDesde(inicio);
+        try {
+            alPersistir.accept(lote);
+        } catch (RuntimeException e) {
+            // Ya están libres en la base de datos: reencolarlas podría liberar un aula que se volvió a
+            // asignar. El índice las recupera en su próxima reconstrucción
+            logError.error("Error tras persistir un lote de {} aulas liberadas", e, lote.size());
+        }
+    }
+}
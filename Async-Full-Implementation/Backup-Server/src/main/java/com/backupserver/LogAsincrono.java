@@ -0,0 +1,283 @@
+package com.backupserver;
+
+import java.io.BufferedOutputStream;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Logger asíncrono para los caminos calientes.
+ *
+ * Los hilos productores solo reservan una ranura en un buffer circular sin bloqueos
+ * (cola acotada multi-productor de Vyukov) y guardan la plantilla con sus argumentos;
+ * el formateo y la escritura a stdout/stderr los hace un único hilo de fondo. Si el
+ * nivel o el muestreo descartan el evento, no se formatea nada ni se reserva ranura.
+ *
+ * Cada tipo de evento se declara una vez con {@link #tipo} y puede configurarse con
+ * propiedades del sistema:
+ *   -Dlog.nivel=DEBUG|INFO|WARN|ERROR              nivel mínimo global (INFO)
+ *   -Dlog.<clave>.muestreo=N                       registra 1 de cada N eventos
+ *   -Dlog.<clave>.maxPorSegundo=M                  máximo de eventos por segundo
+ *   -Dlog.buffer=K                                 ranuras del buffer (potencia de 2)
+ */
+public final class LogAsincrono {
+
+    public enum Nivel { DEBUG, INFO, WARN, ERROR }
+
+    private static final Nivel NIVEL_MINIMO = Nivel.valueOf(System.getProperty("log.nivel", "INFO").toUpperCase());
+    private static final int CAPACIDAD = Integer.highestOneBit(Math.max(64, Integer.getInteger("log.buffer", 8192)));
+    private static final int MASCARA = CAPACIDAD - 1;
+    private static final int LOTE_MAXIMO = 256;
+    private static final DateTimeFormatter HORA = DateTimeFormatter.ofPattern("HH:mm:ss.SSS")
+            .withZone(ZoneId.systemDefault());
+
+    private static final Ranura[] buffer = new Ranura[CAPACIDAD];
+    private static final AtomicLong cola = new AtomicLong();
+    private static long cabeza; // solo lo toca el hilo escritor
+
+    private static final Metricas.Contador descartadosLleno = Metricas.contador("log_eventos_descartados_total",
+            "Eventos de log descartados", "motivo", "buffer_lleno");
+    private static final Metricas.Contador descartadosLimite = Metricas.contador("log_eventos_descartados_total",
+            "Eventos de log descartados", "motivo", "limite_por_segundo");
+
+    private static final PrintStream salida = new PrintStream(
+            new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), 1 << 16), false, StandardCharsets.UTF_8);
+    private static final PrintStream salidaError = new PrintStream(
+            new BufferedOutputStream(new FileOutputStream(FileDescriptor.err), 1 << 14), false, StandardCharsets.UTF_8);
+
+    static {
+        for (int i = 0; i < CAPACIDAD; i++) {
+            buffer[i] = new Ranura(i);
+        }
+        Thread escritor = new Thread(LogAsincrono::escribirEnFondo, "log-asincrono");
+        escritor.setDaemon(true);
+        escritor.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            while (drenar() > 0) {
+                // vacía lo pendiente antes de salir
+            }
+        }, "log-asincrono-cierre"));
+    }
+
+    private LogAsincrono() {
+    }
+
+    /** Declara un tipo de evento; guardarlo en un campo static final. */
+    public static Tipo tipo(String clave, Nivel nivel) {
+        int muestreo = Math.max(1, Integer.getInteger("log." + clave + ".muestreo", 1));
+        int maxPorSegundo = Integer.getInteger("log." + clave + ".maxPorSegundo", 0);
+        return new Tipo(nivel, muestreo, maxPorSegundo);
+    }
+
+    /** Igual que {@link #tipo(String, Nivel)} pero con límites por defecto propios del evento. */
+    public static Tipo tipo(String clave, Nivel nivel, int muestreo, int maxPorSegundo) {
+        int m = Math.max(1, Integer.getInteger("log." + clave + ".muestreo", muestreo));
+        int max = Integer.getInteger("log." + clave + ".maxPorSegundo", maxPorSegundo);
+        return new Tipo(nivel, m, max);
+    }
+
+    public static final class Tipo {
+
+        private final Nivel nivel;
+        private final boolean activo;
+        private final int muestreo;
+        private final int maxPorSegundo;
+        private final AtomicLong ventana = new AtomicLong();
+
+        private Tipo(Nivel nivel, int muestreo, int maxPorSegundo) {
+            this.nivel = nivel;
+            this.activo = nivel.ordinal() >= NIVEL_MINIMO.ordinal();
+            this.muestreo = muestreo;
+            this.maxPorSegundo = maxPorSegundo;
+        }
+
+        /** Permite saltarse la preparación de argumentos costosos cuando el evento no se registrará. */
+        public boolean habilitado() {
+            return activo;
+        }
+
+        public void log(String plantilla) {
+            if (activo && pasaFiltros()) {
+                publicar(nivel, plantilla, null, null);
+            }
+        }
+
+        public void log(String plantilla, Object a) {
+            if (activo && pasaFiltros()) {
+                publicar(nivel, plantilla, new Object[]{a}, null);
+            }
+        }
+
+        public void log(String plantilla, Object a, Object b) {
+            if (activo && pasaFiltros()) {
+                publicar(nivel, plantilla, new Object[]{a, b}, null);
+            }
+        }
+
+        public void log(String plantilla, Object a, Object b, Object c) {
+            if (activo && pasaFiltros()) {
+                publicar(nivel, plantilla, new Object[]{a, b, c}, null);
+            }
+        }
+
+        /** Registra el evento con la traza de la excepción (formateada en el hilo de fondo). */
+        public void error(String plantilla, Throwable error, Object a) {
+            if (activo && pasaFiltros()) {
+                publicar(nivel, plantilla, new Object[]{a}, error);
+            }
+        }
+
+        private boolean pasaFiltros() {
+            if (muestreo > 1 && ThreadLocalRandom.current().nextInt(muestreo) != 0) {
+                return false;
+            }
+            if (maxPorSegundo <= 0) {
+                return true;
+            }
+            // ventana = segundo actual << 32 | eventos emitidos en ese segundo
+            long segundo = System.nanoTime() / 1_000_000_000L;
+            while (true) {
+                long actual = ventana.get();
+                long emitidos = (actual >>> 32) == (segundo & 0xFFFFFFFFL) ? actual & 0xFFFFFFFFL : 0;
+                if (emitidos >= maxPorSegundo) {
+                    descartadosLimite.inc();
+                    return false;
+                }
+                if (ventana.compareAndSet(actual, ((segundo & 0xFFFFFFFFL) << 32) | (emitidos + 1))) {
+                    return true;
+                }
+            }
+        }
+    }
+
+    private static void publicar(Nivel nivel, String plantilla, Object[] args, Throwable error) {
+        long pos = cola.get();
+        Ranura ranura;
+        while (true) {
+            ranura = buffer[(int) (pos & MASCARA)];
+            long diferencia = ranura.secuencia - pos;
+            if (diferencia == 0) {
+                if (cola.compareAndSet(pos, pos + 1)) {
+                    break;
+                }
+                pos = cola.get();
+            } else if (diferencia < 0) {
+                if (nivel == Nivel.ERROR) {
+                    escribirDirecto(nivel, plantilla, args, error);
+                } else {
+                    descartadosLleno.inc();
+                }
+                return;
+            } else {
+                pos = cola.get();
+            }
+        }
+        ranura.nivel = nivel;
+        ranura.plantilla = plantilla;
+        ranura.args = args;
+        ranura.error = error;
+        ranura.hilo = Thread.currentThread().getName();
+        ranura.instante = System.currentTimeMillis();
+        ranura.secuencia = pos + 1; // publica la ranura al escritor
+    }
+
+    private static void escribirEnFondo() {
+        while (true) {
+            if (drenar() == 0) {
+                LockSupport.parkNanos(1_000_000L);
+            }
+        }
+    }
+
+    private static synchronized int drenar() {
+        int escritos = 0;
+        StringBuilder sb = new StringBuilder(256);
+        while (escritos < LOTE_MAXIMO) {
+            Ranura ranura = buffer[(int) (cabeza & MASCARA)];
+            if (ranura.secuencia != cabeza + 1) {
+                break;
+            }
+            sb.setLength(0);
+            formatear(sb, ranura);
+            PrintStream destino = ranura.nivel.ordinal() >= Nivel.WARN.ordinal() ? salidaError : salida;
+            destino.append(sb).append('\n');
+            ranura.plantilla = null;
+            ranura.args = null;
+            ranura.error = null;
+            ranura.secuencia = cabeza + CAPACIDAD; // libera la ranura para la siguiente vuelta
+            cabeza++;
+            escritos++;
+        }
+        if (escritos > 0) {
+            salida.flush();
+            salidaError.flush();
+        }
+        return escritos;
+    }
+
+    /** Los errores no se pierden: con el buffer lleno se escriben en el hilo que los emite. */
+    private static synchronized void escribirDirecto(Nivel nivel, String plantilla, Object[] args, Throwable error) {
+        Ranura ranura = new Ranura(0);
+        ranura.nivel = nivel;
+        ranura.plantilla = plantilla;
+        ranura.args = args;
+        ranura.error = error;
+        ranura.hilo = Thread.currentThread().getName();
+        ranura.instante = System.currentTimeMillis();
+        StringBuilder sb = new StringBuilder(256);
+        formatear(sb, ranura);
+        salidaError.append(sb).append('\n');
+        salidaError.flush();
+    }
+
+    private static void formatear(StringBuilder sb, Ranura ranura) {
+        HORA.formatTo(Instant.ofEpochMilli(ranura.instante), sb);
+        sb.append(' ').append(ranura.nivel).append(" [").append(ranura.hilo).append("] ");
+        String plantilla = ranura.plantilla;
+        Object[] args = ranura.args;
+        int arg = 0;
+        int desde = 0;
+        int marca;
+        while (args != null && arg < args.length && (marca = plantilla.indexOf("{}", desde)) >= 0) {
+            sb.append(plantilla, desde, marca).append(texto(args[arg++]));
+            desde = marca + 2;
+        }
+        sb.append(plantilla, desde, plantilla.length());
+        if (ranura.error != null) {
+            StringWriter traza = new StringWriter();
+            ranura.error.printStackTrace(new PrintWriter(traza));
+            sb.append('\n').append(traza.toString().stripTrailing());
+        }
+    }
+
+    private static String texto(Object valor) {
+        if (valor instanceof byte[]) {
+            return new String((byte[]) valor, StandardCharsets.UTF_8);
+        }
+        return String.valueOf(valor);
+    }
+
+    private static final class Ranura {
+
+        volatile long secuencia;
+        Nivel nivel;
+        String plantilla;
+        Object[] args;
+        Throwable error;
+        String hilo;
+        long instante;
+
+        Ranura(long secuencia) {
+            this.secuencia = secuencia;
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.backupserver;
+
+/**
+ * Plazo de una solicitud: instante (epoch en ms) después del cual nadie espera la respuesta.
+ *
+ * AcademicProgram lo fija y viaja al final del mensaje como ",plazo=<ms>"; cada salto lo
+ * revisa y, si ya venció, responde "Timeout" en vez de seguir gastando colas y base de datos
+ * en una solicitud abandonada. Es un instante absoluto, así que supone relojes sincronizados
+ * (NTP) entre las máquinas. Una solicitud sin plazo no vence nunca.
+ */
+final class Plazo {
+
+    static final String CAMPO = ",plazo=";
+
+    private Plazo() {
+    }
+
+    /** El plazo del mensaje, o 0 si no trae. */
+    static long leer(String mensaje) {
+        int inicio = mensaje.lastIndexOf(CAMPO);
+        if (inicio < 0) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(mensaje.substring(inicio + CAMPO.length()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /** El mensaje sin el campo de plazo, tal como lo esperan los decodificadores. */
+    static String quitar(String mensaje) {
+        int inicio = mensaje.lastIndexOf(CAMPO);
+        return inicio < 0 ? mensaje : mensaje.substring(0, inicio);
+    }
+
+    static boolean vencido(long plazo) {
+        return plazo > 0 && System.currentTimeMillis() >= plazo;
+    }
+
+    static String respuesta(String requestId, String salto) {
+        return requestId + ",Timeout: plazo vencido en " + salto;
+    }
+
+    /** Contador de solicitudes descartadas por plazo vencido en un salto del servidor. */
+    static Metricas.Contador descartes(String salto) {
+        return Metricas.contador("servidor_plazo_vencido_total",
+                "Solicitudes descartadas por plazo vencido, por salto", "salto", salto);
+    }
+}
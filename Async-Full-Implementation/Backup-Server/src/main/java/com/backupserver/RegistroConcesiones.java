@@ -0,0 +1,147 @@
+package com.backupserver;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Concesiones vigentes: qué aulas obtuvo cada requestId y hasta cuándo.
+ *
+ * Cada aula pertenece a lo sumo a una concesión (índice porAula), así que una
+ * liberación por programa o un vencimiento tardío nunca libera un aula que ya se
+ * volvió a asignar a otra solicitud. Los vencimientos los maneja la rueda temporal
+ * y la escritura en la base de datos la hace el LiberadorAulas en lotes.
+ */
+public class RegistroConcesiones {
+
+    private final ConcurrentHashMap<String, Concesion> porRequestId = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Integer, Concesion> porAula = new ConcurrentHashMap<>();
+    private final RuedaTemporal<Concesion> rueda;
+    private final LiberadorAulas liberador;
+
+    private final Metricas.Contador liberadasPorPrograma = Metricas.contador("servidor_aulas_liberadas_total",
+            "Aulas devueltas al inventario por motivo", "motivo", "liberacion");
+    private final Metricas.Contador liberadasPorCancelacion = Metricas.contador("servidor_aulas_liberadas_total",
+            "Aulas devueltas al inventario por motivo", "motivo", "cancelacion");
+    private final Metricas.Contador liberadasPorVencimiento = Metricas.contador("servidor_aulas_liberadas_total",
+            "Aulas devueltas al inventario por motivo", "motivo", "vencimiento");
+
+    public RegistroConcesiones(long tickMs, LiberadorAulas liberador) {
+        this.liberador = liberador;
+        this.rueda = new RuedaTemporal<>("rueda-concesiones", tickMs, this::vencer);
+        Metricas.indicador("servidor_concesiones_activas", "Asignaciones con aulas todavía ocupadas",
+                porRequestId::size);
+        Metricas.indicador("servidor_concesiones_temporizadas", "Concesiones con vencimiento programado",
+                rueda::pendientes);
+    }
+
+    /** Registra las aulas asignadas a una solicitud; duracionMs <= 0 significa sin vencimiento. */
+    public void registrar(Solicitud solicitud, List<Integer> aulas, long duracionMs) {
+        if (aulas.isEmpty()) {
+            return;
+        }
+        Concesion concesion = new Concesion(solicitud.requestId, solicitud.programa, solicitud.semestre, aulas);
+        porRequestId.put(solicitud.requestId, concesion);
+        for (Integer id : aulas) {
+            Concesion anterior = porAula.put(id, concesion);
+            if (anterior != null) {
+                anterior.quitar(id);
+            }
+        }
+        if (duracionMs > 0) {
+            concesion.temporizador = rueda.programar(concesion, duracionMs);
+        }
+    }
+
+    /**
+     * Cancela la asignación hecha por requestId si pertenece al programa indicado.
+     * Devuelve las aulas encoladas para liberar, o -1 si no existe o es de otro programa.
+     */
+    public int cancelar(String requestId, String programa) {
+        Concesion concesion = porRequestId.get(requestId);
+        if (concesion == null || !concesion.programa.equals(programa)) {
+            return -1;
+        }
+        List<Integer> aulas = cerrar(concesion);
+        liberadasPorCancelacion.sumar(aulas.size());
+        return liberador.encolar(aulas);
+    }
+
+    /** Libera aulas elegidas por el servidor (liberación por programa) y las quita de sus concesiones. */
+    public int liberar(List<Integer> aulas) {
+        List<Integer> liberables = new ArrayList<>(aulas.size());
+        for (Integer id : aulas) {
+            if (liberador.pendiente(id)) {
+                continue;
+            }
+            Concesion concesion = porAula.remove(id);
+            if (concesion != null) {
+                concesion.quitar(id);
+                if (concesion.vacia()) {
+                    descartar(concesion);
+                }
+            }
+            liberables.add(id);
+        }
+        int encoladas = liberador.encolar(liberables);
+        liberadasPorPrograma.sumar(encoladas);
+        return encoladas;
+    }
+
+    private void vencer(Concesion concesion) {
+        List<Integer> aulas = cerrar(concesion);
+        liberadasPorVencimiento.sumar(aulas.size());
+        liberador.encolar(aulas);
+    }
+
+    /** Solo devuelve las aulas que siguen perteneciendo a esta concesión. */
+    private List<Integer> cerrar(Concesion concesion) {
+        List<Integer> propias = new ArrayList<>();
+        for (Integer id : concesion.vaciar()) {
+            if (porAula.remove(id, concesion)) {
+                propias.add(id);
+            }
+        }
+        descartar(concesion);
+        return propias;
+    }
+
+    private void descartar(Concesion concesion) {
+        porRequestId.remove(concesion.requestId, concesion);
+        if (concesion.temporizador != null) {
+            concesion.temporizador.cancelar();
+        }
+    }
+
+    static final class Concesion {
+
+        final String requestId;
+        final String programa;
+        final String semestre;
+        private final Set<Integer> aulas;
+        volatile RuedaTemporal.Temporizador<Concesion> temporizador;
+
+        Concesion(String requestId, String programa, String semestre, List<Integer> aulas) {
+            this.requestId = requestId;
+            this.programa = programa;
+            this.semestre = semestre;
+            this.aulas = new HashSet<>(aulas);
+        }
+
+        synchronized void quitar(Integer id) {
+            aulas.remove(id);
+        }
+
+        synchronized boolean vacia() {
+            return aulas.isEmpty();
+        }
+
+        synchronized List<Integer> vaciar() {
+            List<Integer> copia = new ArrayList<>(aulas);
+            aulas.clear();
+            return copia;
+        }
+    }
+}
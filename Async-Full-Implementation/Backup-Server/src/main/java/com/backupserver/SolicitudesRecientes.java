@@ -0,0 +1,137 @@
+package com.backupserver;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Solicitudes recientes por requestId, para que un reintento no se procese dos veces.
+ *
+ * DepartmentSchool reenvía las solicitudes en vuelo cuando pierde la conexión con uno de los
+ * HealthCheckManager, así que la misma solicitud puede llegar de nuevo por el otro. Si la
+ * original ya terminó, el reintento recibe la misma respuesta; si sigue en proceso (o
+ * retenida hasta el corte de la apertura), la recibe cuando termine. Se guardan las últimas
+ * -Didempotencia.capacidad solicitudes (100000 por defecto), y las terminadas se olvidan
+ * pasado -Didempotencia.ttlMs (una hora). Es también lo primero que mira STATUS; lo que ya
+ * se olvidó se busca en la tabla Solicitud.
+ */
+public class SolicitudesRecientes {
+
+    private static final long PURGA_NS = 1_000_000_000L;
+
+    private final int capacidad = Integer.getInteger("idempotencia.capacidad", 100_000);
+    private final long ttlNs = Long.getLong("idempotencia.ttlMs", 3_600_000) * 1_000_000L;
+    private long ultimaPurga = System.nanoTime();
+    // En orden de llegada: cuando se llena se olvida la más vieja
+    private final LinkedHashMap<String, Entrada> entradas = new LinkedHashMap<>();
+
+    private final Metricas.Contador repetidas = Metricas.contador("servidor_solicitudes_repetidas_total",
+            "Reintentos de una solicitud ya recibida, atendidos sin volver a procesarla");
+
+    public SolicitudesRecientes() {
+        Metricas.indicador("servidor_solicitudes_recientes", "Solicitudes recordadas por requestId",
+                this::cantidad);
+    }
+
+    /**
+     * Registra la llegada de una solicitud. Devuelve true si es nueva y hay que procesarla; si
+     * es repetida devuelve false y "responder" recibirá la respuesta de la original.
+     */
+    public boolean registrar(String requestId, Consumer<String> responder) {
+        String respuesta;
+        synchronized (this) {
+            Entrada entrada = entradas.get(requestId);
+            if (entrada == null) {
+                purgar();
+                entradas.put(requestId, new Entrada());
+                if (entradas.size() > capacidad) {
+                    Iterator<Map.Entry<String, Entrada>> it = entradas.entrySet().iterator();
+                    it.next();
+                    it.remove();
+                }
+                return true;
+            }
+            repetidas.inc();
+            if (entrada.respuesta == null) {
+                if (entrada.esperando == null) {
+                    entrada.esperando = new ArrayList<>(1);
+                }
+                entrada.esperando.add(responder);
+                return false;
+            }
+            respuesta = entrada.respuesta;
+        }
+        responder.accept(respuesta);
+        return false;
+    }
+
+    /** Anota la respuesta de la solicitud y la entrega a los reintentos que la esperaban. */
+    public void completar(String requestId, String respuesta) {
+        List<Consumer<String>> esperando;
+        synchronized (this) {
+            Entrada entrada = entradas.get(requestId);
+            if (entrada == null) {
+                return;
+            }
+            entrada.respuesta = respuesta;
+            esperando = entrada.esperando;
+            entrada.esperando = null;
+        }
+        if (esperando != null) {
+            for (Consumer<String> responder : esperando) {
+                responder.accept(respuesta);
+            }
+        }
+    }
+
+    /** Olvida una solicitud que no se llegó a procesar (p. ej. rechazada por saturación). */
+    public synchronized void olvidar(String requestId) {
+        entradas.remove(requestId);
+    }
+
+    /**
+     * Respuesta de la solicitud si ya terminó, "" si sigue en proceso, o null si no se recibió
+     * aquí o ya se olvidó.
+     */
+    public synchronized String estado(String requestId) {
+        Entrada entrada = entradas.get(requestId);
+        if (entrada == null) {
+            return null;
+        }
+        return entrada.respuesta != null ? entrada.respuesta : "";
+    }
+
+    // Olvida las terminadas que pasaron el TTL, a lo sumo una vez por segundo. Las que siguen en
+    // proceso se conservan: un reintento de una retenida hasta el corte todavía espera su respuesta.
+    private void purgar() {
+        long ahora = System.nanoTime();
+        if (ahora - ultimaPurga < PURGA_NS) {
+            return;
+        }
+        ultimaPurga = ahora;
+        Iterator<Entrada> it = entradas.values().iterator();
+        while (it.hasNext()) {
+            Entrada entrada = it.next();
+            if (ahora - entrada.llegada < ttlNs) {
+                break;
+            }
+            if (entrada.respuesta != null) {
+                it.remove();
+            }
+        }
+    }
+
+    private synchronized double cantidad() {
+        return entradas.size();
+    }
+
+    private static final class Entrada {
+
+        final long llegada = System.nanoTime();
+        String respuesta;
+        List<Consumer<String>> esperando;
+    }
+}
@@ -0,0 +1,499 @@
+package com.example;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+
+/**
+ * Asignación por lotes para la apertura de semestre.
+ *
+ * Mientras no llegue el corte (-Dapertura.corte, fecha y hora local ISO), las solicitudes
+ * de asignación de los semestres en -Dapertura.semestres no se atienden en orden de
+ * llegada: se retienen sin responder. Al corte se carga el inventario libre de una vez,
+ * se decide qué solicitudes aprobar con un algoritmo voraz en memoria (en paralelo por
+ * semestre), se escribe todo en una sola transacción y se responde a cada cliente.
+ *
+ * -Dapertura.objetivo=aprobadas (por defecto) maximiza el número de solicitudes
+ * aprobadas atendiendo primero a las más pequeñas; =equitativo reparte por turnos entre
+ * programas para que ninguno se quede con el inventario. Salones y laboratorios se
+ * deciden juntos porque la demanda de laboratorios puede cubrirse con salones.
+ * Pasado el corte, esos semestres vuelven al orden de llegada.
+ * El corte reparte cantidades: los requisitos de atributos de las solicitudes retenidas
+ * (capacidad, edificio, equipamiento) no se tienen en cuenta.
+ */
+public class AperturaSemestre {
+
+    public enum Objetivo { APROBADAS, EQUITATIVO }
+
+    private static final int TAMANO_LOTE = 500;
+    private static final double[] PONDERACIONES = {0, 0.25, 0.5, 0.75, 1};
+
+    private final Set<String> semestres = new LinkedHashSet<>();
+    private final Objetivo objetivo;
+    private final RegistroConcesiones concesiones;
+    private final DisponibilidadCache disponibilidad;
+    private final IndiceAulas indice;
+    private final EstadisticasAsignacion estadisticas;
+    private final Metricas.Contador aprobadas;
+    private final Metricas.Contador denegadas;
+    private final Metricas.Contador errores;
+
+    // Lectura: retener (muchos hilos a la vez). Escritura: el corte, que se lleva la cola completa
+    private final ReentrantReadWriteLock cierre = new ReentrantReadWriteLock();
+    private final ConcurrentLinkedQueue<Pendiente> pendientes = new ConcurrentLinkedQueue<>();
+    private volatile boolean cerrada = true;
+    private volatile String corte;   // el de -Dapertura.corte, para la respuesta de las que no llegan
+    private volatile long corteMs;   // epoch en ms
+
+    private final Metricas.Contador retenidas = Metricas.indicadorMovil("servidor_apertura_pendientes",
+            "Solicitudes retenidas hasta el corte de apertura");
+    private final Metricas.Contador vencidas = Plazo.descartes("apertura");
+    private final Metricas.Histograma resolucion = Metricas.histograma("servidor_apertura_resolucion_segundos",
+            "Tiempo del algoritmo de asignación por lotes", Metricas.LATENCIA_SEGUNDOS);
+    private final Metricas.Histograma transaccion = Metricas.histograma("servidor_apertura_transaccion_segundos",
+            "Tiempo de la transacción que persiste la asignación por lotes", Metricas.LATENCIA_SEGUNDOS);
+    private final LogAsincrono.Tipo logError = LogAsincrono.tipo("servidor.apertura", LogAsincrono.Nivel.ERROR, 1, 5);
+
+    public AperturaSemestre(RegistroConcesiones concesiones, DisponibilidadCache disponibilidad,
+                            IndiceAulas indice, EstadisticasAsignacion estadisticas, Metricas.Contador aprobadas,
+                            Metricas.Contador denegadas, Metricas.Contador errores) {
+        this.concesiones = concesiones;
+        this.disponibilidad = disponibilidad;
+        this.indice = indice;
+        this.estadisticas = estadisticas;
+        this.aprobadas = aprobadas;
+        this.denegadas = denegadas;
+        this.errores = errores;
+        this.objetivo = "equitativo".equalsIgnoreCase(System.getProperty("apertura.objetivo"))
+                ? Objetivo.EQUITATIVO : Objetivo.APROBADAS;
+        for (String semestre : System.getProperty("apertura.semestres", "").split(",")) {
+            if (!semestre.isBlank()) {
+                semestres.add(semestre.trim());
+            }
+        }
+    }
+
+    /** Programa el corte; sin semestres o sin corte futuro todo sigue en orden de llegada. */
+    public void iniciar() {
+        String corte = System.getProperty("apertura.corte");
+        if (semestres.isEmpty() || corte == null) {
+            return;
+        }
+        long instante;
+        try {
+            instante = LocalDateTime.parse(corte).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            System.err.println("apertura.corte inválido (se espera p. ej. 2025-08-01T08:00): " + corte);
+            return;
+        }
+        long retrasoMs = instante - System.currentTimeMillis();
+        if (retrasoMs <= 0) {
+            System.out.println("El corte de apertura " + corte + " ya pasó; se asigna en orden de llegada.");
+            return;
+        }
+        this.corte = corte;
+        this.corteMs = instante;
+        cerrada = false;
+        ScheduledExecutorService temporizador = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "apertura-semestre");
+            t.setDaemon(true);
+            return t;
+        });
+        temporizador.schedule(() -> {
+            cerrar();
+            temporizador.shutdown();
+        }, retrasoMs, TimeUnit.MILLISECONDS);
+        System.out.println("Apertura por lotes de " + semestres + " hasta " + corte + " (objetivo "
+                + objetivo.name().toLowerCase() + ")");
+    }
+
+    /**
+     * Retiene una solicitud de asignación ya validada si su semestre está en apertura.
+     * Devuelve false si debe procesarse ya, en orden de llegada. Una cuyo plazo vence antes del
+     * corte no se retiene: se responde ya con error, en lugar de aceptarla y descartarla al corte.
+     */
+    public boolean retener(Solicitud solicitud, long plazo, Consumer<String> responder) {
+        if (cerrada || !semestres.contains(solicitud.semestre)) {
+            return false;
+        }
+        if (plazo != 0 && plazo < corteMs) {
+            vencidas.inc();
+            responder.accept(solicitud.requestId + ",Error: Solicitud retenida hasta " + corte
+                    + " (corte de apertura) y su plazo vence antes. Reenvíela sin plazo o con uno posterior.");
+            return true;
+        }
+        cierre.readLock().lock();
+        try {
+            if (cerrada) {
+                return false;
+            }
+            pendientes.add(new Pendiente(solicitud, plazo, responder));
+            retenidas.inc();
+            return true;
+        } finally {
+            cierre.readLock().unlock();
+        }
+    }
+
+    private void cerrar() {
+        List<Pendiente> lote;
+        cierre.writeLock().lock();
+        try {
+            cerrada = true;
+            lote = new ArrayList<>(pendientes);
+            pendientes.clear();
+            retenidas.sumar(-lote.size());
+        } finally {
+            cierre.writeLock().unlock();
+        }
+        // Las que vencieron mientras esperaban el corte no compiten por el inventario
+        lote.removeIf(pendiente -> {
+            if (!Plazo.vencido(pendiente.plazo)) {
+                return false;
+            }
+            vencidas.inc();
+            pendiente.responder.accept(Plazo.respuesta(pendiente.solicitud.requestId, "servidor"));
+            return true;
+        });
+        System.out.println("Corte de apertura: resolviendo " + lote.size() + " solicitudes de " + semestres);
+        try {
+            resolver(lote);
+        } catch (RuntimeException e) {
+            logError.error("Falló la asignación por lotes de {} solicitudes", e, lote.size());
+            responderError(lote, e.getMessage());
+        }
+    }
+
+    private void resolver(List<Pendiente> lote) {
+        Map<String, List<Pendiente>> porSemestre = new LinkedHashMap<>();
+        for (Pendiente pendiente : lote) {
+            porSemestre.computeIfAbsent(pendiente.solicitud.semestre, s -> new ArrayList<>()).add(pendiente);
+        }
+
+        Map<Pendiente, List<Integer>> asignadas = new HashMap<>();
+        Map<Pendiente, Integer> desbordes = new HashMap<>();   // laboratorios cubiertos con salones
+        Connection conn = ConexionDB.conectar();
+        try {
+            if (conn == null) {
+                throw new SQLException("Sin conexión a la base de datos");
+            }
+            conn.setAutoCommit(false);
+            long inicio = System.nanoTime();
+            Map<String, Inventario> inventarios = cargarInventario(conn, porSemestre.keySet());
+
+            Map<String, boolean[]> decisiones = new ConcurrentHashMap<>();
+            long inicioResolucion = System.nanoTime();
+            porSemestre.entrySet().parallelStream().forEach(e -> {
+                Inventario inventario = inventarios.getOrDefault(e.getKey(), new Inventario());
+                List<Solicitud> solicitudes = new ArrayList<>(e.getValue().size());
+                for (Pendiente pendiente : e.getValue()) {
+                    solicitudes.add(pendiente.solicitud);
+                }
+                decisiones.put(e.getKey(), decidir(solicitudes, inventario.salones.size(),
+                        inventario.laboratorios.size(), objetivo));
+            });
+            resolucion.observarDesde(inicioResolucion);
+
+            for (Map.Entry<String, List<Pendiente>> e : porSemestre.entrySet()) {
+                Inventario inventario = inventarios.getOrDefault(e.getKey(), new Inventario());
+                boolean[] aprobada = decisiones.get(e.getKey());
+                for (int i = 0; i < aprobada.length; i++) {
+                    if (aprobada[i]) {
+                        Pendiente pendiente = e.getValue().get(i);
+                        Solicitud solicitud = pendiente.solicitud;
+                        int salonesAntes = inventario.siguienteSalon;
+                        asignadas.put(pendiente, inventario.tomar(solicitud.cantSalones, solicitud.cantLabs));
+                        desbordes.put(pendiente, inventario.siguienteSalon - salonesAntes - solicitud.cantSalones);
+                    }
+                }
+            }
+
+            ocuparAulas(conn, asignadas);
+            insertarSolicitudes(conn, lote, asignadas);
+            conn.commit();
+            transaccion.observarDesde(inicio);
+        } catch (SQLException e) {
+            try {
+                if (conn != null) {
+                    conn.rollback();
+                }
+            } catch (SQLException ignorada) {
+                // La conexión se cierra igual; MySQL descarta la transacción abierta
+            }
+            logError.error("Se revirtió la asignación por lotes de {} solicitudes", e, lote.size());
+            responderError(lote, e.getMessage());
+            return;
+        } finally {
+            ConexionDB.cerrar(conn);
+        }
+
+        for (Pendiente pendiente : lote) {
+            List<Integer> aulas = asignadas.get(pendiente);
+            if (aulas != null) {
+                indice.ocupar(aulas);
+                aprobadas.inc();
+                int desborde = desbordes.get(pendiente);
+                estadisticas.aprobada(pendiente.solicitud, pendiente.solicitud.cantSalones + desborde,
+                        pendiente.solicitud.cantLabs - desborde, desborde);
+                concesiones.registrar(pendiente.solicitud, aulas, pendiente.solicitud.duracionMs);
+                pendiente.responder.accept(pendiente.solicitud.requestId + ",Resultado: Aprobada");
+            } else {
+                denegadas.inc();
+                estadisticas.denegada(pendiente.solicitud);
+                pendiente.responder.accept(pendiente.solicitud.requestId + ",Resultado: Denegada");
+            }
+        }
+        disponibilidad.recargarPronto();
+        System.out.println("Apertura resuelta: " + asignadas.size() + " de " + lote.size() + " solicitudes aprobadas");
+    }
+
+    /**
+     * Decide qué solicitudes aprobar con salones y laboratorios libres dados.
+     * Un conjunto cabe si la suma de salones no supera los salones libres y la suma de
+     * salones más laboratorios no supera el total libre (los laboratorios que falten se
+     * cubren con salones). Se ordena por demanda relativa, pero qué restricción pesa más
+     * depende de la carga: se prueban varias ponderaciones en paralelo y se queda la que
+     * más aprueba. O(n log n) por ponderación.
+     */
+    static boolean[] decidir(List<Solicitud> solicitudes, int salones, int laboratorios, Objetivo objetivo) {
+        boolean[][] intentos = new boolean[PONDERACIONES.length][];
+        IntStream.range(0, PONDERACIONES.length).parallel().forEach(k ->
+                intentos[k] = voraz(solicitudes, salones, laboratorios, PONDERACIONES[k], objetivo));
+        boolean[] mejor = intentos[0];
+        int mejorAprobadas = -1;
+        for (boolean[] intento : intentos) {
+            int aprobadasIntento = 0;
+            for (boolean aprobada : intento) {
+                aprobadasIntento += aprobada ? 1 : 0;
+            }
+            if (aprobadasIntento > mejorAprobadas) {
+                mejor = intento;
+                mejorAprobadas = aprobadasIntento;
+            }
+        }
+        return mejor;
+    }
+
+    /** Peso de cada solicitud: alfa * salones / salones libres + (1 - alfa) * total / total libre. */
+    private static boolean[] voraz(List<Solicitud> solicitudes, int salones, int laboratorios, double alfa,
+                                   Objetivo objetivo) {
+        int n = solicitudes.size();
+        double[] peso = new double[n];
+        double escalaSalones = Math.max(1, salones);
+        double escalaTotal = Math.max(1, salones + laboratorios);
+        for (int i = 0; i < n; i++) {
+            Solicitud s = solicitudes.get(i);
+            peso[i] = alfa * s.cantSalones / escalaSalones + (1 - alfa) * (s.cantSalones + s.cantLabs) / escalaTotal;
+        }
+        // De menor a mayor demanda relativa; a igual peso, en orden de llegada
+        Integer[] orden = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            orden[i] = i;
+        }
+        Arrays.sort(orden, Comparator.<Integer>comparingDouble(i -> peso[i]).thenComparingInt(i -> i));
+
+        boolean[] aprobada = new boolean[n];
+        long libresSalones = salones;
+        long libresTotal = (long) salones + laboratorios;
+        if (objetivo == Objetivo.APROBADAS) {
+            for (int i : orden) {
+                Solicitud s = solicitudes.get(i);
+                if (s.cantSalones <= libresSalones && s.cantSalones + s.cantLabs <= libresTotal) {
+                    libresSalones -= s.cantSalones;
+                    libresTotal -= s.cantSalones + s.cantLabs;
+                    aprobada[i] = true;
+                }
+            }
+            return aprobada;
+        }
+
+        // Equitativo: por turnos, el programa con menos aprobadas intenta su siguiente solicitud más pequeña
+        Map<String, Turno> porPrograma = new LinkedHashMap<>();
+        for (int i : orden) {
+            porPrograma.computeIfAbsent(solicitudes.get(i).programa, p -> new Turno()).indices.add(i);
+        }
+        PriorityQueue<Turno> turnos = new PriorityQueue<>(Comparator.<Turno>comparingInt(t -> t.aprobadas)
+                .thenComparingDouble(t -> peso[t.indices.get(t.siguiente)]));
+        turnos.addAll(porPrograma.values());
+        while (!turnos.isEmpty()) {
+            Turno turno = turnos.poll();
+            int i = turno.indices.get(turno.siguiente++);
+            Solicitud s = solicitudes.get(i);
+            if (s.cantSalones <= libresSalones && s.cantSalones + s.cantLabs <= libresTotal) {
+                libresSalones -= s.cantSalones;
+                libresTotal -= s.cantSalones + s.cantLabs;
+                aprobada[i] = true;
+                turno.aprobadas++;
+            }
+            if (turno.siguiente < turno.indices.size()) {
+                turnos.add(turno);
+            }
+        }
+        return aprobada;
+    }
+
+    private Map<String, Inventario> cargarInventario(Connection conn, Set<String> semestresLote) throws SQLException {
+        StringBuilder sql = new StringBuilder("SELECT id, semestre, tipo FROM Aulas WHERE status = 'Disponible' "
+                + "AND programa_id IS NULL AND semestre IN (");
+        for (int i = 0; i < semestresLote.size(); i++) {
+            sql.append(i == 0 ? "?" : ",?");
+        }
+        sql.append(") ORDER BY id FOR UPDATE");
+
+        Map<String, Inventario> inventarios = new HashMap<>();
+        try (PreparedStatement ps = conn.prepareStatement(sql.toString())) {
+            int i = 1;
+            for (String semestre : semestresLote) {
+                ps.setString(i++, semestre);
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    Inventario inventario = inventarios.computeIfAbsent(rs.getString(2), s -> new Inventario());
+                    if ("Laboratorio".equals(rs.getString(3))) {
+                        inventario.laboratorios.add(rs.getInt(1));
+                    } else {
+                        inventario.salones.add(rs.getInt(1));
+                    }
+                }
+            }
+        }
+        return inventarios;
+    }
+
+    private void ocuparAulas(Connection conn, Map<Pendiente, List<Integer>> asignadas) throws SQLException {
+        Map<String, List<Integer>> porPrograma = new HashMap<>();
+        for (Map.Entry<Pendiente, List<Integer>> e : asignadas.entrySet()) {
+            porPrograma.computeIfAbsent(e.getKey().solicitud.programa, p -> new ArrayList<>()).addAll(e.getValue());
+        }
+        for (Map.Entry<String, List<Integer>> e : porPrograma.entrySet()) {
+            List<Integer> aulas = e.getValue();
+            for (int desde = 0; desde < aulas.size(); desde += TAMANO_LOTE) {
+                List<Integer> tramo = aulas.subList(desde, Math.min(aulas.size(), desde + TAMANO_LOTE));
+                StringBuilder sql = new StringBuilder("UPDATE Aulas SET status = 'Ocupado', programa_id = "
+                        + "(SELECT id FROM Programa WHERE nombre = ?) WHERE id IN (");
+                for (int i = 0; i < tramo.size(); i++) {
+                    sql.append(i == 0 ? "?" : ",?");
+                }
+                sql.append(')');
+                try (PreparedStatement ps = conn.prepareStatement(sql.toString())) {
+                    ps.setString(1, e.getKey());
+                    for (int i = 0; i < tramo.size(); i++) {
+                        ps.setInt(i + 2, tramo.get(i));
+                    }
+                    ps.executeUpdate();
+                }
+            }
+        }
+    }
+
+    private void insertarSolicitudes(Connection conn, List<Pendiente> lote, Map<Pendiente, List<Integer>> asignadas)
+            throws SQLException {
+        Map<String, Integer> facultades = identificadores(conn, "Facultad");
+        Map<String, Integer> programas = identificadores(conn, "Programa");
+        for (int desde = 0; desde < lote.size(); desde += TAMANO_LOTE) {
+            List<Pendiente> tramo = lote.subList(desde, Math.min(lote.size(), desde + TAMANO_LOTE));
+            StringBuilder sql = new StringBuilder(
+                    "INSERT INTO Solicitud (request_id, semestre, facultad_id, programa_id, cant_salon, cant_lab, "
+                            + "status) VALUES ");
+            for (int i = 0; i < tramo.size(); i++) {
+                sql.append(i == 0 ? "(?, ?, ?, ?, ?, ?, ?)" : ", (?, ?, ?, ?, ?, ?, ?)");
+            }
+            try (PreparedStatement ps = conn.prepareStatement(sql.toString())) {
+                int c = 1;
+                for (Pendiente pendiente : tramo) {
+                    Solicitud s = pendiente.solicitud;
+                    ps.setString(c++, s.requestId);
+                    ps.setString(c++, s.semestre);
+                    ps.setObject(c++, facultades.get(s.facultad));
+                    ps.setObject(c++, programas.get(s.programa));
+                    ps.setInt(c++, s.cantSalones);
+                    ps.setInt(c++, s.cantLabs);
+                    ps.setString(c++, asignadas.containsKey(pendiente) ? "Aprobada" : "Denegada");
+                }
+                ps.executeUpdate();
+            }
+        }
+    }
+
+    private static Map<String, Integer> identificadores(Connection conn, String tabla) throws SQLException {
+        Map<String, Integer> ids = new HashMap<>();
+        try (PreparedStatement ps = conn.prepareStatement("SELECT id, nombre FROM " + tabla);
+             ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                ids.put(rs.getString(2), rs.getInt(1));
+            }
+        }
+        return ids;
+    }
+
+    private void responderError(List<Pendiente> lote, String motivo) {
+        for (Pendiente pendiente : lote) {
+            errores.inc();
+            pendiente.responder.accept(pendiente.solicitud.requestId
+                    + ",Error: No se pudo completar la asignación de apertura: " + motivo);
+        }
+    }
+
+    private static final class Pendiente {
+
+        final Solicitud solicitud;
+        final long plazo;
+        final Consumer<String> responder;
+
+        Pendiente(Solicitud solicitud, long plazo, Consumer<String> responder) {
+            this.solicitud = solicitud;
+            this.plazo = plazo;
+            this.responder = responder;
+        }
+    }
+
+    /** Ids libres de un semestre, en orden; tomar() consume desde el principio. */
+    private static final class Inventario {
+
+        final List<Integer> salones = new ArrayList<>();
+        final List<Integer> laboratorios = new ArrayList<>();
+        int siguienteSalon;
+        int siguienteLaboratorio;
+
+        List<Integer> tomar(int cantSalones, int cantLabs) {
+            List<Integer> aulas = new ArrayList<>(cantSalones + cantLabs);
+            for (int i = 0; i < cantSalones; i++) {
+                aulas.add(salones.get(siguienteSalon++));
+            }
+            for (int i = 0; i < cantLabs; i++) {
+                aulas.add(siguienteLaboratorio < laboratorios.size()
+                        ? laboratorios.get(siguienteLaboratorio++) : salones.get(siguienteSalon++));
+            }
+            return aulas;
+        }
+    }
+
+    private static final class Turno {
+
+        final List<Integer> indices = new ArrayList<>();
+        int siguiente;
+        int aprobadas;
+    }
+}
@@ -0,0 +1,51 @@
+package com.example;
+
+import org.zeromq.SocketType;
+import org.zeromq.ZContext;
+import org.zeromq.ZMQ;
+import org.zeromq.ZMsg;
+
+/**
+ * Lleva respuestas desde cualquier hilo hasta el socket ROUTER del servidor.
+ *
+ * Un socket ZeroMQ no se puede usar desde varios hilos, así que el ROUTER solo lo toca
+ * el hilo principal: los hilos del pool (o el de la apertura de semestre) empujan la
+ * respuesta con su sobre por un PUSH inproc propio y el hilo principal la reenvía
+ * cuando el PULL queda legible en su poller.
+ */
+public class CanalRespuestas {
+
+    private static final String DIRECCION = "inproc://respuestas";
+
+    private final ZMQ.Socket entrada;
+    private final ThreadLocal<ZMQ.Socket> salidas;
+
+    public CanalRespuestas(ZContext context) {
+        entrada = context.createSocket(SocketType.PULL);
+        entrada.bind(DIRECCION);
+        salidas = ThreadLocal.withInitial(() -> {
+            ZMQ.Socket salida = context.createSocket(SocketType.PUSH);
+            salida.connect(DIRECCION);
+            return salida;
+        });
+    }
+
+    /** Socket a registrar en el poller del hilo dueño del ROUTER. */
+    public ZMQ.Socket entrada() {
+        return entrada;
+    }
+
+    /** Envía la respuesta con el sobre (identidades y delimitador) con el que llegó la solicitud. */
+    public void enviar(ZMsg sobre, String respuesta) {
+        sobre.add(respuesta);
+        sobre.send(salidas.get());
+    }
+
+    /** Reenvía al ROUTER una respuesta pendiente; solo desde el hilo dueño del ROUTER. */
+    public void reenviar(ZMQ.Socket router) {
+        ZMsg respuesta = ZMsg.recvMsg(entrada);
+        if (respuesta != null) {
+            respuesta.send(router);
+        }
+    }
+}
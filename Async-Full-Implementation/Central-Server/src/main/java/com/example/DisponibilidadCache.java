@@ -0,0 +1,162 @@
+package com.example;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Instantánea en memoria de aulas libres por semestre y tipo, para consultas de solo lectura.
+ *
+ * Las consultas leen una instantánea inmutable publicada en un AtomicReference: no
+ * tocan la base de datos ni esperan a las asignaciones. Cada asignación descuenta sus
+ * aulas con un CAS sobre la instantánea; las liberaciones (y cualquier cambio hecho
+ * fuera del servidor) se reflejan con una recarga completa, que corre cada limiteMs/2
+ * y también poco después de cada lote liberado. La respuesta informa la antigüedad de
+ * la última recarga para que el cliente sepa qué tan vieja puede estar. Tras cada recarga
+ * se avisa a alRecargar (la lista de espera reintenta con lo que volvió).
+ */
+public class DisponibilidadCache {
+
+    private static final String[] TIPOS = {"Salon", "Laboratorio"};
+
+    private final AtomicReference<Instantanea> actual =
+            new AtomicReference<>(new Instantanea(Collections.emptyMap(), 0, 0));
+    private final AtomicBoolean recargaPendiente = new AtomicBoolean();
+    private final ScheduledExecutorService recargas = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "recarga-disponibilidad");
+        t.setDaemon(true);
+        return t;
+    });
+    private final long limiteMs;
+    private volatile Runnable alRecargar = () -> { };
+
+    private final Metricas.Contador recargasFallidas = Metricas.contador("servidor_disponibilidad_recargas_fallidas_total",
+            "Recargas completas de la instantánea de disponibilidad que fallaron");
+    private final LogAsincrono.Tipo logError = LogAsincrono.tipo("servidor.disponibilidad",
+            LogAsincrono.Nivel.ERROR, 1, 1);
+
+    public DisponibilidadCache(long limiteMs) {
+        this.limiteMs = limiteMs;
+        Metricas.indicador("servidor_disponibilidad_antiguedad_segundos",
+                "Tiempo desde la última recarga completa de la instantánea", () -> antiguedadMs() / 1000.0);
+        Metricas.indicador("servidor_disponibilidad_version", "Versión de la instantánea de disponibilidad",
+                () -> actual.get().version);
+    }
+
+    /** Carga inicial síncrona y recargas periódicas cada limiteMs/2. */
+    public void iniciar() {
+        recargar();
+        long periodo = Math.max(1, limiteMs / 2);
+        recargas.scheduleAtFixedRate(this::recargar, periodo, periodo, TimeUnit.MILLISECONDS);
+    }
+
+    /** Descuenta aulas recién asignadas; no bloquea a otros lectores ni escritores. */
+    public void descontar(String semestre, String tipo, int cantidad) {
+        if (cantidad <= 0) {
+            return;
+        }
+        int indice = "Laboratorio".equals(tipo) ? 1 : 0;
+        actual.updateAndGet(previa -> previa.con(semestre, indice, -cantidad));
+    }
+
+    /** Pide una recarga completa pronto; varias peticiones seguidas se agrupan en una sola. */
+    public void recargarPronto() {
+        if (recargaPendiente.compareAndSet(false, true)) {
+            recargas.schedule(() -> {
+                recargaPendiente.set(false);
+                recargar();
+            }, 50, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /** Acción a ejecutar en el hilo de recargas tras cada recarga completa exitosa. */
+    public void alRecargar(Runnable accion) {
+        this.alRecargar = accion;
+    }
+
+    /** {salones, laboratorios} libres del semestre según la instantánea vigente; el arreglo no se modifica. */
+    public int[] disponibles(String semestre) {
+        return actual.get().conteos.getOrDefault(semestre, new int[2]);
+    }
+
+    /** Respuesta para requestId,CONSULTA,semestre[,facultad]. */
+    public String consultar(String semestre) {
+        Instantanea instantanea = actual.get();
+        int[] conteo = instantanea.conteos.getOrDefault(semestre, new int[2]);
+        long antiguedad = antiguedadMs();
+        return "Disponibilidad: semestre=" + semestre
+                + ";" + TIPOS[0] + "=" + Math.max(0, conteo[0])
+                + ";" + TIPOS[1] + "=" + Math.max(0, conteo[1])
+                + ";version=" + instantanea.version
+                + ";antiguedadMs=" + antiguedad
+                + ";limiteMs=" + limiteMs
+                + (antiguedad > limiteMs ? ";obsoleta" : "");
+    }
+
+    /** Versión de la instantánea vigente; cambia con cada descuento o recarga. */
+    public long version() {
+        return actual.get().version;
+    }
+
+    private long antiguedadMs() {
+        long recargada = actual.get().recargadaNanos;
+        return recargada == 0 ? Long.MAX_VALUE / 1_000_000L : (System.nanoTime() - recargada) / 1_000_000L;
+    }
+
+    private void recargar() {
+        String sql = "SELECT semestre, tipo, COUNT(*) FROM Aulas WHERE status = 'Disponible' "
+                + "AND programa_id IS NULL GROUP BY semestre, tipo";
+        Connection conn = ConexionDB.conectar();
+        try {
+            if (conn == null) {
+                throw new SQLException("Sin conexión a la base de datos");
+            }
+            Map<String, int[]> conteos = new HashMap<>();
+            try (PreparedStatement ps = conn.prepareStatement(sql); ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    int indice = "Laboratorio".equals(rs.getString(2)) ? 1 : 0;
+                    conteos.computeIfAbsent(rs.getString(1), s -> new int[2])[indice] = rs.getInt(3);
+                }
+            }
+            long recargada = System.nanoTime();
+            actual.updateAndGet(previa -> new Instantanea(conteos, previa.version + 1, recargada));
+            alRecargar.run();
+        } catch (SQLException e) {
+            // Se conserva la instantánea anterior; su antigüedad crece y la respuesta lo indica
+            recargasFallidas.inc();
+            logError.log("No se pudo recargar la disponibilidad: {}", e.getMessage());
+        } finally {
+            ConexionDB.cerrar(conn);
+        }
+    }
+
+    private static final class Instantanea {
+
+        final Map<String, int[]> conteos; // semestre -> {salones, laboratorios}; nunca se modifica
+        final long version;
+        final long recargadaNanos;
+
+        Instantanea(Map<String, int[]> conteos, long version, long recargadaNanos) {
+            this.conteos = conteos;
+            this.version = version;
+            this.recargadaNanos = recargadaNanos;
+        }
+
+        Instantanea con(String semestre, int indice, int delta) {
+            Map<String, int[]> copia = new HashMap<>(conteos);
+            int[] conteo = copia.getOrDefault(semestre, new int[2]).clone();
+            conteo[indice] += delta;
+            copia.put(semestre, conteo);
+            return new Instantanea(copia, version + 1, recargadaNanos);
+        }
+    }
+}
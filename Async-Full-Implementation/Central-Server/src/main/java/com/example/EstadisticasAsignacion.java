@@ -0,0 +1,184 @@
+package com.example;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Agregados de asignación por (semestre, facultad, programa), mantenidos con cada decisión para
+ * que STATS no tenga que recorrer la tabla Solicitud en la misma base de datos que asigna.
+ *
+ * Por clave: solicitudes validadas, aprobadas, denegadas, salones y laboratorios otorgados, y
+ * desbordes (laboratorios cubiertos con salones). Los contadores son LongAdder, así que anotar
+ * una decisión es un incremento sin bloqueo y STATS los lee sin detener a nadie.
+ *
+ * Cada -Destadisticas.checkpointMs (60000) se escriben en -Destadisticas.archivo
+ * (estadisticas.csv) y se cargan al arrancar: un reinicio pierde a lo sumo el último intervalo.
+ * Se escribe un temporal que luego reemplaza al archivo, así que nunca queda a medias.
+ */
+public class EstadisticasAsignacion {
+
+    private static final String CABECERA =
+            "semestre,facultad,programa,solicitudes,aprobadas,denegadas,salones,laboratorios,desbordes";
+
+    private final Path archivo = Paths.get(System.getProperty("estadisticas.archivo", "estadisticas.csv"));
+    private final long checkpointMs = Long.getLong("estadisticas.checkpointMs", 60_000);
+    // "semestre,facultad,programa" -> agregado; ninguno de los tres lleva comas (es el separador del protocolo)
+    private final ConcurrentHashMap<String, Agregado> agregados = new ConcurrentHashMap<>();
+
+    private final Metricas.Contador checkpointsFallidos = Metricas.contador(
+            "servidor_estadisticas_checkpoints_fallidos_total", "Checkpoints de estadísticas que no se pudieron escribir");
+    private final LogAsincrono.Tipo logError = LogAsincrono.tipo("servidor.estadisticas",
+            LogAsincrono.Nivel.ERROR, 1, 1);
+
+    public EstadisticasAsignacion() {
+        Metricas.indicador("servidor_estadisticas_claves", "Combinaciones semestre/facultad/programa con estadísticas",
+                agregados::size);
+    }
+
+    /** Carga el último checkpoint y programa los siguientes. */
+    public void iniciar() {
+        cargar();
+        ScheduledExecutorService checkpoints = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "checkpoint-estadisticas");
+            t.setDaemon(true);
+            return t;
+        });
+        long periodo = Math.max(1, checkpointMs);
+        checkpoints.scheduleAtFixedRate(this::checkpoint, periodo, periodo, TimeUnit.MILLISECONDS);
+    }
+
+    /** Una solicitud de asignación validada, que espera decisión. */
+    public void solicitud(Solicitud solicitud) {
+        agregado(solicitud.semestre, solicitud.facultad, solicitud.programa).solicitudes.increment();
+    }
+
+    /** Aprobada con "salones" salones y "laboratorios" laboratorios, "desbordes" de ellos cubiertos con salones. */
+    public void aprobada(Solicitud solicitud, int salones, int laboratorios, int desbordes) {
+        Agregado agregado = agregado(solicitud.semestre, solicitud.facultad, solicitud.programa);
+        agregado.aprobadas.increment();
+        agregado.salones.add(salones);
+        agregado.laboratorios.add(laboratorios);
+        agregado.desbordes.add(desbordes);
+    }
+
+    public void denegada(Solicitud solicitud) {
+        agregado(solicitud.semestre, solicitud.facultad, solicitud.programa).denegadas.increment();
+    }
+
+    /** Respuesta para requestId,STATS,semestre,facultad[,programa]: suma las claves que coinciden. */
+    public String consultar(String semestre, String facultad, String programa) {
+        long[] suma = new long[Agregado.CAMPOS];
+        for (Agregado agregado : agregados.values()) {
+            if (agregado.semestre.equals(semestre) && agregado.facultad.equals(facultad)
+                    && (programa == null || agregado.programa.equals(programa))) {
+                long[] valores = agregado.valores();
+                for (int i = 0; i < suma.length; i++) {
+                    suma[i] += valores[i];
+                }
+            }
+        }
+        return "Estadisticas: semestre=" + semestre + ";facultad=" + facultad
+                + (programa != null ? ";programa=" + programa : "")
+                + ";solicitudes=" + suma[0] + ";aprobadas=" + suma[1] + ";denegadas=" + suma[2]
+                + ";salones=" + suma[3] + ";laboratorios=" + suma[4] + ";desbordes=" + suma[5];
+    }
+
+    private Agregado agregado(String semestre, String facultad, String programa) {
+        return agregados.computeIfAbsent(semestre + "," + facultad + "," + programa,
+                clave -> new Agregado(semestre, facultad, programa));
+    }
+
+    private void checkpoint() {
+        Path temporal = archivo.resolveSibling(archivo.getFileName() + ".tmp");
+        try {
+            try (BufferedWriter escritor = Files.newBufferedWriter(temporal, StandardCharsets.UTF_8)) {
+                escritor.write(CABECERA);
+                escritor.newLine();
+                for (Map.Entry<String, Agregado> e : agregados.entrySet()) {
+                    escritor.write(e.getKey());
+                    for (long valor : e.getValue().valores()) {
+                        escritor.write(",");
+                        escritor.write(Long.toString(valor));
+                    }
+                    escritor.newLine();
+                }
+            }
+            Files.move(temporal, archivo, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            checkpointsFallidos.inc();
+            logError.log("No se pudo escribir el checkpoint de estadísticas: {}", e.getMessage());
+        }
+    }
+
+    private void cargar() {
+        int cargadas = 0;
+        try (BufferedReader lector = Files.newBufferedReader(archivo, StandardCharsets.UTF_8)) {
+            String linea = lector.readLine();   // cabecera
+            while ((linea = lector.readLine()) != null) {
+                String[] campos = linea.split(",");
+                if (campos.length != 3 + Agregado.CAMPOS) {
+                    continue;
+                }
+                Agregado agregado = agregado(campos[0], campos[1], campos[2]);
+                LongAdder[] contadores = agregado.contadores();
+                for (int i = 0; i < Agregado.CAMPOS; i++) {
+                    contadores[i].add(Long.parseLong(campos[3 + i]));
+                }
+                cargadas++;
+            }
+            System.out.println("Estadísticas de asignación cargadas desde " + archivo + ": " + cargadas + " claves");
+        } catch (NoSuchFileException e) {
+            // Primer arranque: se empieza de cero
+        } catch (IOException | NumberFormatException e) {
+            System.err.println("No se pudo cargar el checkpoint de estadísticas " + archivo + ": " + e.getMessage());
+        }
+    }
+
+    private static final class Agregado {
+
+        static final int CAMPOS = 6;
+
+        final String semestre;
+        final String facultad;
+        final String programa;
+        final LongAdder solicitudes = new LongAdder();
+        final LongAdder aprobadas = new LongAdder();
+        final LongAdder denegadas = new LongAdder();
+        final LongAdder salones = new LongAdder();
+        final LongAdder laboratorios = new LongAdder();
+        final LongAdder desbordes = new LongAdder();
+
+        Agregado(String semestre, String facultad, String programa) {
+            this.semestre = semestre;
+            this.facultad = facultad;
+            this.programa = programa;
+        }
+
+        // En el orden de CABECERA
+        LongAdder[] contadores() {
+            return new LongAdder[] {solicitudes, aprobadas, denegadas, salones, laboratorios, desbordes};
+        }
+
+        long[] valores() {
+            LongAdder[] contadores = contadores();
+            long[] valores = new long[CAMPOS];
+            for (int i = 0; i < CAMPOS; i++) {
+                valores[i] = contadores[i].sum();
+            }
+            return valores;
+        }
+    }
+}
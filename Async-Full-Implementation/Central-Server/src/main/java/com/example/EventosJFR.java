@@ -0,0 +1,126 @@
+package com.example;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Eventos de JDK Flight Recorder para cada etapa de procesarSolicitud.
+ *
+ * Uso: crear el evento, begin() antes de la etapa y registrar(...) al final. Los
+ * campos solo se llenan si shouldCommit() es verdadero; con la grabación apagada
+ * el objeto no escapa y el JIT lo elimina, así que el costo es prácticamente nulo.
+ * Se habilitan con el perfil distribuidos.jfc en la raíz de Async-Full-Implementation.
+ */
+public final class EventosJFR {
+
+    private EventosJFR() {
+    }
+
+    @Category({"Distribuidos", "Servidor Central"})
+    @StackTrace(false)
+    public abstract static class EventoSolicitud extends Event {
+
+        @Label("Request ID")
+        public String requestId;
+
+        @Label("Facultad")
+        public String facultad;
+
+        @Label("Programa")
+        public String programa;
+
+        @Label("Salones solicitados")
+        public int cantSalones;
+
+        @Label("Laboratorios solicitados")
+        public int cantLabs;
+
+        public void registrar(Solicitud solicitud) {
+            if (shouldCommit()) {
+                requestId = solicitud.requestId;
+                facultad = solicitud.facultad;
+                programa = solicitud.programa;
+                cantSalones = solicitud.cantSalones;
+                cantLabs = solicitud.cantLabs;
+                commit();
+            }
+        }
+    }
+
+    @Name("com.example.ColaEspera")
+    @Label("Espera en cola del pool")
+    @Description("Tiempo entre la recepción del mensaje y el inicio de su procesamiento")
+    public static class ColaEspera extends EventoSolicitud {
+
+        @Label("Espera")
+        @Timespan(Timespan.NANOSECONDS)
+        public long espera;
+
+        /** El mensaje solo se decodifica si el evento se va a grabar. */
+        public void registrar(String mensaje, long esperaNanos) {
+            if (shouldCommit()) {
+                String[] partes = mensaje.split(",");
+                requestId = partes[0];
+                if (partes.length >= 6 && partes.length <= 8 && !"LIBERAR".equals(partes[1])) {
+                    facultad = partes[2];
+                    programa = partes[3];
+                    cantSalones = entero(partes[4]);
+                    cantLabs = entero(partes[5]);
+                }
+                espera = esperaNanos;
+                commit();
+            }
+        }
+    }
+
+    private static int entero(String valor) {
+        try {
+            return Integer.parseInt(valor.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    @Name("com.example.ValidacionData")
+    @Label("validacionData")
+    public static class ValidacionData extends EventoSolicitud {
+
+        @Label("Válida")
+        public boolean valida;
+    }
+
+    @Name("com.example.ContarAulas")
+    @Label("contarAulas")
+    public static class ContarAulas extends EventoSolicitud {
+
+        @Label("Tipo de aula")
+        public String tipo;
+
+        @Label("Aulas disponibles")
+        public int disponibles;
+    }
+
+    @Name("com.example.AsignarAulas")
+    @Label("asignarAulas")
+    public static class AsignarAulas extends EventoSolicitud {
+
+        @Label("Tipo de aula")
+        public String tipo;
+
+        @Label("Aulas asignadas")
+        public int asignadas;
+    }
+
+    @Name("com.example.InsertarSolicitud")
+    @Label("insertarSolicitud")
+    public static class InsertarSolicitud extends EventoSolicitud {
+
+        @Label("Estado")
+        public String status;
+    }
+}
@@ -0,0 +1,239 @@
+package com.example;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Exporta las tablas Solicitud y Aulas a CSV comprimido, un archivo por tabla y semestre,
+ * para los reportes de fin de semestre:
+ *   java ... com.example.ExportadorReportes [semestre ...]
+ * Sin semestres exporta todos. Los archivos quedan en -Dexportacion.directorio (exportacion)
+ * como solicitud-<semestre>.csv.gz y aulas-<semestre>.csv.gz.
+ *
+ * Todo se lee en una sola transacción START TRANSACTION WITH CONSISTENT SNAPSHOT, READ ONLY:
+ * las dos tablas y todos los semestres salen de la misma foto de InnoDB, y una lectura
+ * consistente no toma bloqueos, así que las asignaciones siguen mientras se exporta.
+ *
+ * Con fetchSize Integer.MIN_VALUE el driver de MySQL entrega las filas a medida que llegan en
+ * vez de cargar el resultado completo. Cada fila va a la cola acotada del semestre
+ * (-Dexportacion.cola, 64 lotes de 500 filas) y un hilo por semestre la comprime y escribe. Así
+ * los semestres se comprimen en paralelo, y si un disco se atrasa la lectura espera: la memoria
+ * queda acotada sin importar el tamaño de las tablas.
+ */
+public class ExportadorReportes {
+
+    private static final String[] TABLAS = {"Solicitud", "Aulas"};
+    private static final int FILAS_POR_LOTE = 500;
+    private static final List<String> FIN = new ArrayList<>(0);
+
+    private final File directorio = new File(System.getProperty("exportacion.directorio", "exportacion"));
+    private final int capacidadCola = Integer.getInteger("exportacion.cola", 64);
+    private final Set<String> semestres;
+
+    public static void main(String[] args) {
+        ExportadorReportes exportador = new ExportadorReportes(new HashSet<>(Arrays.asList(args)));
+        long inicio = System.nanoTime();
+        try {
+            exportador.exportar();
+            System.out.println("Exportación terminada en " + (System.nanoTime() - inicio) / 1_000_000 + " ms");
+        } catch (SQLException | IOException e) {
+            System.err.println("Error exportando: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    private ExportadorReportes(Set<String> semestres) {
+        this.semestres = semestres;
+    }
+
+    private void exportar() throws SQLException, IOException {
+        if (!directorio.isDirectory() && !directorio.mkdirs()) {
+            throw new IOException("No se pudo crear el directorio " + directorio);
+        }
+        Connection conn = ConexionDB.conectar();
+        if (conn == null) {
+            throw new SQLException("Sin conexión a la base de datos");
+        }
+        try (Statement st = conn.createStatement()) {
+            conn.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+            // El lector puede esperar a un escritor lento con el resultado abierto: más margen que los 60 s por defecto
+            st.execute("SET SESSION net_write_timeout = 3600");
+            st.execute("START TRANSACTION WITH CONSISTENT SNAPSHOT, READ ONLY");
+            for (String tabla : TABLAS) {
+                exportarTabla(conn, tabla);
+            }
+            st.execute("COMMIT");
+        } finally {
+            ConexionDB.cerrar(conn);
+        }
+    }
+
+    private void exportarTabla(Connection conn, String tabla) throws SQLException, IOException {
+        Map<String, Escritor> escritores = new LinkedHashMap<>();
+        try (Statement st = conn.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            st.setFetchSize(Integer.MIN_VALUE);
+            try (ResultSet rs = st.executeQuery("SELECT * FROM " + tabla)) {
+                ResultSetMetaData meta = rs.getMetaData();
+                int columnas = meta.getColumnCount();
+                StringBuilder cabecera = new StringBuilder();
+                int columnaSemestre = -1;
+                for (int i = 1; i <= columnas; i++) {
+                    cabecera.append(i == 1 ? "" : ",").append(csv(meta.getColumnLabel(i)));
+                    if ("semestre".equalsIgnoreCase(meta.getColumnLabel(i))) {
+                        columnaSemestre = i;
+                    }
+                }
+                if (columnaSemestre < 0) {
+                    throw new SQLException("La tabla " + tabla + " no tiene columna semestre");
+                }
+                StringBuilder fila = new StringBuilder();
+                while (rs.next()) {
+                    String semestre = rs.getString(columnaSemestre);
+                    if (!semestres.isEmpty() && !semestres.contains(semestre)) {
+                        continue;
+                    }
+                    Escritor escritor = escritores.get(semestre);
+                    if (escritor == null) {
+                        escritor = new Escritor(new File(directorio, tabla.toLowerCase() + "-" + semestre + ".csv.gz"),
+                                cabecera.toString());
+                        escritores.put(semestre, escritor);
+                    }
+                    fila.setLength(0);
+                    for (int i = 1; i <= columnas; i++) {
+                        fila.append(i == 1 ? "" : ",").append(csv(rs.getString(i)));
+                    }
+                    escritor.agregar(fila.toString());
+                }
+            }
+        } finally {
+            for (Escritor escritor : escritores.values()) {
+                escritor.terminar();
+            }
+        }
+        for (Escritor escritor : escritores.values()) {
+            escritor.esperar();
+            System.out.println(escritor.archivo + ": " + escritor.filas + " filas");
+        }
+    }
+
+    // Comillas solo si hacen falta; NULL queda vacío
+    private static String csv(String valor) {
+        if (valor == null) {
+            return "";
+        }
+        if (valor.indexOf(',') < 0 && valor.indexOf('"') < 0 && valor.indexOf('\n') < 0 && valor.indexOf('\r') < 0) {
+            return valor;
+        }
+        return '"' + valor.replace("\"", "\"\"") + '"';
+    }
+
+    /** Un archivo comprimido con su hilo; recibe las filas en lotes por una cola acotada. */
+    private final class Escritor {
+
+        final File archivo;
+        final ArrayBlockingQueue<List<String>> cola = new ArrayBlockingQueue<>(capacidadCola);
+        final Thread hilo;
+        List<String> lote = new ArrayList<>(FILAS_POR_LOTE);
+        long filas;
+        volatile IOException error;
+
+        Escritor(File archivo, String cabecera) {
+            this.archivo = archivo;
+            this.hilo = new Thread(() -> escribir(cabecera), "exportar-" + archivo.getName());
+            hilo.start();
+        }
+
+        /** Desde el hilo lector; espera si la cola está llena. */
+        void agregar(String fila) throws IOException {
+            lote.add(fila);
+            filas++;
+            if (lote.size() == FILAS_POR_LOTE) {
+                encolar(lote);
+                lote = new ArrayList<>(FILAS_POR_LOTE);
+            }
+        }
+
+        /** Cierra el archivo; si el hilo falló no hace nada y el error sale en esperar(). */
+        void terminar() {
+            try {
+                if (!lote.isEmpty()) {
+                    encolar(lote);
+                }
+                encolar(FIN);
+            } catch (IOException e) {
+                // Ya anotado en error
+            }
+        }
+
+        void esperar() throws IOException {
+            try {
+                hilo.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (error != null) {
+                throw error;
+            }
+        }
+
+        private void encolar(List<String> filas) throws IOException {
+            if (error != null) {
+                throw error;
+            }
+            try {
+                cola.put(filas);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Exportación interrumpida");
+            }
+        }
+
+        private void escribir(String cabecera) {
+            try (BufferedWriter salida = new BufferedWriter(new OutputStreamWriter(
+                    new GZIPOutputStream(new FileOutputStream(archivo), 64 * 1024), StandardCharsets.UTF_8))) {
+                salida.write(cabecera);
+                salida.newLine();
+                for (List<String> filas = cola.take(); filas != FIN; filas = cola.take()) {
+                    for (String fila : filas) {
+                        salida.write(fila);
+                        salida.newLine();
+                    }
+                }
+            } catch (IOException e) {
+                error = e;
+                descartar();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        // Tras un error se sigue vaciando la cola hasta FIN, para que el lector nunca quede esperando lugar
+        private void descartar() {
+            try {
+                while (cola.take() != FIN) {
+                    // descartado
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
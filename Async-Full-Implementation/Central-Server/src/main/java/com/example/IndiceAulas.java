@@ -0,0 +1,372 @@
+package com.example;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Índice en memoria de las aulas y sus atributos (capacidad, edificio, equipamiento), para
+ * darle a cada solicitud las aulas libres que mejor se ajustan a lo que pide, sin recorrer la
+ * tabla ni depender del orden en que la devuelve la base de datos.
+ *
+ * Por semestre y tipo, las aulas se ordenan por capacidad y cada una ocupa una posición fija.
+ * Un BitSet marca las libres, y hay un BitSet por edificio y otro por etiqueta de equipamiento.
+ * Una búsqueda binaria da la primera posición con capacidad suficiente; las candidatas son las
+ * libres desde ahí, intersecadas (BitSet.and, de a 64 aulas por palabra) con el edificio y cada
+ * etiqueta pedidos. Contar es la cardinalidad de esa intersección, sin revisar aula por aula, y
+ * reservar toma sus primeras posiciones: las más chicas que sirven, así que las grandes quedan
+ * para quien las necesita.
+ *
+ * Reservar marca las aulas como ocupadas en memoria antes del UPDATE: dos hilos de asignar
+ * nunca eligen la misma. Lo liberado vuelve al índice cuando LiberadorAulas lo persiste. Se
+ * reconstruye desde la base de datos al arrancar, con RECARGAR y cada -Dindice.refrescoMs
+ * (60000), para recoger cambios hechos fuera del servidor. Lo que se reserva o libera mientras
+ * se reconstruye se aplica también al índice nuevo, y las reservas cuyo UPDATE no terminó
+ * siguen ocupadas aunque la base de datos todavía las vea libres.
+ */
+public class IndiceAulas {
+
+    private final long refrescoMs = Long.getLong("indice.refrescoMs", 60_000);
+    private final ScheduledExecutorService recargas = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "recarga-indice-aulas");
+        t.setDaemon(true);
+        return t;
+    });
+
+    // Todo lo de abajo se toca con el monitor del índice
+    private Map<String, Grupo> grupos = new HashMap<>();      // "semestre,tipo" -> aulas del grupo
+    private Map<Integer, Ubicacion> ubicaciones = new HashMap<>();
+    private List<Cambio> cambiosDuranteRecarga;               // null si no se está reconstruyendo
+    // Reservadas cuyo UPDATE no se confirmó: una reconstrucción no las da por libres
+    private final Set<Integer> enCurso = ConcurrentHashMap.newKeySet();
+
+    private final Metricas.Contador recargasFallidas = Metricas.contador("servidor_indice_recargas_fallidas_total",
+            "Reconstrucciones del índice de aulas que fallaron");
+    private final LogAsincrono.Tipo logError = LogAsincrono.tipo("servidor.indice", LogAsincrono.Nivel.ERROR, 1, 1);
+
+    public IndiceAulas() {
+        Metricas.indicador("servidor_indice_aulas", "Aulas en el índice en memoria", this::cantidad);
+        Metricas.indicador("servidor_indice_aulas_libres", "Aulas libres según el índice en memoria", this::libres);
+    }
+
+    /** Carga inicial síncrona y reconstrucciones periódicas. */
+    public void iniciar() {
+        recargar();
+        long periodo = Math.max(1, refrescoMs);
+        recargas.scheduleAtFixedRate(this::recargar, periodo, periodo, TimeUnit.MILLISECONDS);
+    }
+
+    /** Reconstruye en el hilo de recargas, sin esperar el resultado. */
+    public void recargarPronto() {
+        recargas.execute(this::recargar);
+    }
+
+    /** Aulas libres del tipo en el semestre que cumplen los requisitos. */
+    public synchronized int contar(String semestre, String tipo, Requisitos requisitos) {
+        Grupo grupo = grupos.get(semestre + "," + tipo);
+        if (grupo == null) {
+            return 0;
+        }
+        return requisitos.vacios() ? grupo.libres.cardinality() : grupo.candidatas(requisitos).cardinality();
+    }
+
+    /**
+     * Reserva hasta "cantidad" aulas libres del tipo que cumplen los requisitos, de la más
+     * chica que sirve hacia arriba. Quedan ocupadas en el índice hasta que se liberen; después
+     * del UPDATE hay que llamar a confirmar().
+     */
+    public synchronized List<Integer> reservar(String semestre, String tipo, int cantidad, Requisitos requisitos) {
+        List<Integer> reservadas = new ArrayList<>(Math.max(0, cantidad));
+        Grupo grupo = grupos.get(semestre + "," + tipo);
+        if (grupo == null) {
+            return reservadas;
+        }
+        BitSet candidatas = requisitos.vacios() ? grupo.libres : grupo.candidatas(requisitos);
+        for (int i = candidatas.nextSetBit(0); i >= 0 && reservadas.size() < cantidad; i = candidatas.nextSetBit(i + 1)) {
+            grupo.libres.clear(i);
+            reservadas.add(grupo.ids[i]);
+            enCurso.add(grupo.ids[i]);
+            anotar(grupo.ids[i], false);
+        }
+        return reservadas;
+    }
+
+    /** El UPDATE de las reservadas terminó (las que no quedaron ocupadas se devolvieron con ocupar o liberar). */
+    public void confirmar(Collection<Integer> aulas) {
+        enCurso.removeAll(aulas);
+    }
+
+    /** Aulas que volvieron a estar libres en la base de datos. */
+    public synchronized void liberar(Collection<Integer> aulas) {
+        marcar(aulas, true);
+    }
+
+    /** Aulas que quedaron ocupadas por fuera de reservar (p. ej. la apertura de semestre). */
+    public synchronized void ocupar(Collection<Integer> aulas) {
+        marcar(aulas, false);
+    }
+
+    private void marcar(Collection<Integer> aulas, boolean libre) {
+        for (Integer id : aulas) {
+            enCurso.remove(id);
+            Ubicacion ubicacion = ubicaciones.get(id);
+            if (ubicacion != null) {
+                ubicacion.grupo.libres.set(ubicacion.posicion, libre);
+            }
+            anotar(id, libre);
+        }
+    }
+
+    private void anotar(int id, boolean libre) {
+        if (cambiosDuranteRecarga != null) {
+            cambiosDuranteRecarga.add(new Cambio(id, libre));
+        }
+    }
+
+    private void recargar() {
+        synchronized (this) {
+            cambiosDuranteRecarga = new ArrayList<>();
+        }
+        Map<String, List<Aula>> porGrupo = new HashMap<>();
+        Connection conn = ConexionDB.conectar();
+        try {
+            if (conn == null) {
+                throw new SQLException("Sin conexión a la base de datos");
+            }
+            String sql = "SELECT id, semestre, tipo, capacidad, edificio, equipamiento, "
+                    + "status = 'Disponible' AND programa_id IS NULL FROM Aulas";
+            try (PreparedStatement ps = conn.prepareStatement(sql); ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    porGrupo.computeIfAbsent(rs.getString(2) + "," + rs.getString(3), g -> new ArrayList<>())
+                            .add(new Aula(rs.getInt(1), rs.getInt(4), rs.getString(5), rs.getString(6),
+                                    rs.getBoolean(7)));
+                }
+            }
+        } catch (SQLException e) {
+            synchronized (this) {
+                cambiosDuranteRecarga = null;
+            }
+            // Se sigue con el índice anterior
+            recargasFallidas.inc();
+            logError.log("No se pudo reconstruir el índice de aulas: {}", e.getMessage());
+            return;
+        } finally {
+            ConexionDB.cerrar(conn);
+        }
+        cargar(porGrupo);
+    }
+
+    /** Reemplaza los grupos por los leídos ("semestre,tipo" -> aulas), sin perder lo cambiado mientras tanto. */
+    synchronized void cargar(Map<String, List<Aula>> porGrupo) {
+        Map<String, Grupo> nuevos = new HashMap<>();
+        Map<Integer, Ubicacion> nuevasUbicaciones = new HashMap<>();
+        for (Map.Entry<String, List<Aula>> e : porGrupo.entrySet()) {
+            Grupo grupo = new Grupo(e.getValue());
+            nuevos.put(e.getKey(), grupo);
+            for (int i = 0; i < grupo.ids.length; i++) {
+                nuevasUbicaciones.put(grupo.ids[i], new Ubicacion(grupo, i));
+                if (enCurso.contains(grupo.ids[i])) {
+                    grupo.libres.clear(i);
+                }
+            }
+        }
+        if (cambiosDuranteRecarga != null) {
+            for (Cambio cambio : cambiosDuranteRecarga) {
+                Ubicacion ubicacion = nuevasUbicaciones.get(cambio.id);
+                if (ubicacion != null) {
+                    ubicacion.grupo.libres.set(ubicacion.posicion, cambio.libre);
+                }
+            }
+        }
+        grupos = nuevos;
+        ubicaciones = nuevasUbicaciones;
+        cambiosDuranteRecarga = null;
+    }
+
+    private synchronized double cantidad() {
+        return ubicaciones.size();
+    }
+
+    private synchronized double libres() {
+        int libres = 0;
+        for (Grupo grupo : grupos.values()) {
+            libres += grupo.libres.cardinality();
+        }
+        return libres;
+    }
+
+    /**
+     * Lo que una solicitud pide de cada aula. En el cable es el octavo campo de la asignación,
+     * "capacidad=40;edificio=B;equipo=proyector+pc", con cualquiera de las partes.
+     */
+    public static final class Requisitos {
+
+        public static final Requisitos NINGUNO = new Requisitos(0, null, new String[0]);
+
+        final int capacidad;
+        final String edificio;        // null = cualquiera
+        final String[] equipamiento;
+
+        private Requisitos(int capacidad, String edificio, String[] equipamiento) {
+            this.capacidad = capacidad;
+            this.edificio = edificio;
+            this.equipamiento = equipamiento;
+        }
+
+        /** @throws IllegalArgumentException si el texto no tiene el formato esperado */
+        public static Requisitos leer(String texto) {
+            if (texto == null || texto.isBlank()) {
+                return NINGUNO;
+            }
+            int capacidad = 0;
+            String edificio = null;
+            String[] equipamiento = new String[0];
+            for (String parte : texto.split(";")) {
+                int igual = parte.indexOf('=');
+                if (igual < 0) {
+                    throw new IllegalArgumentException("Requisito sin valor: " + parte);
+                }
+                String valor = parte.substring(igual + 1).trim();
+                switch (parte.substring(0, igual).trim()) {
+                    case "capacidad":
+                        capacidad = Integer.parseInt(valor);
+                        break;
+                    case "edificio":
+                        edificio = valor.isEmpty() ? null : valor;
+                        break;
+                    case "equipo":
+                        equipamiento = valor.isEmpty() ? new String[0] : valor.split("\\+");
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Requisito desconocido: " + parte);
+                }
+            }
+            return new Requisitos(capacidad, edificio, equipamiento);
+        }
+
+        boolean vacios() {
+            return capacidad <= 0 && edificio == null && equipamiento.length == 0;
+        }
+    }
+
+    /** Aulas de un semestre y tipo, ordenadas por capacidad; la posición de cada una no cambia. */
+    private static final class Grupo {
+
+        final int[] ids;
+        final int[] capacidades;
+        final BitSet libres;
+        final Map<String, BitSet> porEdificio = new HashMap<>();
+        final Map<String, BitSet> porEquipamiento = new HashMap<>();
+
+        Grupo(List<Aula> aulas) {
+            aulas.sort((a, b) -> a.capacidad != b.capacidad ? Integer.compare(a.capacidad, b.capacidad)
+                    : Integer.compare(a.id, b.id));
+            int n = aulas.size();
+            ids = new int[n];
+            capacidades = new int[n];
+            libres = new BitSet(n);
+            for (int i = 0; i < n; i++) {
+                Aula aula = aulas.get(i);
+                ids[i] = aula.id;
+                capacidades[i] = aula.capacidad;
+                libres.set(i, aula.libre);
+                if (aula.edificio != null && !aula.edificio.isEmpty()) {
+                    porEdificio.computeIfAbsent(aula.edificio, e -> new BitSet(n)).set(i);
+                }
+                if (aula.equipamiento != null && !aula.equipamiento.isEmpty()) {
+                    for (String etiqueta : aula.equipamiento.split("\\+")) {
+                        porEquipamiento.computeIfAbsent(etiqueta.trim(), e -> new BitSet(n)).set(i);
+                    }
+                }
+            }
+        }
+
+        /** Libres que cumplen los requisitos: copia de las libres desde la capacidad mínima, intersecada. */
+        BitSet candidatas(Requisitos requisitos) {
+            BitSet candidatas = (BitSet) libres.clone();
+            candidatas.clear(0, desde(requisitos.capacidad));
+            if (requisitos.edificio != null) {
+                intersecar(candidatas, porEdificio.get(requisitos.edificio));
+            }
+            for (String etiqueta : requisitos.equipamiento) {
+                intersecar(candidatas, porEquipamiento.get(etiqueta));
+            }
+            return candidatas;
+        }
+
+        // Un edificio o etiqueta que ninguna aula del grupo tiene deja el conjunto vacío
+        private static void intersecar(BitSet candidatas, BitSet con) {
+            if (con == null) {
+                candidatas.clear();
+            } else {
+                candidatas.and(con);
+            }
+        }
+
+        /** Primera posición con capacidad >= minima (búsqueda binaria). */
+        int desde(int minima) {
+            int bajo = 0;
+            int alto = capacidades.length;
+            while (bajo < alto) {
+                int medio = (bajo + alto) >>> 1;
+                if (capacidades[medio] < minima) {
+                    bajo = medio + 1;
+                } else {
+                    alto = medio;
+                }
+            }
+            return bajo;
+        }
+    }
+
+    static final class Aula {
+
+        final int id;
+        final int capacidad;
+        final String edificio;
+        final String equipamiento;
+        final boolean libre;
+
+        Aula(int id, int capacidad, String edificio, String equipamiento, boolean libre) {
+            this.id = id;
+            this.capacidad = capacidad;
+            this.edificio = edificio;
+            this.equipamiento = equipamiento;
+            this.libre = libre;
+        }
+    }
+
+    private static final class Ubicacion {
+
+        final Grupo grupo;
+        final int posicion;
+
+        Ubicacion(Grupo grupo, int posicion) {
+            this.grupo = grupo;
+            this.posicion = posicion;
+        }
+    }
+
+    private static final class Cambio {
+
+        final int id;
+        final boolean libre;
+
+        Cambio(int id, boolean libre) {
+            this.id = id;
+            this.libre = libre;
+        }
+    }
+}
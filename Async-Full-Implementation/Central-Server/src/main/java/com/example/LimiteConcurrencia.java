@@ -0,0 +1,158 @@
+package com.example;
+
+/**
+ * Límite adaptativo de trabajos simultáneos contra la base de datos, por gradiente de latencia.
+ *
+ * Cada ventana de -Dlimite.<nombre>.ventanaMs (250) se compara la latencia media reciente con
+ * la latencia base, la de la base de datos sin cola: la menor media de ventana vista, que sube
+ * despacio para seguir cambios de plan o de datos. Si la reciente pasa de
+ * -Dlimite.<nombre>.tolerancia (1.5) veces la base, la base de datos está haciendo cola y el
+ * límite baja en esa proporción (a lo sumo a la mitad por ventana). Si no, crece en la raíz
+ * del límite, pero solo si se llegó a usar al menos la mitad: sin carga no hay nada que medir.
+ * Un error de base de datos en la ventana lo recorta un 10%. El límite queda entre
+ * -Dlimite.<nombre>.minimo (1) y -Dlimite.<nombre>.maximo (32) y arranca en
+ * -Dlimite.<nombre>.inicial (8); con mínimo igual a máximo es un límite fijo.
+ *
+ * Los hilos que exceden el límite esperan en adquirir() con el elemento ya tomado; el resto
+ * espera en la cola de la etapa, que es la que se ve llena cuando el servidor satura.
+ */
+public class LimiteConcurrencia {
+
+    private static final double SUAVIZADO = 0.2;
+    // Cuánto puede subir la latencia base por ventana (0.2%: alrededor de 1% por segundo)
+    private static final double DERIVA_BASE = 0.002;
+    private static final double GRADIENTE_MINIMO = 0.5;
+    private static final double RECORTE_POR_ERROR = 0.9;
+
+    private final int minimo;
+    private final int maximo;
+    private final double tolerancia;
+    private final long ventanaNs;
+
+    // Todo lo protege el monitor de este objeto
+    private double limite;
+    private int enCurso;
+    private int maximoEnCurso;       // en la ventana actual
+    private long inicioVentana = System.nanoTime();
+    private long sumaVentanaNs;
+    private int muestrasVentana;
+    private boolean erroresVentana;
+    private double latenciaCortaNs;
+    private double latenciaBaseNs;
+
+    private final Metricas.Contador subidas;
+    private final Metricas.Contador bajadas;
+
+    public static LimiteConcurrencia desdePropiedades(String nombre) {
+        String prefijo = "limite." + nombre + ".";
+        return new LimiteConcurrencia(nombre, Integer.getInteger(prefijo + "inicial", 8),
+                Integer.getInteger(prefijo + "minimo", 1), Integer.getInteger(prefijo + "maximo", 32),
+                Double.parseDouble(System.getProperty(prefijo + "tolerancia", "1.5")),
+                Long.getLong(prefijo + "ventanaMs", 250));
+    }
+
+    private LimiteConcurrencia(String nombre, int inicial, int minimo, int maximo, double tolerancia,
+                               long ventanaMs) {
+        this.minimo = Math.max(1, minimo);
+        this.maximo = Math.max(this.minimo, maximo);
+        this.tolerancia = tolerancia;
+        this.ventanaNs = ventanaMs * 1_000_000L;
+        this.limite = Math.max(this.minimo, Math.min(this.maximo, inicial));
+
+        Metricas.indicador("servidor_limite_concurrencia", "Trabajos simultáneos permitidos por el límite adaptativo",
+                this::limite, "etapa", nombre);
+        Metricas.indicador("servidor_limite_en_curso", "Trabajos dentro del límite en este momento",
+                this::enCurso, "etapa", nombre);
+        Metricas.indicador("servidor_limite_latencia_corta_segundos", "Latencia media de la última ventana",
+                () -> latencia(true), "etapa", nombre);
+        Metricas.indicador("servidor_limite_latencia_base_segundos", "Latencia estimada sin cola",
+                () -> latencia(false), "etapa", nombre);
+        subidas = Metricas.contador("servidor_limite_cambios_total", "Ajustes del límite de concurrencia",
+                "etapa", nombre, "direccion", "sube");
+        bajadas = Metricas.contador("servidor_limite_cambios_total", "Ajustes del límite de concurrencia",
+                "etapa", nombre, "direccion", "baja");
+    }
+
+    /** Cantidad de hilos que necesita la etapa para poder llegar al máximo. */
+    public int maximo() {
+        return maximo;
+    }
+
+    /** Espera hasta que haya lugar dentro del límite. */
+    public synchronized void adquirir() throws InterruptedException {
+        while (enCurso >= (int) limite) {
+            wait();
+        }
+        enCurso++;
+        maximoEnCurso = Math.max(maximoEnCurso, enCurso);
+    }
+
+    /** Termina un trabajo empezado en "inicio" (nanoTime) y, si cerró la ventana, ajusta el límite. */
+    public synchronized void liberar(long inicio) {
+        enCurso--;
+        long ahora = System.nanoTime();
+        sumaVentanaNs += ahora - inicio;
+        muestrasVentana++;
+        if (ahora - inicioVentana >= ventanaNs) {
+            ajustar(ahora);
+        }
+        notifyAll();
+    }
+
+    /** El trabajo en curso falló contra la base de datos: el límite baja al cerrar la ventana. */
+    public synchronized void error() {
+        erroresVentana = true;
+    }
+
+    /**
+     * Espera estimada (ms) para que se atiendan "pendientes" trabajos a este límite y latencia;
+     * es la sugerencia de reintento cuando el servidor rechaza por saturación.
+     */
+    public synchronized long esperaEstimadaMs(int pendientes) {
+        double latenciaNs = latenciaCortaNs > 0 ? latenciaCortaNs : 1_000_000;
+        return Math.max(1, (long) Math.ceil((pendientes + 1) / limite * latenciaNs / 1_000_000));
+    }
+
+    // Llamar con el monitor tomado
+    private void ajustar(long ahora) {
+        double anterior = limite;
+        if (muestrasVentana > 0) {
+            latenciaCortaNs = (double) sumaVentanaNs / muestrasVentana;
+            latenciaBaseNs = latenciaBaseNs == 0 ? latenciaCortaNs
+                    : Math.min(latenciaCortaNs, latenciaBaseNs * (1 + DERIVA_BASE));
+            double gradiente = Math.max(GRADIENTE_MINIMO,
+                    Math.min(1.0, tolerancia * latenciaBaseNs / latenciaCortaNs));
+            double nuevo = limite * gradiente;
+            if (gradiente >= 1.0 && maximoEnCurso >= limite / 2) {
+                nuevo += Math.sqrt(limite);
+            }
+            limite = limite * (1 - SUAVIZADO) + nuevo * SUAVIZADO;
+        }
+        if (erroresVentana) {
+            limite *= RECORTE_POR_ERROR;
+        }
+        limite = Math.max(minimo, Math.min(maximo, limite));
+        if ((int) limite > (int) anterior) {
+            subidas.inc();
+        } else if ((int) limite < (int) anterior) {
+            bajadas.inc();
+        }
+        inicioVentana = ahora;
+        sumaVentanaNs = 0;
+        muestrasVentana = 0;
+        erroresVentana = false;
+        maximoEnCurso = enCurso;
+    }
+
+    private synchronized double limite() {
+        return (int) limite;
+    }
+
+    private synchronized double enCurso() {
+        return enCurso;
+    }
+
+    private synchronized double latencia(boolean corta) {
+        return (corta ? latenciaCortaNs : latenciaBaseNs) / 1e9;
+    }
+}
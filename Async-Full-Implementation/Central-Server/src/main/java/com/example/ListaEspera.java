@@ -0,0 +1,213 @@
+package com.example;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Lista de espera para las asignaciones que no alcanzan aulas, activa con -Despera.maximaMs > 0
+ * (cuánto puede esperar una solicitud; 0, por defecto, la desactiva y se deniega como siempre).
+ *
+ * En vez de "Denegada" el cliente recibe "EnEspera" con el tema de Resultados de su programa, y
+ * la solicitud queda en la cola de su semestre y del tipo de aula que le faltó. Cada cola es
+ * una PriorityQueue por llegada: una solicitud que vuelve tras un reintento fallido conserva su
+ * lugar. Caben -Despera.capacidad (10000); con la lista llena se deniega.
+ *
+ * Las aulas vuelven por liberaciones, cancelaciones, vencimientos y cargas nuevas (RECARGAR), y
+ * todas terminan en una recarga de DisponibilidadCache. Tras cada recarga se hace una pasada: por
+ * semestre y en orden de llegada se reintentan las que caben en la instantánea, descontándolas a
+ * medida que se eligen. Una que no cabe no detiene a las siguientes más chicas, y una misma
+ * solicitud no se reintenta más de una vez cada -Despera.reintentoMs (1000). El reintento pasa
+ * por la etapa asignar como cualquier solicitud; si vuelven a faltar aulas, regresa a su cola.
+ * El resultado final, Aprobada o Denegada al pasar el tiempo máximo, se publica en Resultados.
+ *
+ * La lista vive en memoria: si el servidor se reinicia, lo que esperaba queda sin resultado.
+ */
+public class ListaEspera {
+
+    private static final Comparator<Trabajo> POR_LLEGADA = Comparator.comparingLong(t -> t.enEsperaDesde);
+
+    private final long maximaNs = Long.getLong("espera.maximaMs", 0) * 1_000_000L;
+    private final long reintentoNs = Long.getLong("espera.reintentoMs", 1000) * 1_000_000L;
+    private final int capacidad = Integer.getInteger("espera.capacidad", 10_000);
+    private final Predicate<Trabajo> reintentar;
+    private final Consumer<Trabajo> vencer;
+
+    private final Map<String, Colas> colas = new HashMap<>();   // por semestre
+    private int cantidad;
+
+    private final Metricas.Contador reintentos = Metricas.contador("servidor_espera_reintentos_total",
+            "Solicitudes en espera enviadas de nuevo a la etapa asignar");
+    private final Metricas.Contador asignadas = Metricas.contador("servidor_espera_total",
+            "Solicitudes que salieron de la lista de espera, por resultado", "resultado", "Aprobada");
+    private final Metricas.Contador vencidas = Metricas.contador("servidor_espera_total",
+            "Solicitudes que salieron de la lista de espera, por resultado", "resultado", "Denegada");
+    private final Metricas.Contador rechazadas = Metricas.contador("servidor_espera_llena_total",
+            "Solicitudes denegadas porque la lista de espera estaba llena");
+    private final Metricas.Histograma espera = Metricas.histograma("servidor_espera_duracion_segundos",
+            "Tiempo en la lista de espera de las solicitudes que terminaron aprobadas",
+            new double[] {1, 5, 15, 60, 300, 900, 3600});
+
+    /**
+     * @param reintentar envía un reintento a la etapa asignar; false si la etapa no lo recibió
+     * @param vencer     deniega definitivamente una solicitud que pasó el tiempo máximo
+     */
+    public ListaEspera(Predicate<Trabajo> reintentar, Consumer<Trabajo> vencer) {
+        this.reintentar = reintentar;
+        this.vencer = vencer;
+        Metricas.indicador("servidor_espera_solicitudes", "Solicitudes en la lista de espera", this::cantidad);
+    }
+
+    public boolean activa() {
+        return maximaNs > 0;
+    }
+
+    /**
+     * Deja en espera una solicitud a la que le faltaron aulas de "tipo" (0 salones, 1 laboratorios).
+     * Devuelve false, y hay que denegarla, si la lista está desactivada o llena, o si es un
+     * reintento que ya esperó el máximo.
+     */
+    public synchronized boolean agregar(Trabajo trabajo, int tipo) {
+        if (!activa()) {
+            return false;
+        }
+        long ahora = System.nanoTime();
+        if (trabajo.enEsperaDesde == 0) {
+            if (cantidad >= capacidad) {
+                rechazadas.inc();
+                return false;
+            }
+            trabajo.enEsperaDesde = ahora;
+        } else if (ahora - trabajo.enEsperaDesde >= maximaNs) {
+            vencidas.inc();
+            return false;
+        }
+        trabajo.tipoEspera = tipo;
+        trabajo.ultimoIntento = ahora;
+        encolar(trabajo);
+        return true;
+    }
+
+    /** Un reintento terminó aprobado. */
+    public void asignada(Trabajo trabajo) {
+        asignadas.inc();
+        espera.observarDesde(trabajo.enEsperaDesde);
+    }
+
+    /**
+     * Pasada tras una recarga de disponibilidad: vence las que pasaron el máximo y reintenta, en
+     * orden de llegada, las que caben en lo que hay libre en cada semestre.
+     *
+     * @param disponibles semestre -> {salones, laboratorios} libres según la instantánea
+     */
+    public void pasada(Function<String, int[]> disponibles) {
+        List<Trabajo> elegidas = new ArrayList<>();
+        List<Trabajo> vencidasAhora = new ArrayList<>();
+        synchronized (this) {
+            if (cantidad == 0) {
+                return;
+            }
+            long ahora = System.nanoTime();
+            for (Map.Entry<String, Colas> e : colas.entrySet()) {
+                Colas delSemestre = e.getValue();
+                for (PriorityQueue<Trabajo> cola : List.of(delSemestre.salones, delSemestre.laboratorios)) {
+                    cola.removeIf(trabajo -> {
+                        boolean vencida = ahora - trabajo.enEsperaDesde >= maximaNs;
+                        if (vencida) {
+                            vencidasAhora.add(trabajo);
+                        }
+                        return vencida;
+                    });
+                }
+                elegir(delSemestre, disponibles.apply(e.getKey()).clone(), ahora, elegidas);
+            }
+            cantidad -= elegidas.size() + vencidasAhora.size();
+        }
+        for (Trabajo trabajo : vencidasAhora) {
+            vencidas.inc();
+            vencer.accept(trabajo);
+        }
+        for (Trabajo trabajo : elegidas) {
+            if (reintentar.test(trabajo)) {
+                reintentos.inc();
+            } else {
+                // Pipeline lleno: vuelve a su lugar y se intenta en la próxima pasada
+                synchronized (this) {
+                    encolar(trabajo);
+                }
+            }
+        }
+    }
+
+    // Toma las cabezas de las dos colas del semestre en orden de llegada mientras quede algo libre.
+    // Las que no caben o se reintentaron hace poco se devuelven a su cola al final.
+    private void elegir(Colas delSemestre, int[] libres, long ahora, List<Trabajo> elegidas) {
+        List<Trabajo> saltadas = new ArrayList<>();
+        while (libres[0] > 0 || libres[1] > 0) {
+            PriorityQueue<Trabajo> cola = delSemestre.masAntigua();
+            if (cola == null) {
+                break;
+            }
+            Trabajo trabajo = cola.poll();
+            if (ahora - trabajo.ultimoIntento >= reintentoNs && cabe(trabajo.solicitud, libres)) {
+                elegidas.add(trabajo);
+            } else {
+                saltadas.add(trabajo);
+            }
+        }
+        for (Trabajo trabajo : saltadas) {
+            delSemestre.de(trabajo.tipoEspera).add(trabajo);
+        }
+    }
+
+    /**
+     * Misma regla que la asignación: los laboratorios que falten se cubren con salones sobrantes.
+     * Si cabe, descuenta lo que usaría.
+     */
+    static boolean cabe(Solicitud solicitud, int[] libres) {
+        int laboratorios = Math.min(solicitud.cantLabs, libres[1]);
+        int salones = solicitud.cantSalones + solicitud.cantLabs - laboratorios;
+        if (salones > libres[0]) {
+            return false;
+        }
+        libres[0] -= salones;
+        libres[1] -= laboratorios;
+        return true;
+    }
+
+    private void encolar(Trabajo trabajo) {
+        colas.computeIfAbsent(trabajo.solicitud.semestre, s -> new Colas()).de(trabajo.tipoEspera).add(trabajo);
+        cantidad++;
+    }
+
+    private synchronized double cantidad() {
+        return cantidad;
+    }
+
+    /** Las dos colas de un semestre: a quienes les faltaron salones y a quienes les faltaron laboratorios. */
+    private static final class Colas {
+
+        final PriorityQueue<Trabajo> salones = new PriorityQueue<>(POR_LLEGADA);
+        final PriorityQueue<Trabajo> laboratorios = new PriorityQueue<>(POR_LLEGADA);
+
+        PriorityQueue<Trabajo> de(int tipo) {
+            return tipo == 0 ? salones : laboratorios;
+        }
+
+        /** La cola cuya cabeza llegó primero, o null si las dos están vacías. */
+        PriorityQueue<Trabajo> masAntigua() {
+            Trabajo salon = salones.peek();
+            Trabajo laboratorio = laboratorios.peek();
+            if (salon == null) {
+                return laboratorio == null ? null : laboratorios;
+            }
+            return laboratorio == null || salon.enEsperaDesde <= laboratorio.enEsperaDesde ? salones : laboratorios;
+        }
+    }
+}
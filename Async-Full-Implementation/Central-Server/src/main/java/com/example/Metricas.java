@@ -0,0 +1,266 @@
+package com.example;
+
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Registro de métricas expuesto en formato de texto de Prometheus.
+ *
+ * Los contadores e histogramas usan LongAdder (celdas repartidas por hilo), así que
+ * incrementarlos desde el camino caliente no genera contención; la suma solo se
+ * calcula cuando alguien consulta /metrics. Las series se crean una vez (campos
+ * static final) y el hilo que procesa solicitudes nunca toca el mapa de registro.
+ */
+public final class Metricas {
+
+    /** Límites por defecto (en segundos) para histogramas de latencia. */
+    public static final double[] LATENCIA_SEGUNDOS = {
+            0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10
+    };
+
+    private static final Map<String, Familia> familias = new LinkedHashMap<>();
+
+    private Metricas() {
+    }
+
+    /** Contador monótono. Las etiquetas se pasan como pares nombre, valor. */
+    public static Contador contador(String nombre, String ayuda, String... etiquetas) {
+        Contador contador = new Contador();
+        registrar(nombre, ayuda, "counter", etiquetas,
+                (sb, n, e) -> linea(sb, n, e, contador.valor()));
+        return contador;
+    }
+
+    /** Valor instantáneo leído en el momento de la consulta. */
+    public static void indicador(String nombre, String ayuda, DoubleSupplier valor, String... etiquetas) {
+        registrar(nombre, ayuda, "gauge", etiquetas,
+                (sb, n, e) -> linea(sb, n, e, valor.getAsDouble()));
+    }
+
+    /** Indicador que el código incrementa y decrementa (por ejemplo, mensajes en vuelo). */
+    public static Contador indicadorMovil(String nombre, String ayuda, String... etiquetas) {
+        Contador contador = new Contador();
+        registrar(nombre, ayuda, "gauge", etiquetas,
+                (sb, n, e) -> linea(sb, n, e, contador.valor()));
+        return contador;
+    }
+
+    public static Histograma histograma(String nombre, String ayuda, double[] limites, String... etiquetas) {
+        Histograma histograma = new Histograma(limites);
+        registrar(nombre, ayuda, "histogram", etiquetas, histograma::escribir);
+        return histograma;
+    }
+
+    /** Levanta el endpoint HTTP /metrics en un hilo daemon propio. */
+    public static void exponer(int puerto) {
+        try {
+            HttpServer http = HttpServer.create(new InetSocketAddress(puerto), 0);
+            http.createContext("/metrics", intercambio -> {
+                byte[] cuerpo = texto().getBytes(StandardCharsets.UTF_8);
+                intercambio.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+                intercambio.sendResponseHeaders(200, cuerpo.length);
+                try (OutputStream out = intercambio.getResponseBody()) {
+                    out.write(cuerpo);
+                }
+            });
+            http.setExecutor(Executors.newSingleThreadExecutor(r -> {
+                Thread t = new Thread(r, "metricas-http");
+                t.setDaemon(true);
+                return t;
+            }));
+            http.start();
+            System.out.println("Métricas disponibles en http://localhost:" + puerto + "/metrics");
+        } catch (IOException e) {
+            System.err.println("No se pudo iniciar el endpoint de métricas: " + e.getMessage());
+        }
+    }
+
+    /** Render completo en formato de exposición de Prometheus. */
+    public static String texto() {
+        StringBuilder sb = new StringBuilder(4096);
+        synchronized (familias) {
+            for (Familia familia : familias.values()) {
+                sb.append("# HELP ").append(familia.nombre).append(' ').append(familia.ayuda).append('\n');
+                sb.append("# TYPE ").append(familia.nombre).append(' ').append(familia.tipo).append('\n');
+                for (Serie serie : familia.series) {
+                    serie.escritor.escribir(sb, familia.nombre, serie.etiquetas);
+                }
+            }
+        }
+        return sb.toString();
+    }
+
+    private static void registrar(String nombre, String ayuda, String tipo, String[] etiquetas, Escritor escritor) {
+        if (etiquetas.length % 2 != 0) {
+            throw new IllegalArgumentException("Las etiquetas deben ir en pares nombre, valor: " + nombre);
+        }
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < etiquetas.length; i += 2) {
+            if (sb.length() > 0) {
+                sb.append(',');
+            }
+            sb.append(etiquetas[i]).append("=\"")
+              .append(etiquetas[i + 1].replace("\\", "\\\\").replace("\"", "\\\"")).append('"');
+        }
+        synchronized (familias) {
+            Familia familia = familias.computeIfAbsent(nombre, n -> new Familia(n, ayuda, tipo));
+            if (!familia.tipo.equals(tipo)) {
+                throw new IllegalStateException("La métrica " + nombre + " ya está registrada como " + familia.tipo);
+            }
+            familia.series.add(new Serie(sb.toString(), escritor));
+        }
+    }
+
+    private static void linea(StringBuilder sb, String nombre, String etiquetas, double valor) {
+        sb.append(nombre);
+        if (!etiquetas.isEmpty()) {
+            sb.append('{').append(etiquetas).append('}');
+        }
+        sb.append(' ').append(formato(valor)).append('\n');
+    }
+
+    private static String formato(double valor) {
+        if (valor == Math.rint(valor) && !Double.isInfinite(valor)) {
+            return Long.toString((long) valor);
+        }
+        return Double.toString(valor);
+    }
+
+    public static final class Contador {
+
+        private final LongAdder valor = new LongAdder();
+
+        public void inc() {
+            valor.increment();
+        }
+
+        public void dec() {
+            valor.decrement();
+        }
+
+        public void sumar(long n) {
+            valor.add(n);
+        }
+
+        public long valor() {
+            return valor.sum();
+        }
+    }
+
+    public static final class Histograma {
+
+        private final double[] limites;
+        private final long[] limitesNanos;
+        private final LongAdder[] cubetas;
+        private final LongAdder sumaNanos = new LongAdder();
+        private long[] ultimaLectura;
+
+        private Histograma(double[] limites) {
+            this.limites = limites.clone();
+            this.limitesNanos = new long[limites.length];
+            this.cubetas = new LongAdder[limites.length + 1];
+            for (int i = 0; i < limites.length; i++) {
+                limitesNanos[i] = (long) (limites[i] * 1_000_000_000L);
+            }
+            for (int i = 0; i < cubetas.length; i++) {
+                cubetas[i] = new LongAdder();
+            }
+        }
+
+        public void observarNanos(long nanos) {
+            int i = 0;
+            while (i < limitesNanos.length && nanos > limitesNanos[i]) {
+                i++;
+            }
+            cubetas[i].increment();
+            sumaNanos.add(nanos);
+        }
+
+        /** Observa el tiempo transcurrido desde un System.nanoTime() previo. */
+        public void observarDesde(long inicioNanos) {
+            observarNanos(System.nanoTime() - inicioNanos);
+        }
+
+        /**
+         * Percentil q (entre 0 y 1) de lo observado desde la llamada anterior, en segundos:
+         * el límite superior de la cubeta donde cae (el último límite si cae en +Inf), o 0 si
+         * no hubo observaciones. Pensado para un solo lector periódico.
+         */
+        public synchronized double percentilReciente(double q) {
+            long[] previa = ultimaLectura;
+            long[] actual = new long[cubetas.length];
+            long total = 0;
+            for (int i = 0; i < cubetas.length; i++) {
+                actual[i] = cubetas[i].sum();
+                total += actual[i] - (previa == null ? 0 : previa[i]);
+            }
+            ultimaLectura = actual;
+            if (total == 0) {
+                return 0;
+            }
+            long objetivo = (long) Math.ceil(q * total);
+            long acumulado = 0;
+            for (int i = 0; i < limites.length; i++) {
+                acumulado += actual[i] - (previa == null ? 0 : previa[i]);
+                if (acumulado >= objetivo) {
+                    return limites[i];
+                }
+            }
+            return limites[limites.length - 1];
+        }
+
+        private void escribir(StringBuilder sb, String nombre, String etiquetas) {
+            String prefijo = etiquetas.isEmpty() ? "" : etiquetas + ",";
+            long acumulado = 0;
+            for (int i = 0; i < cubetas.length; i++) {
+                acumulado += cubetas[i].sum();
+                String le = i < limites.length ? formato(limites[i]) : "+Inf";
+                sb.append(nombre).append("_bucket{").append(prefijo).append("le=\"").append(le).append("\"} ")
+                  .append(acumulado).append('\n');
+            }
+            linea(sb, nombre + "_sum", etiquetas, sumaNanos.sum() / 1e9);
+            linea(sb, nombre + "_count", etiquetas, acumulado);
+        }
+    }
+
+    @FunctionalInterface
+    private interface Escritor {
+        void escribir(StringBuilder sb, String nombre, String etiquetas);
+    }
+
+    private static final class Serie {
+
+        final String etiquetas;
+        final Escritor escritor;
+
+        Serie(String etiquetas, Escritor escritor) {
+            this.etiquetas = etiquetas;
+            this.escritor = escritor;
+        }
+    }
+
+    private static final class Familia {
+
+        final String nombre;
+        final String ayuda;
+        final String tipo;
+        final List<Serie> series = new ArrayList<>();
+
+        Familia(String nombre, String ayuda, String tipo) {
+            this.nombre = nombre;
+            this.ayuda = ayuda;
+            this.tipo = tipo;
+        }
+    }
+}
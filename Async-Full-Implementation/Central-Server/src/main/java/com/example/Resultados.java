@@ -0,0 +1,148 @@
+package com.example;
+
+import org.zeromq.SocketType;
+import org.zeromq.ZContext;
+import org.zeromq.ZMQ;
+import org.zeromq.ZMQ.Poller;
+
+import java.util.ArrayDeque;
+
+/**
+ * Publica el resultado final (Aprobada / Denegada) de cada asignación, para los clientes que
+ * la enviaron en modo asíncrono y no esperan la respuesta por el camino de ida.
+ *
+ * PUB en -Dresultados.puerto (5557); cada mensaje lleva tema, secuencia y
+ * "requestId,Resultado: ...". El tema es "facultad/programa/", así que suscribirse a
+ * "facultad/" trae toda la facultad y a "facultad/programa/" solo ese programa.
+ *
+ * PUB no guarda nada para quien no estaba conectado, así que los últimos
+ * -Dresultados.retencion (10000) quedan en memoria y un ROUTER en el puerto siguiente (5558)
+ * atiende "RECUPERAR <desde> <tema>": devuelve uno por mensaje los retenidos de ese tema con
+ * secuencia mayor que "desde" y al final "FIN" con la secuencia más vieja retenida, para que el
+ * cliente sepa si perdió alguno. Las secuencias arrancan en el epoch de inicio por 1000, así
+ * que siguen creciendo aunque el servidor se reinicie.
+ *
+ * Los sockets y la retención solo los toca el hilo propio; los demás hilos publican por un
+ * PUSH inproc, como en CanalRespuestas.
+ */
+public class Resultados {
+
+    private static final String DIRECCION = "inproc://resultados";
+
+    private final int puerto = Integer.getInteger("resultados.puerto", 5557);
+    private final int capacidad = Integer.getInteger("resultados.retencion", 10_000);
+    // Solo la toca el hilo de resultados
+    private final ArrayDeque<Retenido> retenidos = new ArrayDeque<>();
+    private long secuencia = System.currentTimeMillis() * 1000;
+    private volatile int cantidadRetenidos;
+
+    private ZContext context;
+    private ThreadLocal<ZMQ.Socket> salidas;
+
+    private final Metricas.Contador publicados = Metricas.contador("servidor_resultados_publicados_total",
+            "Resultados publicados en el PUB de resultados");
+    private final Metricas.Contador recuperados = Metricas.contador("servidor_resultados_recuperados_total",
+            "Resultados reenviados a suscriptores que pidieron los que se perdieron");
+
+    public Resultados() {
+        Metricas.indicador("servidor_resultados_retenidos", "Resultados guardados para recuperación",
+                () -> cantidadRetenidos);
+    }
+
+    public void iniciar() {
+        context = new ZContext();
+        ZMQ.Socket entrada = context.createSocket(SocketType.PULL);
+        entrada.bind(DIRECCION);
+        salidas = ThreadLocal.withInitial(() -> {
+            ZMQ.Socket salida = context.createSocket(SocketType.PUSH);
+            salida.connect(DIRECCION);
+            return salida;
+        });
+        Thread hilo = new Thread(() -> atender(entrada), "resultados");
+        hilo.setDaemon(true);
+        hilo.start();
+    }
+
+    /** Publica un resultado desde cualquier hilo. */
+    public void publicar(String facultad, String programa, String resultado) {
+        ZMQ.Socket salida = salidas.get();
+        salida.sendMore(facultad + "/" + programa + "/");
+        salida.send(resultado);
+    }
+
+    private void atender(ZMQ.Socket entrada) {
+        ZMQ.Socket publicador = context.createSocket(SocketType.PUB);
+        publicador.bind("tcp://*:" + puerto);
+        ZMQ.Socket recuperacion = context.createSocket(SocketType.ROUTER);
+        recuperacion.bind("tcp://*:" + (puerto + 1));
+        System.out.println("Resultados publicados en el puerto " + puerto + ", recuperación en el " + (puerto + 1));
+
+        Poller poller = context.createPoller(2);
+        poller.register(entrada, Poller.POLLIN);
+        poller.register(recuperacion, Poller.POLLIN);
+        while (!Thread.currentThread().isInterrupted()) {
+            if (poller.poll(1000) <= 0) {
+                continue;
+            }
+            if (poller.pollin(0)) {
+                String tema = entrada.recvStr();
+                String resultado = entrada.recvStr();
+                Retenido retenido = new Retenido(tema, ++secuencia, resultado);
+                enviar(publicador, retenido);
+                publicados.inc();
+                retenidos.add(retenido);
+                if (retenidos.size() > capacidad) {
+                    retenidos.poll();
+                }
+                cantidadRetenidos = retenidos.size();
+            }
+            if (poller.pollin(1)) {
+                recuperar(recuperacion);
+            }
+        }
+    }
+
+    // Esperamos: RECUPERAR <desde> <tema>; el tema es un prefijo, igual que en la suscripción
+    private void recuperar(ZMQ.Socket recuperacion) {
+        byte[] identidad = recuperacion.recv(0);
+        String[] pedido = recuperacion.recvStr().split(" ", 3);
+        long desde = 0;
+        String tema = pedido.length == 3 ? pedido[2] : "";
+        try {
+            desde = pedido.length >= 2 ? Long.parseLong(pedido[1]) : 0;
+        } catch (NumberFormatException e) {
+            // Sin secuencia válida se devuelve todo lo retenido del tema
+        }
+        for (Retenido retenido : retenidos) {
+            if (retenido.secuencia > desde && retenido.tema.startsWith(tema)) {
+                recuperacion.sendMore(identidad);
+                enviar(recuperacion, retenido);
+                recuperados.inc();
+            }
+        }
+        Retenido primero = retenidos.peek();
+        recuperacion.sendMore(identidad);
+        recuperacion.sendMore("FIN");
+        recuperacion.sendMore(Long.toString(primero != null ? primero.secuencia : secuencia + 1));
+        recuperacion.send("");
+    }
+
+    private static void enviar(ZMQ.Socket socket, Retenido retenido) {
+        socket.sendMore(retenido.tema);
+        socket.sendMore(Long.toString(retenido.secuencia));
+        socket.send(retenido.resultado);
+    }
+
+    private static final class Retenido {
+
+        final String tema;
+        final long secuencia;
+        final String resultado;
+
+        Retenido(String tema, long secuencia, String resultado) {
+            this.tema = tema;
+            this.secuencia = secuencia;
+            this.resultado = resultado;
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package com.example;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+/**
+ * Rueda temporal jerárquica para vencimientos masivos (concesiones de aulas).
+ *
+ * NIVELES ruedas de 64 ranuras; el nivel L avanza una ranura cada 64^L ticks, así que
+ * con 4 niveles y tick de 1 s cubre ~194 días. Programar y cancelar son O(1): el hilo
+ * que llama solo encola el temporizador (o marca la cancelación) y el hilo de la
+ * rueda lo ubica en su ranura. Cuando un nivel da la vuelta, la ranura correspondiente
+ * del nivel superior se "cae en cascada" y sus temporizadores se reubican más abajo.
+ * Nunca se recorre la colección completa de temporizadores.
+ */
+public class RuedaTemporal<T> {
+
+    private static final int BITS = 6;
+    private static final int RANURAS = 1 << BITS;
+    private static final int MASCARA = RANURAS - 1;
+    private static final int NIVELES = 4;
+    private static final long ALCANCE = 1L << (BITS * NIVELES);
+
+    private final long tickNanos;
+    private final long inicioNanos;
+    private final LongSupplier reloj;
+    private final Consumer<T> alVencer;
+    private final Temporizador<T>[][] ranuras;
+    private final ConcurrentLinkedQueue<Temporizador<T>> altas = new ConcurrentLinkedQueue<>();
+    private final AtomicLong pendientes = new AtomicLong();
+    private long tickActual; // solo lo toca el hilo de la rueda
+
+    public RuedaTemporal(String nombre, long tickMs, Consumer<T> alVencer) {
+        this(tickMs, alVencer, System::nanoTime);
+        Thread hilo = new Thread(this::girar, nombre);
+        hilo.setDaemon(true);
+        hilo.start();
+    }
+
+    /** Sin hilo propio y con el reloj dado (en nanos): la rueda avanza solo con avanzar(). Para pruebas. */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    RuedaTemporal(long tickMs, Consumer<T> alVencer, LongSupplier reloj) {
+        this.tickNanos = tickMs * 1_000_000L;
+        this.reloj = reloj;
+        this.inicioNanos = reloj.getAsLong();
+        this.alVencer = alVencer;
+        this.ranuras = new Temporizador[NIVELES][RANURAS];
+    }
+
+    /** Programa el valor para dentro de retrasoMs; el temporizador devuelto permite cancelarlo. */
+    public Temporizador<T> programar(T valor, long retrasoMs) {
+        long ahora = (reloj.getAsLong() - inicioNanos) / tickNanos;
+        long ticks = Math.max(1, (retrasoMs * 1_000_000L + tickNanos - 1) / tickNanos);
+        Temporizador<T> temporizador = new Temporizador<>(valor, ahora + ticks);
+        pendientes.incrementAndGet();
+        altas.add(temporizador);
+        return temporizador;
+    }
+
+    /** Temporizadores programados que aún no vencen ni se cancelaron (aproximado). */
+    public long pendientes() {
+        return pendientes.get();
+    }
+
+    public static final class Temporizador<T> {
+
+        final T valor;
+        final long vence;
+        Temporizador<T> siguiente;
+        private volatile boolean cancelado;
+
+        private Temporizador(T valor, long vence) {
+            this.valor = valor;
+            this.vence = vence;
+        }
+
+        /** La cancelación es perezosa: el nodo se descarta cuando el hilo de la rueda pasa por su ranura. */
+        public void cancelar() {
+            cancelado = true;
+        }
+
+        public boolean cancelado() {
+            return cancelado;
+        }
+    }
+
+    private void girar() {
+        while (!Thread.currentThread().isInterrupted()) {
+            avanzar();
+            long siguienteTick = inicioNanos + (tickActual + 1) * tickNanos;
+            LockSupport.parkNanos(Math.max(0, siguienteTick - reloj.getAsLong()));
+        }
+    }
+
+    /** Procesa los ticks que pasaron según el reloj y ubica los temporizadores nuevos. */
+    void avanzar() {
+        long objetivo = (reloj.getAsLong() - inicioNanos) / tickNanos;
+        while (tickActual < objetivo) {
+            tickActual++;
+            cascada();
+            vencer(tickActual);
+        }
+        ubicarAltas();
+    }
+
+    private void ubicarAltas() {
+        Temporizador<T> temporizador;
+        while ((temporizador = altas.poll()) != null) {
+            ubicar(temporizador);
+        }
+    }
+
+    private void ubicar(Temporizador<T> temporizador) {
+        if (temporizador.cancelado) {
+            pendientes.decrementAndGet();
+            return;
+        }
+        long delta = temporizador.vence - tickActual;
+        if (delta <= 0) {
+            disparar(temporizador);
+            return;
+        }
+        long destino = delta >= ALCANCE ? tickActual + ALCANCE - 1 : temporizador.vence;
+        int nivel = 0;
+        while (nivel < NIVELES - 1 && (destino - tickActual) >= (1L << (BITS * (nivel + 1)))) {
+            nivel++;
+        }
+        int ranura = (int) ((destino >>> (BITS * nivel)) & MASCARA);
+        temporizador.siguiente = ranuras[nivel][ranura];
+        ranuras[nivel][ranura] = temporizador;
+    }
+
+    /** Cuando el nivel L completa una vuelta se reubican los temporizadores de la ranura actual del nivel L+1. */
+    private void cascada() {
+        for (int nivel = 1; nivel < NIVELES; nivel++) {
+            if ((tickActual & ((1L << (BITS * nivel)) - 1)) != 0) {
+                return;
+            }
+            int ranura = (int) ((tickActual >>> (BITS * nivel)) & MASCARA);
+            Temporizador<T> lista = ranuras[nivel][ranura];
+            ranuras[nivel][ranura] = null;
+            while (lista != null) {
+                Temporizador<T> siguiente = lista.siguiente;
+                lista.siguiente = null;
+                ubicar(lista);
+                lista = siguiente;
+            }
+        }
+    }
+
+    private void vencer(long tick) {
+        int ranura = (int) (tick & MASCARA);
+        Temporizador<T> lista = ranuras[0][ranura];
+        ranuras[0][ranura] = null;
+        while (lista != null) {
+            Temporizador<T> siguiente = lista.siguiente;
+            lista.siguiente = null;
+            if (lista.cancelado) {
+                pendientes.decrementAndGet();
+            } else if (lista.vence <= tick) {
+                disparar(lista);
+            } else {
+                ubicar(lista);
+            }
+            lista = siguiente;
+        }
+    }
+
+    private void disparar(Temporizador<T> temporizador) {
+        pendientes.decrementAndGet();
+        try {
+            alVencer.accept(temporizador.valor);
+        } catch (RuntimeException e) {
+            System.err.println("Error al vencer temporizador: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.example;
+
+/**
+ * Solicitud de asignación ya decodificada.
+ * Formato en el cable: requestId,semestre,facultad,programa,cantSalones,cantLabs[,duracionSegundos[,requisitos]]
+ * La duración es opcional: si viene, las aulas se liberan solas al vencer la concesión.
+ * Los requisitos ("capacidad=40;edificio=B;equipo=proyector+pc") piden atributos a cada aula;
+ * para darlos sin duración se manda duración 0.
+ */
+public class Solicitud {
+
+    final String requestId;
+    final String semestre;
+    final String facultad;
+    final String programa;
+    final int cantSalones;
+    final int cantLabs;
+    final long duracionMs;
+    final IndiceAulas.Requisitos requisitos;
+
+    Solicitud(String requestId, String semestre, String facultad, String programa, int cantSalones, int cantLabs,
+              long duracionMs) {
+        this(requestId, semestre, facultad, programa, cantSalones, cantLabs, duracionMs, IndiceAulas.Requisitos.NINGUNO);
+    }
+
+    Solicitud(String requestId, String semestre, String facultad, String programa, int cantSalones, int cantLabs,
+              long duracionMs, IndiceAulas.Requisitos requisitos) {
+        this.requestId = requestId;
+        this.semestre = semestre;
+        this.facultad = facultad;
+        this.programa = programa;
+        this.cantSalones = cantSalones;
+        this.cantLabs = cantLabs;
+        this.duracionMs = duracionMs;
+        this.requisitos = requisitos;
+    }
+}
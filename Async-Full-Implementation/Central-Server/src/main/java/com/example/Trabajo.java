@@ -0,0 +1,34 @@
+package com.example;
+
+import java.util.function.Consumer;
+
+/**
+ * Una solicitud en tránsito por las etapas del servidor.
+ * Cada etapa completa sus campos y la pasa a la siguiente; solo un hilo la toca a la vez.
+ */
+public class Trabajo {
+
+    enum Tipo { ASIGNAR, LIBERAR, CANCELAR }
+
+    final String mensaje;
+    final Consumer<String> responder;
+    final long recibido;
+    final long plazo;   // epoch en ms después del cual nadie espera la respuesta; 0 = sin plazo
+
+    Tipo tipo;
+    String[] partes;
+    Solicitud solicitud;
+    String status;
+    String respuesta;
+    // Lista de espera: cuándo entró (nanoTime, 0 = nunca), último intento y cola (0 salones, 1 laboratorios)
+    long enEsperaDesde;
+    long ultimoIntento;
+    int tipoEspera;
+
+    Trabajo(String mensaje, Consumer<String> responder, long recibido, long plazo) {
+        this.mensaje = mensaje;
+        this.responder = responder;
+        this.recibido = recibido;
+        this.plazo = plazo;
+    }
+}
@@ -0,0 +1,142 @@
+package com.example;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AperturaSemestreTest {
+
+    private static Solicitud solicitud(String programa, int salones, int laboratorios) {
+        return new Solicitud("id", "2025-10", "Ingenieria", programa, salones, laboratorios, 0L);
+    }
+
+    private static boolean[] decidir(int salones, int laboratorios, AperturaSemestre.Objetivo objetivo,
+                                     Solicitud... solicitudes) {
+        return AperturaSemestre.decidir(List.of(solicitudes), salones, laboratorios, objetivo);
+    }
+
+    @Test
+    void laboratoriosQueFaltanSeCubrenConSalones() {
+        // 1 salón + 3 laboratorios con 5 salones y 1 laboratorio: 2 laboratorios van a salones
+        assertArrayEquals(new boolean[] {true},
+                decidir(5, 1, AperturaSemestre.Objetivo.APROBADAS, solicitud("A", 1, 3)));
+    }
+
+    @Test
+    void sinSalonesSobrantesNoHayDesborde() {
+        // El total alcanza (6 <= 6) pero los salones pedidos no: 6 > 5
+        assertArrayEquals(new boolean[] {false},
+                decidir(5, 1, AperturaSemestre.Objetivo.APROBADAS, solicitud("A", 6, 0)));
+        // Los salones alcanzan pero el total no: 1 + 6 > 5 + 1
+        assertArrayEquals(new boolean[] {false},
+                decidir(5, 1, AperturaSemestre.Objetivo.APROBADAS, solicitud("A", 1, 6)));
+    }
+
+    @Test
+    void elDesbordeConsumeSalonesDeLasSiguientes() {
+        // Sin laboratorios libres, la primera usa 2 de los 3 salones: a la segunda no le alcanza el que queda
+        assertArrayEquals(new boolean[] {true, false},
+                decidir(3, 0, AperturaSemestre.Objetivo.APROBADAS, solicitud("A", 0, 2), solicitud("B", 2, 0)));
+    }
+
+    @Test
+    void primeroLasDeMenorDemanda() {
+        // Aprobar la grande deja fuera a las tres chicas: se prefieren las chicas
+        assertArrayEquals(new boolean[] {false, true, true, true},
+                decidir(4, 0, AperturaSemestre.Objetivo.APROBADAS,
+                        solicitud("A", 4, 0), solicitud("B", 1, 0), solicitud("C", 1, 0), solicitud("D", 2, 0)));
+    }
+
+    @Test
+    void aIgualDemandaGanaElOrdenDeLlegada() {
+        assertArrayEquals(new boolean[] {true, true, false},
+                decidir(2, 0, AperturaSemestre.Objetivo.APROBADAS,
+                        solicitud("A", 1, 0), solicitud("B", 1, 0), solicitud("C", 1, 0)));
+        assertArrayEquals(new boolean[] {true, false},
+                decidir(1, 1, AperturaSemestre.Objetivo.APROBADAS, solicitud("A", 1, 1), solicitud("B", 1, 1)));
+    }
+
+    @Test
+    void equitativoRepartePorTurnos() {
+        // A llega primero con tres pedidos, B con uno: con 3 salones, B no se queda afuera
+        assertArrayEquals(new boolean[] {true, true, false, true},
+                decidir(3, 0, AperturaSemestre.Objetivo.EQUITATIVO,
+                        solicitud("A", 1, 0), solicitud("A", 1, 0), solicitud("A", 1, 0), solicitud("B", 1, 0)));
+        // Por orden de llegada A se llevaría todo
+        assertArrayEquals(new boolean[] {true, true, true, false},
+                decidir(3, 0, AperturaSemestre.Objetivo.APROBADAS,
+                        solicitud("A", 1, 0), solicitud("A", 1, 0), solicitud("A", 1, 0), solicitud("B", 1, 0)));
+    }
+
+    @Test
+    void sinInventarioNoSeApruebaNada() {
+        assertArrayEquals(new boolean[] {false, false},
+                decidir(0, 0, AperturaSemestre.Objetivo.APROBADAS, solicitud("A", 1, 0), solicitud("B", 0, 1)));
+        assertEquals(0, decidir(3, 3, AperturaSemestre.Objetivo.APROBADAS).length);
+    }
+
+    @Test
+    void loAprobadoSiempreCabe() {
+        Random azar = new Random(42);
+        for (int ronda = 0; ronda < 200; ronda++) {
+            int salones = azar.nextInt(40);
+            int laboratorios = azar.nextInt(15);
+            List<Solicitud> solicitudes = new ArrayList<>();
+            for (int i = 0, n = 1 + azar.nextInt(30); i < n; i++) {
+                solicitudes.add(solicitud("P" + azar.nextInt(5), azar.nextInt(6), azar.nextInt(4)));
+            }
+            for (AperturaSemestre.Objetivo objetivo : AperturaSemestre.Objetivo.values()) {
+                boolean[] aprobada = AperturaSemestre.decidir(solicitudes, salones, laboratorios, objetivo);
+                long usadosSalones = 0;
+                long usadosTotal = 0;
+                for (int i = 0; i < aprobada.length; i++) {
+                    if (aprobada[i]) {
+                        usadosSalones += solicitudes.get(i).cantSalones;
+                        usadosTotal += solicitudes.get(i).cantSalones + solicitudes.get(i).cantLabs;
+                    }
+                }
+                assertTrue(usadosSalones <= salones && usadosTotal <= salones + laboratorios,
+                        "ronda " + ronda + " " + objetivo + ": no cabe lo aprobado");
+            }
+        }
+    }
+
+    @Test
+    void unPlazoAntesDelCorteSeRespondeEnVezDeRetenerse() {
+        LocalDateTime corte = LocalDateTime.now().plusHours(1).truncatedTo(ChronoUnit.MINUTES);
+        long corteMs = corte.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        System.setProperty("apertura.semestres", "2025-10");
+        System.setProperty("apertura.corte", corte.toString());
+        AperturaSemestre apertura;
+        try {
+            apertura = new AperturaSemestre(null, null, null, null, null, null, null);
+            apertura.iniciar();
+        } finally {
+            System.clearProperty("apertura.semestres");
+            System.clearProperty("apertura.corte");
+        }
+
+        List<String> respuestas = new ArrayList<>();
+        // Sin plazo, o con uno posterior al corte: se retiene sin responder
+        assertTrue(apertura.retener(solicitud("A", 1, 0), 0, respuestas::add));
+        assertTrue(apertura.retener(solicitud("B", 1, 0), corteMs + 1, respuestas::add));
+        assertTrue(respuestas.isEmpty());
+        // Vence antes del corte: se responde ya, no se acepta para descartarla después
+        assertTrue(apertura.retener(solicitud("C", 1, 0), System.currentTimeMillis() + 30_000, respuestas::add));
+        assertEquals(1, respuestas.size());
+        assertTrue(respuestas.get(0).startsWith("id,Error: Solicitud retenida hasta " + corte), respuestas.get(0));
+        // Otro semestre no está en apertura
+        Solicitud otra = new Solicitud("id", "2026-10", "Ingenieria", "D", 1, 0, 0L);
+        assertFalse(apertura.retener(otra, System.currentTimeMillis() + 30_000, respuestas::add));
+    }
+}
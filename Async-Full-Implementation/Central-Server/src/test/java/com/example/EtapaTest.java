@@ -0,0 +1,72 @@
+package com.example;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class EtapaTest {
+
+    private final BlockingQueue<String> respuestas = new LinkedBlockingQueue<>();
+
+    private String respuesta() throws InterruptedException {
+        return respuestas.poll(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void unManejadorQueFallaIgualResponde() throws InterruptedException {
+        Etapa<String> etapa = Etapa.<String>de("prueba-falla", 1, 10, valor -> {
+            if (valor.startsWith("falla")) {
+                throw new IllegalStateException("prueba");
+            }
+            respuestas.add(valor + ",Resultado: Aprobada");
+        }).alFallar((valor, e) -> respuestas.add(valor + ",Error: " + e.getMessage()));
+
+        etapa.enviar("falla-1");
+        assertEquals("falla-1,Error: prueba", respuesta());
+        // El hilo sigue vivo para lo que viene después
+        etapa.enviar("2");
+        assertEquals("2,Resultado: Aprobada", respuesta());
+    }
+
+    @Test
+    void unLoteQueFallaRespondeATodos() throws InterruptedException {
+        Etapa<String> etapa = Etapa.<String>porLotes("prueba-lote-falla", 1, 10, 3, lote -> {
+            throw new IllegalStateException("prueba");
+        }).alFallar((valor, e) -> respuestas.add(valor));
+
+        Set<String> enviados = Set.of("a", "b", "c", "d");
+        enviados.forEach(etapa::enviar);
+        Set<String> respondidos = new HashSet<>();
+        for (int i = 0; i < enviados.size(); i++) {
+            respondidos.add(respuesta());
+        }
+        assertEquals(enviados, respondidos);
+        assertNull(respuestas.poll(100, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void unErrorAlFallarNoDetieneAlResto() throws InterruptedException {
+        Etapa<String> etapa = Etapa.<String>porLotes("prueba-alfallar-falla", 1, 10, 2, lote -> {
+            throw new IllegalStateException("prueba");
+        }).alFallar((valor, e) -> {
+            respuestas.add(valor);
+            if ("x".equals(valor)) {
+                throw new IllegalStateException("prueba al fallar");
+            }
+        });
+
+        List.of("x", "y").forEach(etapa::enviar);
+        Set<String> respondidos = new HashSet<>();
+        respondidos.add(respuesta());
+        respondidos.add(respuesta());
+        assertEquals(Set.of("x", "y"), respondidos);
+    }
+}
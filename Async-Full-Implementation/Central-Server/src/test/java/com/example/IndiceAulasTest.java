@@ -0,0 +1,142 @@
+package com.example;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IndiceAulasTest {
+
+    private static final String SEMESTRE = "2025-10";
+    private static final IndiceAulas.Requisitos PROYECTOR_Y_PC_EN_B =
+            IndiceAulas.Requisitos.leer("capacidad=40;edificio=B;equipo=proyector+pc");
+
+    private final IndiceAulas indice = new IndiceAulas();
+
+    @BeforeEach
+    void cargar() {
+        recargar();
+    }
+
+    /** Lo que devolvería la base de datos: siempre las mismas aulas, la 5 ocupada. */
+    private void recargar() {
+        List<IndiceAulas.Aula> salones = new ArrayList<>(List.of(
+                new IndiceAulas.Aula(1, 60, "A", "proyector", true),
+                new IndiceAulas.Aula(2, 30, "B", "proyector+pc", true),
+                new IndiceAulas.Aula(3, 45, "B", "pc+proyector", true),
+                new IndiceAulas.Aula(4, 45, "B", "pc", true),
+                new IndiceAulas.Aula(5, 100, "B", "proyector+pc", false),
+                new IndiceAulas.Aula(6, 80, "B", "proyector+pc", true)));
+        indice.cargar(Map.of(SEMESTRE + ",Salon", salones));
+    }
+
+    private int contar(String requisitos) {
+        return indice.contar(SEMESTRE, "Salon", IndiceAulas.Requisitos.leer(requisitos));
+    }
+
+    @Test
+    void reservaLaMasChicaQueSirve() {
+        assertEquals(2, indice.contar(SEMESTRE, "Salon", PROYECTOR_Y_PC_EN_B));
+        // La 3 (45) antes que la 6 (80); la 2 tiene todo menos capacidad y la 5 está ocupada
+        assertEquals(List.of(3), indice.reservar(SEMESTRE, "Salon", 1, PROYECTOR_Y_PC_EN_B));
+        assertEquals(List.of(6), indice.reservar(SEMESTRE, "Salon", 1, PROYECTOR_Y_PC_EN_B));
+        assertEquals(0, indice.contar(SEMESTRE, "Salon", PROYECTOR_Y_PC_EN_B));
+    }
+
+    @Test
+    void sinRequisitosTambienEmpiezaPorLasChicas() {
+        assertEquals(5, contar(""));
+        // A igual capacidad, por id
+        assertEquals(List.of(2, 3, 4), indice.reservar(SEMESTRE, "Salon", 3, IndiceAulas.Requisitos.NINGUNO));
+        assertEquals(2, contar(""));
+    }
+
+    @Test
+    void filtraPorEdificioYEquipamiento() {
+        assertEquals(1, contar("edificio=A"));
+        assertEquals(4, contar("edificio=B"));
+        assertEquals(4, contar("equipo=pc"));
+        // Cada etiqueta por separado: el orden en que se piden o se guardan no importa
+        assertEquals(3, contar("equipo=pc+proyector"));
+        assertEquals(3, contar("equipo=proyector+pc"));
+        assertEquals(2, contar("capacidad=60"));
+        assertEquals(1, contar("capacidad=60;edificio=B"));
+    }
+
+    @Test
+    void loQueNingunaAulaTieneNoDaCandidatas() {
+        assertEquals(0, contar("edificio=C"));
+        assertEquals(0, contar("equipo=tiza"));
+        assertEquals(0, contar("equipo=pc+tiza"));
+        assertEquals(0, contar("capacidad=101"));
+        assertEquals(0, indice.contar(SEMESTRE, "Laboratorio", IndiceAulas.Requisitos.NINGUNO));
+        assertEquals(0, indice.contar("2026-10", "Salon", IndiceAulas.Requisitos.NINGUNO));
+        assertTrue(indice.reservar(SEMESTRE, "Salon", 1, IndiceAulas.Requisitos.leer("edificio=C")).isEmpty());
+    }
+
+    @Test
+    void unaReservaCortaDevuelveSoloLasQueHay() {
+        // Pide 3 y solo 2 cumplen: quien reserva tiene que ver que no alcanzó
+        List<Integer> reservadas = indice.reservar(SEMESTRE, "Salon", 3, PROYECTOR_Y_PC_EN_B);
+        assertEquals(List.of(3, 6), reservadas);
+        assertEquals(0, indice.contar(SEMESTRE, "Salon", PROYECTOR_Y_PC_EN_B));
+        // Devolverlas las deja otra vez disponibles
+        indice.liberar(reservadas);
+        indice.confirmar(reservadas);
+        assertEquals(2, indice.contar(SEMESTRE, "Salon", PROYECTOR_Y_PC_EN_B));
+    }
+
+    @Test
+    void unaReservaSinConfirmarSobreviveALaRecarga() {
+        assertEquals(List.of(3), indice.reservar(SEMESTRE, "Salon", 1, PROYECTOR_Y_PC_EN_B));
+        // La base de datos todavía la ve libre: el UPDATE no terminó
+        recargar();
+        assertEquals(1, indice.contar(SEMESTRE, "Salon", PROYECTOR_Y_PC_EN_B));
+        assertEquals(List.of(6), indice.reservar(SEMESTRE, "Salon", 1, PROYECTOR_Y_PC_EN_B));
+        // Confirmada, manda lo que diga la base de datos
+        indice.confirmar(List.of(3, 6));
+        recargar();
+        assertEquals(2, indice.contar(SEMESTRE, "Salon", PROYECTOR_Y_PC_EN_B));
+    }
+
+    @Test
+    void ocuparYLiberar() {
+        indice.ocupar(List.of(6));
+        assertEquals(1, indice.contar(SEMESTRE, "Salon", PROYECTOR_Y_PC_EN_B));
+        indice.liberar(List.of(6, 5, 99));
+        assertEquals(3, indice.contar(SEMESTRE, "Salon", PROYECTOR_Y_PC_EN_B));
+    }
+
+    @Test
+    void leerRequisitos() {
+        assertSame(IndiceAulas.Requisitos.NINGUNO, IndiceAulas.Requisitos.leer(null));
+        assertSame(IndiceAulas.Requisitos.NINGUNO, IndiceAulas.Requisitos.leer(" "));
+        assertTrue(IndiceAulas.Requisitos.leer("edificio=;equipo=").vacios());
+
+        IndiceAulas.Requisitos requisitos =
+                IndiceAulas.Requisitos.leer(" capacidad = 40;edificio=B;equipo=proyector+pc");
+        assertEquals(40, requisitos.capacidad);
+        assertEquals("B", requisitos.edificio);
+        assertArrayEquals(new String[] {"proyector", "pc"}, requisitos.equipamiento);
+
+        requisitos = IndiceAulas.Requisitos.leer("equipo=pc");
+        assertEquals(0, requisitos.capacidad);
+        assertNull(requisitos.edificio);
+    }
+
+    @Test
+    void requisitosMalFormados() {
+        assertThrows(IllegalArgumentException.class, () -> IndiceAulas.Requisitos.leer("capacidad"));
+        assertThrows(IllegalArgumentException.class, () -> IndiceAulas.Requisitos.leer("capacidad=muchas"));
+        assertThrows(IllegalArgumentException.class, () -> IndiceAulas.Requisitos.leer("color=rojo"));
+    }
+}
@@ -0,0 +1,36 @@
+package com.example;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ListaEsperaTest {
+
+    private static Solicitud solicitud(int salones, int laboratorios) {
+        return new Solicitud("id", "2025-10", "Ingenieria", "Sistemas", salones, laboratorios, 0L);
+    }
+
+    @Test
+    void siCabeDescuentaLoQueUsa() {
+        int[] libres = {5, 2};
+        assertTrue(ListaEspera.cabe(solicitud(2, 1), libres));
+        assertArrayEquals(new int[] {3, 1}, libres);
+    }
+
+    @Test
+    void losLaboratoriosQueFaltanSeCubrenConSalones() {
+        int[] libres = {5, 1};
+        assertTrue(ListaEspera.cabe(solicitud(1, 3), libres));
+        assertArrayEquals(new int[] {2, 0}, libres);
+    }
+
+    @Test
+    void siNoCabeNoDescuentaNada() {
+        int[] libres = {2, 1};
+        assertFalse(ListaEspera.cabe(solicitud(1, 3), libres));
+        assertFalse(ListaEspera.cabe(solicitud(3, 0), libres));
+        assertArrayEquals(new int[] {2, 1}, libres);
+    }
+}
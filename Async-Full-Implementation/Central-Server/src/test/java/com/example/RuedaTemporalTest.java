@@ -0,0 +1,147 @@
+package com.example;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RuedaTemporalTest {
+
+    private static final long TICK_NANOS = 1_000_000L;   // tick de 1 ms
+
+    private final AtomicLong reloj = new AtomicLong();
+    private final List<String> vencidos = new ArrayList<>();
+    private RuedaTemporal<String> rueda;
+
+    @BeforeEach
+    void crear() {
+        rueda = new RuedaTemporal<>(1, vencidos::add, reloj::get);
+    }
+
+    /** Lleva el reloj hasta el tick dado y procesa la rueda. */
+    private void irA(long tick) {
+        reloj.set(tick * TICK_NANOS);
+        rueda.avanzar();
+    }
+
+    /** Vence justo en su tick: ni uno antes, aunque haya bajado de nivel en cascada. */
+    private void venceEn(String valor, long tick) {
+        irA(tick - 1);
+        assertFalse(vencidos.contains(valor), valor + " venció antes del tick " + tick);
+        irA(tick);
+        assertTrue(vencidos.contains(valor), valor + " no venció en el tick " + tick);
+    }
+
+    @Test
+    void venceEnElPrimerNivel() {
+        rueda.programar("a", 10);
+        rueda.avanzar();
+        venceEn("a", 10);
+        assertEquals(0, rueda.pendientes());
+    }
+
+    @Test
+    void venceTrasBajarDesdeCadaNivel() {
+        long nivel1 = 64 + 5;
+        long nivel2 = 64 * 64 + 7;
+        long nivel3 = 64L * 64 * 64 + 11;
+        rueda.programar("nivel1", nivel1);
+        rueda.programar("nivel2", nivel2);
+        rueda.programar("nivel3", nivel3);
+        rueda.avanzar();
+
+        venceEn("nivel1", nivel1);
+        venceEn("nivel2", nivel2);
+        venceEn("nivel3", nivel3);
+        assertEquals(List.of("nivel1", "nivel2", "nivel3"), vencidos);
+        assertEquals(0, rueda.pendientes());
+    }
+
+    @Test
+    void venceEnElLimiteExactoDeUnaVuelta() {
+        rueda.programar("vuelta", 64);
+        rueda.programar("dosVueltas", 128);
+        rueda.avanzar();
+        venceEn("vuelta", 64);
+        venceEn("dosVueltas", 128);
+    }
+
+    @Test
+    void programadoTarde() {
+        // Se programa cuando la rueda ya avanzó: el vencimiento se cuenta desde ese momento
+        irA(1000);
+        rueda.programar("tarde", 100);
+        rueda.avanzar();
+        venceEn("tarde", 1100);
+    }
+
+    @Test
+    void masAllaDelAlcanceSeReubica() {
+        long alcance = 1L << 24;   // 4 niveles de 64 ranuras
+        rueda.programar("lejos", alcance + 10);
+        rueda.avanzar();
+        venceEn("lejos", alcance + 10);
+    }
+
+    @Test
+    void cancelarAntesDeUbicar() {
+        RuedaTemporal.Temporizador<String> cancelado = rueda.programar("cancelado", 5);
+        rueda.programar("vigente", 5);
+        cancelado.cancelar();
+        rueda.avanzar();
+        irA(10);
+        assertEquals(List.of("vigente"), vencidos);
+        assertEquals(0, rueda.pendientes());
+    }
+
+    @Test
+    void cancelarEnUnNivelSuperior() {
+        long vence = 64 * 64 + 3;
+        RuedaTemporal.Temporizador<String> cancelado = rueda.programar("cancelado", vence);
+        rueda.programar("vigente", vence);
+        rueda.avanzar();
+        // Ya está en el nivel 2; se cancela antes de que baje en cascada
+        irA(100);
+        cancelado.cancelar();
+        irA(vence + 1);
+        assertEquals(List.of("vigente"), vencidos);
+        assertTrue(cancelado.cancelado());
+        assertEquals(0, rueda.pendientes());
+    }
+
+    @Test
+    void cancelarDespuesDeLaCascada() {
+        long vence = 64 * 64 + 40;
+        RuedaTemporal.Temporizador<String> cancelado = rueda.programar("cancelado", vence);
+        rueda.avanzar();
+        // Pasada la vuelta del nivel 1 ya bajó a un nivel inferior
+        irA(64 * 64 + 1);
+        cancelado.cancelar();
+        irA(vence + 64);
+        assertTrue(vencidos.isEmpty());
+        assertEquals(0, rueda.pendientes());
+    }
+
+    @Test
+    void unErrorAlVencerNoDetieneLosDemas() {
+        List<String> vistos = new ArrayList<>();
+        rueda = new RuedaTemporal<>(1, valor -> {
+            vistos.add(valor);
+            if ("falla".equals(valor)) {
+                throw new IllegalStateException("prueba");
+            }
+        }, reloj::get);
+        rueda.programar("falla", 3);
+        rueda.programar("sigue", 3);
+        rueda.avanzar();
+        irA(3);
+        assertEquals(2, vistos.size());
+        assertEquals(0, rueda.pendientes());
+    }
+}
@@ -0,0 +1,94 @@
+package com.departmentschool;
+
+import java.util.Arrays;
+
+/**
+ * Solicitudes cubiertas (hedged requests): si una solicitud sigue sin respuesta pasado el
+ * percentil -Ddepartamento.cobertura.percentil (0.95) de las latencias recientes, se envía una
+ * copia con el mismo requestId por otro HealthCheckManager y vale la primera respuesta. El
+ * servidor reconoce el requestId, así que la copia nunca asigna aulas dos veces.
+ *
+ * Las copias salen de un presupuesto: cada solicitud nueva suma
+ * -Ddepartamento.cobertura.presupuesto (0.05) fichas y cada copia gasta una, así que a lo sumo
+ * ese porcentaje del tráfico se duplica, también cuando todo se pone lento a la vez. Solo la
+ * usa el hilo del poller. Se activa con -Ddepartamento.cobertura=true.
+ */
+final class Cobertura {
+
+    private static final int MUESTRAS = 1024;
+    private static final int MUESTRAS_MINIMAS = 100;
+    private static final long RECALCULO_NS = 1_000_000_000L;
+    private static final double FICHAS_MAXIMAS = 10;
+
+    private final double percentil;
+    private final double presupuesto;
+    private final long[] latencias = new long[MUESTRAS];
+    private int observadas;
+    private long esperaNs = Long.MAX_VALUE;
+    private long ultimoCalculo;
+    private double fichas;
+
+    private final Metricas.Contador copias = Metricas.contador("departamento_coberturas_total",
+            "Copias enviadas por otro HealthCheckManager a solicitudes lentas");
+    private final Metricas.Contador ganadoras = Metricas.contador("departamento_coberturas_ganadoras_total",
+            "Copias cuya respuesta llegó antes que la de la solicitud original");
+
+    /** La cobertura configurada, o null si está desactivada. */
+    static Cobertura desdePropiedades() {
+        if (!Boolean.getBoolean("departamento.cobertura")) {
+            return null;
+        }
+        return new Cobertura(Double.parseDouble(System.getProperty("departamento.cobertura.percentil", "0.95")),
+                Double.parseDouble(System.getProperty("departamento.cobertura.presupuesto", "0.05")));
+    }
+
+    private Cobertura(double percentil, double presupuesto) {
+        this.percentil = percentil;
+        this.presupuesto = presupuesto;
+        Metricas.indicador("departamento_cobertura_espera_segundos",
+                "Espera antes de cubrir una solicitud (percentil de las latencias recientes)",
+                () -> esperaNs == Long.MAX_VALUE ? Double.NaN : esperaNs / 1e9);
+        Metricas.indicador("departamento_cobertura_presupuesto", "Fracción máxima de solicitudes que se cubren",
+                () -> presupuesto);
+    }
+
+    /** Latencia de una respuesta (la primera de cada solicitud). */
+    void observar(long latenciaNs) {
+        latencias[observadas % MUESTRAS] = latenciaNs;
+        observadas++;
+    }
+
+    /** Una solicitud nueva: suma su parte del presupuesto. */
+    void acreditar() {
+        fichas = Math.min(FICHAS_MAXIMAS, fichas + presupuesto);
+    }
+
+    /**
+     * Cuánto esperar antes de cubrir una solicitud; Long.MAX_VALUE mientras no haya muestras
+     * suficientes. El percentil se recalcula a lo sumo una vez por segundo.
+     */
+    long esperaNs() {
+        long ahora = System.nanoTime();
+        if (observadas >= MUESTRAS_MINIMAS && ahora - ultimoCalculo > RECALCULO_NS) {
+            long[] recientes = Arrays.copyOf(latencias, Math.min(observadas, MUESTRAS));
+            Arrays.sort(recientes);
+            esperaNs = recientes[(int) Math.min(recientes.length - 1, Math.floor(percentil * recientes.length))];
+            ultimoCalculo = ahora;
+        }
+        return esperaNs;
+    }
+
+    boolean hayFichas() {
+        return fichas >= 1;
+    }
+
+    /** Se envió una copia: gasta una ficha. */
+    void cubrir() {
+        fichas--;
+        copias.inc();
+    }
+
+    void ganadora() {
+        ganadoras.inc();
+    }
+}
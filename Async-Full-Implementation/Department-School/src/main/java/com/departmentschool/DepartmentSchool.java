@@ -5,10 +5,63 @@ import org.zeromq.ZContext;
 import org.zeromq.ZMQ;
 import org.zeromq.ZMQ.Poller;
 
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.UUID;
 
 public class DepartmentSchool {
 
+    private static final int PUERTO_METRICAS = Integer.getInteger("metricas.puerto", 9101);
+    // Solicitudes sin respuesta después de este tiempo se descartan del mapa de latencias
+    private static final long EXPIRACION_EN_VUELO_NS = 60_000_000_000L;
+    // HealthCheckManager del par activo-activo; las solicitudes nuevas se reparten entre los que estén conectados
+    private static final String[] HEALTHCHECKS =
+            System.getProperty("healthcheck.direcciones", "tcp://localhost:5555").split(",");
+    // Veces que se reenvía una solicitud cuando se cae el HealthCheckManager que la llevaba
+    private static final int REINTENTOS = Integer.getInteger("departamento.reintentos", 2);
+    private static final long RETARDO_REENVIO_NS = 250_000_000L;
+    // Plazo absoluto (epoch en ms) que AcademicProgram agrega al final de la solicitud y que sigue hasta el servidor
+    private static final String CAMPO_PLAZO = ",plazo=";
+    // Prefijo de las asignaciones asíncronas: se aceptan al instante y el resultado sale por el PUB del servidor
+    private static final String ASINCRONA = "ASINC,";
+
+    private static final Metricas.Contador aprobadas = Metricas.contador("departamento_solicitudes_total",
+            "Respuestas recibidas del servidor por resultado", "resultado", "Aprobada");
+    private static final Metricas.Contador denegadas = Metricas.contador("departamento_solicitudes_total",
+            "Respuestas recibidas del servidor por resultado", "resultado", "Denegada");
+    private static final Metricas.Contador errores = Metricas.contador("departamento_solicitudes_total",
+            "Respuestas recibidas del servidor por resultado", "resultado", "Error");
+    private static final Metricas.Contador otras = Metricas.contador("departamento_solicitudes_total",
+            "Respuestas recibidas del servidor por resultado", "resultado", "Otro");
+    private static final Metricas.Contador enEspera = Metricas.contador("departamento_solicitudes_total",
+            "Respuestas recibidas del servidor por resultado", "resultado", "EnEspera");
+    private static final Metricas.Contador vencidas = Metricas.contador("departamento_solicitudes_total",
+            "Respuestas recibidas del servidor por resultado", "resultado", "Timeout");
+    private static final Metricas.Contador vencidasEntrada = Metricas.contador("departamento_plazo_vencido_total",
+            "Solicitudes descartadas por plazo vencido", "salto", "entrada");
+    private static final Metricas.Contador vencidasReenvio = Metricas.contador("departamento_plazo_vencido_total",
+            "Solicitudes descartadas por plazo vencido", "salto", "reenvio");
+    private static final Metricas.Contador asincronas = Metricas.contador("departamento_asincronas_total",
+            "Asignaciones aceptadas en modo asíncrono, cuyo resultado se publica por tema");
+    private static final Metricas.Contador formatoInvalido = Metricas.contador("departamento_formato_invalido_total",
+            "Solicitudes de AcademicProgram rechazadas por formato");
+    private static final Metricas.Contador reenvios = Metricas.contador("departamento_reenvios_total",
+            "Solicitudes reenviadas al perder la conexión con un HealthCheckManager");
+    private static final Metricas.Contador duplicadas = Metricas.contador("departamento_respuestas_duplicadas_total",
+            "Segundas respuestas de solicitudes reenviadas o cubiertas, descartadas");
+    private static final Metricas.Histograma latencia = Metricas.histograma("departamento_solicitud_duracion_segundos",
+            "Tiempo entre el envío al HealthCheckManager y la respuesta", Metricas.LATENCIA_SEGUNDOS);
+
+    private static final LogAsincrono.Tipo logEnvio = LogAsincrono.tipo("departamento.envio",
+            LogAsincrono.Nivel.INFO, 1, 50);
+    private static final LogAsincrono.Tipo logRespuesta = LogAsincrono.tipo("departamento.respuesta",
+            LogAsincrono.Nivel.INFO, 1, 50);
+    private static final LogAsincrono.Tipo logFormato = LogAsincrono.tipo("departamento.formato",
+            LogAsincrono.Nivel.WARN, 1, 10);
+
     public static void main(String[] args) {
         if (args.length != 2) {
             System.out.println("Uso: java DepartmentSchool <FacultyName> <Semester>");
@@ -18,73 +71,405 @@ public class DepartmentSchool {
         String facultyName = args[0];
         String semester = args[1];
         String listenPort = "5554";
-        String serverAddress = "tcp://localhost:5555"; // Broker o Servidor directo
+
+        // requestId -> solicitud sin respuesta (para la latencia y para reenviarla); solo lo toca el hilo del poller
+        Map<String, Pendiente> enVuelo = new HashMap<>();
+        // Solicitudes reenviadas que ya tuvieron respuesta: la segunda que llegue se descarta
+        Map<String, Boolean> respondidas = new LinkedHashMap<>(16, 0.75f, false) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> mayor) {
+                return size() > 10_000;
+            }
+        };
+        ArrayDeque<Pendiente> porReenviar = new ArrayDeque<>();
+        Metricas.indicador("departamento_mensajes_en_vuelo", "Solicitudes enviadas que esperan respuesta",
+                enVuelo::size);
+        Metricas.exponer(PUERTO_METRICAS);
 
         try (ZContext context = new ZContext()) {
             ZMQ.Socket frontend = context.createSocket(SocketType.ROUTER);
             frontend.bind("tcp://*:" + listenPort);
             System.out.println("📥 ROUTER escuchando a AcademicPrograms en puerto " + listenPort);
 
-            ZMQ.Socket backend = context.createSocket(SocketType.DEALER);
-            backend.connect(serverAddress);
-            System.out.println("🔁 DEALER conectado al servidor en " + serverAddress);
+            RutasHealthCheck rutas = new RutasHealthCheck(context, HEALTHCHECKS);
+            for (int i = 0; i < rutas.cantidad(); i++) {
+                System.out.println("🔁 DEALER conectado al HealthCheckManager en " + rutas.direccion(i));
+            }
+            Cobertura cobertura = rutas.cantidad() > 1 ? Cobertura.desdePropiedades() : null;
+            // Solicitudes en orden de envío, candidatas a cubrir cuando pase la espera
+            ArrayDeque<Pendiente> porCubrir = new ArrayDeque<>();
 
-            Poller poller = context.createPoller(2);
+            Poller poller = context.createPoller(1 + 2 * rutas.cantidad());
             poller.register(frontend, Poller.POLLIN);
-            poller.register(backend, Poller.POLLIN);
+            int primerDealer = rutas.registrar(poller);
+            int primerMonitor = primerDealer + rutas.cantidad();
+
+            long ultimaLimpieza = System.nanoTime();
+            // Por ruta: instante en que se reenvía lo que llevaba, 0 si no se perdió
+            long[] reenviarEn = new long[rutas.cantidad()];
 
             while (!Thread.currentThread().isInterrupted()) {
-                poller.poll();
-		byte[] identity = frontend.recv(0);
+                poller.poll(espera(porReenviar, reenviarEn, cobertura, porCubrir));
+
+                for (int ruta = 0; ruta < rutas.cantidad(); ruta++) {
+                    if (poller.pollin(primerMonitor + ruta)) {
+                        // Se cayó un HealthCheckManager: lo que llevaba se perdió con él. El aviso llega
+                        // antes de que el DEALER suelte esa conexión, así que el reenvío espera un poco
+                        // para no volver a meter las solicitudes en ella.
+                        ZMQ.Event.recv(rutas.monitor(ruta));
+                        System.out.println("⚠️ Conexión perdida con " + rutas.direccion(ruta)
+                                + ", se reenviarán sus solicitudes pendientes");
+                        reenviarEn[ruta] = System.nanoTime() + RETARDO_REENVIO_NS;
+                    }
+                    if (reenviarEn[ruta] != 0 && System.nanoTime() - reenviarEn[ruta] >= 0) {
+                        // Se reenvía lo que salió por esa ruta; el servidor reconoce el requestId y
+                        // no procesa dos veces la misma solicitud
+                        for (Pendiente pendiente : enVuelo.values()) {
+                            if (pendiente.ruta == ruta && pendiente.intentos <= REINTENTOS && !pendiente.encolada) {
+                                pendiente.encolada = true;
+                                porReenviar.add(pendiente);
+                            }
+                        }
+                        reenviarEn[ruta] = 0;
+                    }
+                }
+                // Sin ningún HealthCheckManager conectado el envío falla; se reintenta en la próxima vuelta.
+                // Lo que venció mientras esperaba ya no se reenvía: su AcademicProgram dejó de esperar.
+                while (!porReenviar.isEmpty()) {
+                    Pendiente pendiente = porReenviar.peek();
+                    if (pendiente.vencida()) {
+                        porReenviar.poll();
+                        enVuelo.remove(pendiente.requestId);
+                        vencidasReenvio.inc();
+                        continue;
+                    }
+                    int ruta = rutas.enviar(pendiente.identity, pendiente.mensaje, -1);
+                    if (ruta < 0) {
+                        break;
+                    }
+                    porReenviar.poll();
+                    pendiente.encolada = false;
+                    pendiente.ruta = ruta;
+                    if (++pendiente.intentos > 1) {
+                        reenvios.inc();
+                    }
+                }
+
+                if (cobertura != null) {
+                    cubrir(rutas, cobertura, porCubrir, enVuelo);
+                }
+
                 if (poller.pollin(0)) {
-                    
+                    EventosJFR.RecepcionZMQ evRecepcion = new EventosJFR.RecepcionZMQ();
+                    evRecepcion.begin();
+                    byte[] identity = frontend.recv(0);
                     frontend.recv(0); // frame vacío
                     String request = frontend.recvStr();
+                    long plazo = 0;
+                    int campoPlazo = request.lastIndexOf(CAMPO_PLAZO);
+                    if (campoPlazo >= 0) {
+                        try {
+                            plazo = Long.parseLong(request.substring(campoPlazo + CAMPO_PLAZO.length()));
+                        } catch (NumberFormatException e) {
+                            plazo = -1;
+                        }
+                        request = request.substring(0, campoPlazo);
+                    }
+                    if (plazo > 0 && System.currentTimeMillis() >= plazo) {
+                        vencidasEntrada.inc();
+                        frontend.send(identity, ZMQ.SNDMORE);
+                        frontend.send("", ZMQ.SNDMORE);
+                        frontend.send("Timeout: plazo vencido en departamento");
+                        continue;
+                    }
 
-                    // Esperado: programa,salones,laboratorios
-                    String[] parts = request.split(",");
-                    if (parts.length != 4) {
-                        // Suponiendo que academicSocket esté definida
-                        // Si no, este código dará error en tiempo de compilación
-                        // academicSocket.send("ERROR,Formato inválido desde AcademicProgram");
-                        System.out.println("Formato inválido");
-                        return;
+                    boolean asincrona = request.startsWith(ASINCRONA);
+                    if (asincrona) {
+                        request = request.substring(ASINCRONA.length());
                     }
 
                     // Generar requestId único y construir mensaje completo
                     String requestId = UUID.randomUUID().toString();
-                    String enrichedRequest = String.join(",",
-                            requestId,           // ID único para correlación
-                            parts[1],           // semestre (de AcademicProgram)
-                            facultyName,        // facultad (de este DepartmentSchool)
-                            parts[0],           // programa
-                            parts[2],           // número de salones
-                            parts[3]            // número de laboratorios
-                    );
-
-                    backend.send(identity, ZMQ.SNDMORE);
-                    //backend.send("", ZMQ.SNDMORE);
-                    backend.send(enrichedRequest);
-                    System.out.println("📤 Enviada al servidor: " + enrichedRequest);
-
-                } else {
+                    String[] parts = request.split(",");
+                    // Solo una asignación puede ser asíncrona: es lo único que publica el servidor
+                    boolean asignacion = parts.length >= 4 && parts.length <= 6 && !"LIBERAR".equals(parts[0])
+                            && !"STATUS".equals(parts[0]);
+                    String enrichedRequest = plazo < 0 || (asincrona && !asignacion) ? null
+                            : enriquecer(requestId, facultyName, parts);
+                    if (enrichedRequest == null) {
+                        formatoInvalido.inc();
+                        frontend.send(identity, ZMQ.SNDMORE);
+                        frontend.send("", ZMQ.SNDMORE);
+                        frontend.send("Formato inválido. Se esperaban: programa,semestre,salones,laboratorios[,duracionSegundos[,requisitos]]"
+                                + " | LIBERAR,programa,semestre,salones,laboratorios | CANCELAR,programa,requestId"
+                                + " | STATUS,requestId[,requestId...] | STATS,semestre[,programa]"
+                                + ", con ,plazo=<epoch ms> opcional al final; ASINC, delante solo para asignaciones");
+                        logFormato.log("Formato inválido: {}", request);
+                        continue;
+                    }
+
+                    evRecepcion.registrar("frontend", enrichedRequest);
+
+                    // La identidad del AcademicProgram viaja como sobre para enrutar la respuesta
+                    EventosJFR.EnvioZMQ evEnvio = new EventosJFR.EnvioZMQ();
+                    evEnvio.begin();
+                    if (plazo > 0) {
+                        enrichedRequest += CAMPO_PLAZO + plazo;
+                    }
+                    Pendiente pendiente = new Pendiente(identity, requestId, enrichedRequest, plazo, asincrona);
+                    if (asincrona) {
+                        // El AcademicProgram queda libre: espera el resultado suscrito a este tema
+                        asincronas.inc();
+                        frontend.send(identity, ZMQ.SNDMORE);
+                        frontend.send("", ZMQ.SNDMORE);
+                        frontend.send(requestId + ",Aceptada," + facultyName + "/" + parts[0] + "/");
+                    }
+                    pendiente.ruta = rutas.enviar(identity, enrichedRequest, -1);
+                    if (pendiente.ruta >= 0) {
+                        pendiente.intentos = 1;
+                    } else {
+                        pendiente.encolada = true;
+                        porReenviar.add(pendiente);
+                    }
+                    evEnvio.registrar("backend", enrichedRequest);
+                    enVuelo.put(requestId, pendiente);
+                    if (cobertura != null) {
+                        cobertura.acreditar();
+                        porCubrir.add(pendiente);
+                    }
+                    logEnvio.log("📤 Enviada al servidor: {}", enrichedRequest);
+                }
+
+                for (int ruta = 0; ruta < rutas.cantidad(); ruta++) {
+                    if (!poller.pollin(primerDealer + ruta)) {
+                        continue;
+                    }
+                    ZMQ.Socket backend = rutas.dealer(ruta);
+                    EventosJFR.RecepcionZMQ evRecepcion = new EventosJFR.RecepcionZMQ();
+                    evRecepcion.begin();
+                    byte[] identity = backend.recv(0);
+                    backend.recv(0); // frame vacío
+                    String reply = backend.recvStr();
+                    evRecepcion.registrar("backend", reply);
+                    if (esDuplicada(enVuelo, respondidas, reply)) {
+                        duplicadas.inc();
+                        continue;
+                    }
+
+                    if (esAsincrona(enVuelo, reply)) {
+                        // Su AcademicProgram ya recibió "Aceptada"; el resultado le llega por el PUB del servidor
+                        registrarRespuesta(enVuelo, reply, ruta, cobertura);
+                        logRespuesta.log("📨 Resultado asíncrono: {}", reply);
+                        continue;
+                    }
+
+                    EventosJFR.EnvioZMQ evEnvio = new EventosJFR.EnvioZMQ();
+                    evEnvio.begin();
                     frontend.send(identity, ZMQ.SNDMORE);
                     frontend.send("", ZMQ.SNDMORE);
-                    frontend.send("Formato inválido. Se esperaban: programa,salones,laboratorios,semestre");
+                    frontend.send(reply);
+                    evEnvio.registrar("frontend", reply);
+                    registrarRespuesta(enVuelo, reply, ruta, cobertura);
+                    logRespuesta.log("📨 Enviada a AcademicProgram: {}", reply);
+                }
+
+                if (System.nanoTime() - ultimaLimpieza > EXPIRACION_EN_VUELO_NS) {
+                    purgarExpiradas(enVuelo);
+                    porReenviar.removeIf(pendiente -> !enVuelo.containsKey(pendiente.requestId));
+                    ultimaLimpieza = System.nanoTime();
                 }
             } // fin del while
 
-            if (poller.pollin(1)) {
-                byte[] identity = backend.recv(0);
-                backend.recv(0); // frame vacío
-                String reply = backend.recvStr();
+        } // fin del try-with-resources
+    } // fin del método main
 
-                frontend.send(identity, ZMQ.SNDMORE);
-                frontend.send("", ZMQ.SNDMORE);
-                frontend.send(reply);
-                System.out.println("📨 Enviada a AcademicProgram: " + reply);
+    /**
+     * Agrega requestId y facultad al mensaje de AcademicProgram. Formatos aceptados:
+     *   programa,semestre,salones,laboratorios[,duracionSegundos]  asignación (con concesión opcional)
+     *   programa,semestre,salones,laboratorios,duracionSegundos,requisitos
+     *                                                               ídem, con atributos de aula (duración 0 = sin concesión)
+     *   LIBERAR,programa,semestre,salones,laboratorios              devolver aulas del programa
+     *   CANCELAR,programa,requestIdOriginal                         anular una asignación previa
+     *   STATUS,requestId[,requestId...]                             qué pasó con solicitudes anteriores
+     *   STATS,semestre[,programa]                                   agregados de la facultad o del programa
+     * Una asignación con ASINC, delante (ya quitado aquí) se acepta al instante y su resultado se
+     * publica en el tema facultad/programa/.
+     * Devuelve null si el formato no es válido.
+     */
+    private static String enriquecer(String requestId, String facultyName, String[] parts) {
+        if (parts.length == 5 && "LIBERAR".equals(parts[0])) {
+            return String.join(",", requestId, "LIBERAR", parts[2], facultyName, parts[1], parts[3], parts[4]);
+        }
+        if (parts.length == 3 && "CANCELAR".equals(parts[0])) {
+            return String.join(",", requestId, "CANCELAR", parts[2], facultyName, parts[1]);
+        }
+        if (parts.length >= 2 && "STATUS".equals(parts[0])) {
+            return requestId + "," + String.join(",", parts);
+        }
+        if ((parts.length == 2 || parts.length == 3) && "STATS".equals(parts[0])) {
+            String stats = String.join(",", requestId, "STATS", parts[1], facultyName);
+            return parts.length == 3 ? stats + "," + parts[2] : stats;
+        }
+        if (parts.length == 2 && "CONSULTA".equals(parts[0])) {
+            return String.join(",", requestId, "CONSULTA", parts[1], facultyName);
+        }
+        if (parts.length >= 4 && parts.length <= 6) {
+            String enriched = String.join(",",
+                    requestId,           // ID único para correlación
+                    parts[1],           // semestre (de AcademicProgram)
+                    facultyName,        // facultad (de este DepartmentSchool)
+                    parts[0],           // programa
+                    parts[2],           // número de salones
+                    parts[3]            // número de laboratorios
+            );
+            for (int i = 4; i < parts.length; i++) {
+                enriched += "," + parts[i];   // duración y requisitos, tal cual
             }
+            return enriched;
+        }
+        return null;
+    }
 
-        } // fin del try-with-resources
-    } // fin del método main
+    /** Milisegundos hasta lo próximo que hay que hacer sin esperar tráfico (reenvío o cobertura). */
+    private static long espera(ArrayDeque<Pendiente> porReenviar, long[] reenviarEn, Cobertura cobertura,
+                               ArrayDeque<Pendiente> porCubrir) {
+        long espera = porReenviar.isEmpty() ? 1000 : 100;
+        for (long instante : reenviarEn) {
+            if (instante != 0) {
+                espera = Math.min(espera, 100);
+            }
+        }
+        Pendiente primera = porCubrir.peek();
+        if (cobertura != null && primera != null && cobertura.esperaNs() != Long.MAX_VALUE) {
+            long restante = (primera.enviado + cobertura.esperaNs() - System.nanoTime()) / 1_000_000;
+            espera = Math.min(espera, Math.max(1, restante));
+        }
+        return espera;
+    }
+
+    /**
+     * Envía por otra ruta una copia de las solicitudes que llevan más de la espera de cobertura
+     * sin respuesta, mientras alcance el presupuesto. porCubrir va en orden de envío, así que se
+     * recorre solo hasta la primera que todavía no cumple la espera.
+     */
+    private static void cubrir(RutasHealthCheck rutas, Cobertura cobertura, ArrayDeque<Pendiente> porCubrir,
+                               Map<String, Pendiente> enVuelo) {
+        long espera = cobertura.esperaNs();
+        long ahora = System.nanoTime();
+        while (!porCubrir.isEmpty()) {
+            Pendiente pendiente = porCubrir.peek();
+            if (enVuelo.get(pendiente.requestId) != pendiente) {
+                porCubrir.poll();   // ya respondida o descartada
+                continue;
+            }
+            if (ahora - pendiente.enviado < espera) {
+                return;
+            }
+            porCubrir.poll();
+            if (pendiente.ruta < 0 || pendiente.encolada || pendiente.vencida() || !cobertura.hayFichas()) {
+                continue;
+            }
+            int ruta = rutas.enviar(pendiente.identity, pendiente.mensaje, pendiente.ruta);
+            if (ruta >= 0) {
+                pendiente.ruta = ruta;
+                pendiente.rutaCobertura = ruta;
+                pendiente.intentos++;
+                cobertura.cubrir();
+            }
+        }
+    }
+
+    /**
+     * true si la respuesta es la segunda de una solicitud que salió más de una vez (reenvío o
+     * cobertura). La primera respuesta de esas se anota para reconocer la otra.
+     */
+    private static boolean esDuplicada(Map<String, Pendiente> enVuelo, Map<String, Boolean> respondidas,
+                                       String reply) {
+        int coma = reply.indexOf(',');
+        if (coma <= 0) {
+            return false;
+        }
+        String requestId = reply.substring(0, coma);
+        Pendiente pendiente = enVuelo.get(requestId);
+        if (pendiente == null) {
+            return respondidas.remove(requestId) != null;
+        }
+        if (pendiente.intentos > 1) {
+            respondidas.put(requestId, Boolean.TRUE);
+        }
+        return false;
+    }
+
+    private static boolean esAsincrona(Map<String, Pendiente> enVuelo, String reply) {
+        int coma = reply.indexOf(',');
+        Pendiente pendiente = coma > 0 ? enVuelo.get(reply.substring(0, coma)) : null;
+        return pendiente != null && pendiente.asincrona;
+    }
+
+    private static void registrarRespuesta(Map<String, Pendiente> enVuelo, String reply, int ruta,
+                                           Cobertura cobertura) {
+        int coma = reply.indexOf(',');
+        Pendiente pendiente = coma > 0 ? enVuelo.remove(reply.substring(0, coma)) : null;
+        if (pendiente != null) {
+            latencia.observarDesde(pendiente.enviado);
+            if (cobertura != null) {
+                cobertura.observar(System.nanoTime() - pendiente.enviado);
+                if (ruta == pendiente.rutaCobertura) {
+                    cobertura.ganadora();
+                }
+            }
+        }
+        if (reply.contains(",Estado: ") || reply.contains(",Estadisticas: ")) {
+            otras.inc();    // STATUS y STATS: hablan de otras solicitudes
+        } else if (reply.endsWith("Aprobada")) {
+            aprobadas.inc();
+        } else if (reply.endsWith("Denegada")) {
+            denegadas.inc();
+        } else if (reply.contains(",Resultado: EnEspera,")) {
+            enEspera.inc();
+        } else if (reply.contains(",Timeout:")) {
+            vencidas.inc();
+        } else if (reply.contains("Error")) {
+            errores.inc();
+        } else {
+            otras.inc();
+        }
+    }
+
+    private static void purgarExpiradas(Map<String, Pendiente> enVuelo) {
+        long limite = System.nanoTime() - EXPIRACION_EN_VUELO_NS;
+        Iterator<Pendiente> it = enVuelo.values().iterator();
+        while (it.hasNext()) {
+            if (it.next().enviado < limite) {
+                it.remove();
+            }
+        }
+    }
+
+    /** Una solicitud enviada al HealthCheckManager que aún no tiene respuesta. */
+    private static final class Pendiente {
+
+        final byte[] identity;
+        final String requestId;
+        final String mensaje;
+        final long plazo;   // epoch en ms; 0 = sin plazo
+        final long enviado = System.nanoTime();
+        int intentos;       // veces que salió hacia un HealthCheckManager
+        int ruta = -1;      // por dónde salió la última vez
+        int rutaCobertura = -1;   // por dónde salió la copia de cobertura, si hubo
+        final boolean asincrona;  // ya se respondió "Aceptada"; el resultado no vuelve al AcademicProgram
+        boolean encolada;   // esperando en porReenviar
+
+        Pendiente(byte[] identity, String requestId, String mensaje, long plazo, boolean asincrona) {
+            this.identity = identity;
+            this.requestId = requestId;
+            this.mensaje = mensaje;
+            this.plazo = plazo;
+            this.asincrona = asincrona;
+        }
+
+        boolean vencida() {
+            return plazo > 0 && System.currentTimeMillis() >= plazo;
+        }
+    }
 } // fin de la clase
@@ -0,0 +1,93 @@
+package com.departmentschool;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Eventos de JDK Flight Recorder para las operaciones ZMQ del DepartmentSchool.
+ *
+ * Los campos solo se llenan (y el mensaje solo se decodifica) si shouldCommit() es
+ * verdadero, así que con la grabación apagada el costo es prácticamente nulo.
+ */
+public final class EventosJFR {
+
+    private EventosJFR() {
+    }
+
+    @Category({"Distribuidos", "DepartmentSchool"})
+    @StackTrace(false)
+    public abstract static class EventoZMQ extends Event {
+
+        @Label("Socket")
+        public String socket;
+
+        @Label("Request ID")
+        public String requestId;
+
+        @Label("Facultad")
+        public String facultad;
+
+        @Label("Programa")
+        public String programa;
+
+        @Label("Salones solicitados")
+        public int cantSalones;
+
+        @Label("Laboratorios solicitados")
+        public int cantLabs;
+
+        @Label("Tamaño")
+        @DataAmount
+        public long bytes;
+
+        /**
+         * Registra un mensaje del protocolo interno: una solicitud enriquecida
+         * (requestId,semestre,facultad,programa,salones,labs) o una respuesta (requestId,...).
+         */
+        public void registrar(String socket, String mensaje) {
+            if (shouldCommit()) {
+                String[] partes = mensaje.split(",");
+                this.socket = socket;
+                requestId = partes[0];
+                if (partes.length == 6) {
+                    facultad = partes[2];
+                    programa = partes[3];
+                    cantSalones = entero(partes[4]);
+                    cantLabs = entero(partes[5]);
+                }
+                bytes = mensaje.getBytes(StandardCharsets.UTF_8).length;
+                commit();
+            }
+        }
+
+        public void registrar(String socket, byte[] mensaje) {
+            if (shouldCommit()) {
+                registrar(socket, new String(mensaje, StandardCharsets.UTF_8));
+            }
+        }
+
+        private static int entero(String valor) {
+            try {
+                return Integer.parseInt(valor.trim());
+            } catch (NumberFormatException e) {
+                return -1;
+            }
+        }
+    }
+
+    @Name("com.departmentschool.RecepcionZMQ")
+    @Label("Recepción ZMQ")
+    public static class RecepcionZMQ extends EventoZMQ {
+    }
+
+    @Name("com.departmentschool.EnvioZMQ")
+    @Label("Envío ZMQ")
+    public static class EnvioZMQ extends EventoZMQ {
+    }
+}
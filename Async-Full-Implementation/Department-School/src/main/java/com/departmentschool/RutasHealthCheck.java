@@ -0,0 +1,93 @@
+package com.departmentschool;
+
+import org.zeromq.SocketType;
+import org.zeromq.ZContext;
+import org.zeromq.ZMQ;
+import org.zeromq.ZMQ.Poller;
+
+/**
+ * Un DEALER por HealthCheckManager, para poder elegir por cuál sale cada solicitud: las
+ * nuevas se reparten en rueda entre los conectados, y una copia (reenvío o cobertura) puede
+ * pedir salir por otro distinto del que ya la lleva.
+ *
+ * Solo se encolan mensajes hacia HealthCheckManager conectados: en jeromq 0.5.3
+ * setImmediate(false) equivale a ZMQ_IMMEDIATE=1 de libzmq (el valor va invertido), así que
+ * enviar a uno caído falla en vez de quedar esperando su reconexión. Los latidos ZMTP detectan
+ * una caída en segundos aunque la conexión TCP no se cierre, y cada DEALER tiene su monitor
+ * para saber qué ruta se perdió.
+ */
+final class RutasHealthCheck {
+
+    private final String[] direcciones;
+    private final ZMQ.Socket[] dealers;
+    private final ZMQ.Socket[] monitores;
+    private int siguiente;
+
+    RutasHealthCheck(ZContext context, String[] direcciones) {
+        this.direcciones = new String[direcciones.length];
+        this.dealers = new ZMQ.Socket[direcciones.length];
+        this.monitores = new ZMQ.Socket[direcciones.length];
+        for (int i = 0; i < direcciones.length; i++) {
+            this.direcciones[i] = direcciones[i].trim();
+            dealers[i] = context.createSocket(SocketType.DEALER);
+            dealers[i].setImmediate(false);
+            dealers[i].setHeartbeatIvl(1000);
+            dealers[i].setHeartbeatTimeout(3000);
+            String monitor = "inproc://monitor-healthcheck-" + i;
+            dealers[i].monitor(monitor, ZMQ.EVENT_DISCONNECTED);
+            monitores[i] = context.createSocket(SocketType.PAIR);
+            monitores[i].connect(monitor);
+            dealers[i].connect(this.direcciones[i]);
+        }
+    }
+
+    int cantidad() {
+        return dealers.length;
+    }
+
+    String direccion(int ruta) {
+        return direcciones[ruta];
+    }
+
+    ZMQ.Socket dealer(int ruta) {
+        return dealers[ruta];
+    }
+
+    ZMQ.Socket monitor(int ruta) {
+        return monitores[ruta];
+    }
+
+    /** Registra los DEALER y luego los monitores; devuelve el índice del primer DEALER en el poller. */
+    int registrar(Poller poller) {
+        int primero = -1;
+        for (ZMQ.Socket dealer : dealers) {
+            int indice = poller.register(dealer, Poller.POLLIN);
+            if (primero < 0) {
+                primero = indice;
+            }
+        }
+        for (ZMQ.Socket monitor : monitores) {
+            poller.register(monitor, Poller.POLLIN);
+        }
+        return primero;
+    }
+
+    /**
+     * Envía la solicitud con la identidad del AcademicProgram como sobre por la siguiente ruta
+     * conectada que no sea "evitar" (-1 para aceptar cualquiera). Devuelve la ruta usada, o -1
+     * si ninguna está conectada.
+     */
+    int enviar(byte[] identity, String mensaje, int evitar) {
+        for (int k = 0; k < dealers.length; k++) {
+            int ruta = (siguiente + k) % dealers.length;
+            if (ruta == evitar || !dealers[ruta].send(identity, ZMQ.SNDMORE | ZMQ.DONTWAIT)) {
+                continue;
+            }
+            dealers[ruta].send("", ZMQ.SNDMORE);
+            dealers[ruta].send(mensaje);
+            siguiente = (ruta + 1) % dealers.length;
+            return ruta;
+        }
+        return -1;
+    }
+}
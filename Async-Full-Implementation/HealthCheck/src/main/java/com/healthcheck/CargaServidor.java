@@ -0,0 +1,62 @@
+package com.healthcheck;
+
+/**
+ * Carga que un servidor informa junto con su PONG:
+ * PONG;cola=N;conexiones=N;p99Ms=X;version=V
+ *
+ * Un PONG sin datos (servidor anterior a este formato) se toma como carga cero, y entonces
+ * el reparto queda en "menos solicitudes en curso".
+ */
+final class CargaServidor {
+
+    final int cola;          // trabajos esperando en las colas del pipeline del servidor
+    final int conexiones;    // conexiones JDBC abiertas
+    final double p99Ms;      // p99 de las solicitudes desde el PING anterior
+    final long version;      // versión del inventario en memoria; -1 si no la informó
+
+    private CargaServidor(int cola, int conexiones, double p99Ms, long version) {
+        this.cola = cola;
+        this.conexiones = conexiones;
+        this.p99Ms = p99Ms;
+        this.version = version;
+    }
+
+    /** La carga informada en la respuesta al PING, o null si la respuesta no es un PONG. */
+    static CargaServidor leer(String respuesta) {
+        if (respuesta == null || !respuesta.startsWith("PONG")) {
+            return null;
+        }
+        int cola = 0;
+        int conexiones = 0;
+        double p99Ms = 0;
+        long version = -1;
+        for (String campo : respuesta.split(";")) {
+            int igual = campo.indexOf('=');
+            if (igual < 0) {
+                continue;
+            }
+            String valor = campo.substring(igual + 1);
+            try {
+                switch (campo.substring(0, igual)) {
+                    case "cola" -> cola = Integer.parseInt(valor);
+                    case "conexiones" -> conexiones = Integer.parseInt(valor);
+                    case "p99Ms" -> p99Ms = Double.parseDouble(valor);
+                    case "version" -> version = Long.parseLong(valor);
+                    default -> {
+                    }
+                }
+            } catch (NumberFormatException e) {
+                // Campo ilegible: se deja el valor por defecto
+            }
+        }
+        return new CargaServidor(cola, conexiones, p99Ms, version);
+    }
+
+    /**
+     * Espera estimada (ms) de una solicitud más: lo que ya tiene en cola el servidor más lo que
+     * este reenviador le tiene en curso, por su p99 reciente.
+     */
+    double costo(int enCurso) {
+        return (cola + enCurso + 1) * Math.max(p99Ms, 1.0);
+    }
+}
@@ -0,0 +1,216 @@
+package com.healthcheck;
+
+import java.util.Arrays;
+
+/**
+ * Cortacircuitos de un servidor, alimentado por lo que de verdad responde a las solicitudes.
+ *
+ * El PING de salud lo atiende un hilo aparte, así que un servidor con el pool trabado o con
+ * la base de datos fallando sigue respondiendo PONG. Los reenviadores anotan aquí cada
+ * respuesta: un error del servidor (no los de formato o datos de la solicitud) cuenta como
+ * error, y más lenta que -Dcortacircuitos.sloMs (2000) o sin respuesta pasado ese tiempo
+ * cuenta como lenta. La ventana es de
+ * -Dcortacircuitos.ventanaSegundos (10) en cubetas de un segundo.
+ *
+ * Estados:
+ *   CERRADO: el servidor se usa. Se abre si en la ventana hay al menos
+ *            -Dcortacircuitos.minimo (20) solicitudes y los errores o las lentas llegan a
+ *            -Dcortacircuitos.umbralErrores (0.5) o -Dcortacircuitos.umbralLentas (0.5).
+ *   ABIERTO: el servidor no recibe tráfico aunque responda al PING, durante
+ *            -Dcortacircuitos.abiertoMs (10000); cada reapertura seguida duplica la espera,
+ *            hasta 8 veces.
+ *   MEDIO_ABIERTO: vuelve a recibir tráfico; -Dcortacircuitos.pruebas (5) respuestas buenas
+ *            seguidas lo cierran y cualquier falla lo abre de nuevo.
+ *
+ * Los reenviadores lo comparten; el estado y la ventana se tocan dentro de un synchronized
+ * corto. El aviso de cambio se llama fuera del bloqueo.
+ */
+final class Cortacircuitos {
+
+    enum Estado { CERRADO, ABIERTO, MEDIO_ABIERTO }
+
+    private static final int REAPERTURAS_MAXIMAS = 3;   // la espera crece hasta 2^3 = 8 veces
+
+    private final String servidor;
+    private final long sloNs;
+    private final int minimo;
+    private final double umbralErrores;
+    private final double umbralLentas;
+    private final long abiertoNs;
+    private final int pruebas;
+    private final Runnable alCambiar;
+
+    // Ventana deslizante: una cubeta por segundo, identificada por el segundo que cuenta
+    private final long[] segundos;
+    private final int[] totales;
+    private final int[] errores;
+    private final int[] lentas;
+
+    private Estado estado = Estado.CERRADO;
+    private long abiertoDesde;
+    private long medioAbiertoDesde;
+    private int reaperturas;
+    private int pruebasBuenas;
+
+    private final Metricas.Contador aperturas;
+
+    /** Un cortacircuitos con la configuración de las propiedades; alCambiar se avisa al abrir y al cerrar. */
+    static Cortacircuitos desdePropiedades(String servidor, Runnable alCambiar) {
+        return new Cortacircuitos(servidor, Long.getLong("cortacircuitos.sloMs", 2000),
+                Integer.getInteger("cortacircuitos.ventanaSegundos", 10),
+                Integer.getInteger("cortacircuitos.minimo", 20),
+                Double.parseDouble(System.getProperty("cortacircuitos.umbralErrores", "0.5")),
+                Double.parseDouble(System.getProperty("cortacircuitos.umbralLentas", "0.5")),
+                Long.getLong("cortacircuitos.abiertoMs", 10000),
+                Integer.getInteger("cortacircuitos.pruebas", 5), alCambiar);
+    }
+
+    private Cortacircuitos(String servidor, long sloMs, int ventanaSegundos, int minimo, double umbralErrores,
+                           double umbralLentas, long abiertoMs, int pruebas, Runnable alCambiar) {
+        this.servidor = servidor;
+        this.sloNs = sloMs * 1_000_000L;
+        this.minimo = Math.max(1, minimo);
+        this.umbralErrores = umbralErrores;
+        this.umbralLentas = umbralLentas;
+        this.abiertoNs = abiertoMs * 1_000_000L;
+        this.pruebas = Math.max(1, pruebas);
+        this.alCambiar = alCambiar;
+        int cubetas = Math.max(1, ventanaSegundos);
+        this.segundos = new long[cubetas];
+        this.totales = new int[cubetas];
+        this.errores = new int[cubetas];
+        this.lentas = new int[cubetas];
+        this.aperturas = Metricas.contador("healthcheck_cortacircuitos_aperturas_total",
+                "Veces que el cortacircuitos de un servidor se abrió", "servidor", servidor);
+        Metricas.indicador("healthcheck_cortacircuitos_estado",
+                "Estado del cortacircuitos: 0 cerrado, 1 abierto, 2 medio abierto",
+                () -> estado().ordinal(), "servidor", servidor);
+        Metricas.indicador("healthcheck_cortacircuitos_errores_ratio", "Fracción de respuestas con error en la ventana",
+                () -> fraccion(errores), "servidor", servidor);
+        Metricas.indicador("healthcheck_cortacircuitos_lentas_ratio",
+                "Fracción de solicitudes más lentas que el SLO en la ventana", () -> fraccion(lentas),
+                "servidor", servidor);
+    }
+
+    long sloNs() {
+        return sloNs;
+    }
+
+    /**
+     * true si el servidor puede recibir tráfico: cerrado o medio abierto. Un cortacircuitos
+     * abierto pasa aquí a medio abierto cuando se cumple su espera.
+     */
+    boolean disponible() {
+        synchronized (this) {
+            if (estado != Estado.ABIERTO) {
+                return true;
+            }
+            if (System.nanoTime() - abiertoDesde < (abiertoNs << reaperturas)) {
+                return false;
+            }
+            estado = Estado.MEDIO_ABIERTO;
+            medioAbiertoDesde = System.nanoTime();
+            pruebasBuenas = 0;
+        }
+        System.out.println("Cortacircuitos de " + servidor + " medio abierto: vuelve a recibir tráfico de prueba");
+        return true;
+    }
+
+    /** Respuesta a una solicitud reenviada en "reenviado" (nanoTime): lenta si tardó más que el SLO. */
+    void registrar(long reenviado, boolean error) {
+        anotar(reenviado, error, System.nanoTime() - reenviado > sloNs);
+    }
+
+    /** Una solicitud que pasó el SLO sin respuesta; si la respuesta llega después ya no se anota. */
+    void sinRespuesta(long reenviado) {
+        anotar(reenviado, false, true);
+    }
+
+    /**
+     * Medio abierto, solo deciden las solicitudes enviadas después de pasar a ese estado: las
+     * anteriores son del tráfico que lo abrió.
+     */
+    private void anotar(long reenviado, boolean error, boolean lenta) {
+        String aviso = null;
+        synchronized (this) {
+            long segundo = System.nanoTime() / 1_000_000_000L;
+            int cubeta = (int) Math.floorMod(segundo, (long) segundos.length);
+            if (segundos[cubeta] != segundo) {
+                segundos[cubeta] = segundo;
+                totales[cubeta] = 0;
+                errores[cubeta] = 0;
+                lentas[cubeta] = 0;
+            }
+            totales[cubeta]++;
+            if (error) {
+                errores[cubeta]++;
+            }
+            if (lenta) {
+                lentas[cubeta]++;
+            }
+
+            boolean falla = error || lenta;
+            if (estado == Estado.MEDIO_ABIERTO && reenviado - medioAbiertoDesde >= 0) {
+                if (falla) {
+                    reaperturas = Math.min(REAPERTURAS_MAXIMAS, reaperturas + 1);
+                    aviso = abrir("falló una solicitud de prueba");
+                } else if (++pruebasBuenas >= pruebas) {
+                    estado = Estado.CERRADO;
+                    reaperturas = 0;
+                    limpiarVentana();
+                    aviso = "Cortacircuitos de " + servidor + " cerrado tras " + pruebas + " respuestas buenas";
+                }
+            } else if (estado == Estado.CERRADO && falla) {
+                int total = suma(totales, segundo);
+                if (total >= minimo) {
+                    double fraccionErrores = (double) suma(errores, segundo) / total;
+                    double fraccionLentas = (double) suma(lentas, segundo) / total;
+                    if (fraccionErrores >= umbralErrores || fraccionLentas >= umbralLentas) {
+                        aviso = abrir(String.format("%.0f%% errores y %.0f%% lentas en %d solicitudes",
+                                fraccionErrores * 100, fraccionLentas * 100, total));
+                    }
+                }
+            }
+        }
+        if (aviso != null) {
+            System.out.println(aviso);
+            alCambiar.run();
+        }
+    }
+
+    // Llamar con el bloqueo tomado
+    private String abrir(String motivo) {
+        estado = Estado.ABIERTO;
+        abiertoDesde = System.nanoTime();
+        aperturas.inc();
+        return "Cortacircuitos de " + servidor + " abierto por " + ((abiertoNs << reaperturas) / 1_000_000)
+                + " ms: " + motivo;
+    }
+
+    private void limpiarVentana() {
+        Arrays.fill(totales, 0);
+        Arrays.fill(errores, 0);
+        Arrays.fill(lentas, 0);
+    }
+
+    // Suma las cubetas que siguen dentro de la ventana; llamar con el bloqueo tomado
+    private int suma(int[] cubetas, long segundo) {
+        int suma = 0;
+        for (int i = 0; i < cubetas.length; i++) {
+            if (segundo - segundos[i] < segundos.length) {
+                suma += cubetas[i];
+            }
+        }
+        return suma;
+    }
+
+    private synchronized Estado estado() {
+        return estado;
+    }
+
+    private synchronized double fraccion(int[] cubetas) {
+        long segundo = System.nanoTime() / 1_000_000_000L;
+        int total = suma(totales, segundo);
+        return total == 0 ? 0 : (double) suma(cubetas, segundo) / total;
+    }
+}
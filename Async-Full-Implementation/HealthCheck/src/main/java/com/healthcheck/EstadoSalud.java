@@ -0,0 +1,35 @@
+package com.healthcheck;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Foto inmutable de la salud de los servidores, publicada por el hilo de health check.
+ *
+ * Los hilos de reenvío la leen sin bloqueos y, cuando cambia, conectan o desconectan sus
+ * propios sockets; ningún otro hilo toca esos sockets.
+ */
+final class EstadoSalud {
+
+    final boolean verificado;                   // false en la foto inicial, antes del primer sondeo
+    final boolean primarioSano;
+    final boolean backupSano;
+    final boolean usarPrimario;
+    final String escrituras;                    // servidor que recibe las solicitudes que modifican el inventario
+    final Map<String, CargaServidor> lecturas;  // servidores sanos para las consultas, con su última carga
+
+    EstadoSalud(boolean verificado, boolean primarioSano, boolean backupSano, boolean usarPrimario, String escrituras,
+                Map<String, CargaServidor> lecturas) {
+        this.verificado = verificado;
+        this.primarioSano = primarioSano;
+        this.backupSano = backupSano;
+        this.usarPrimario = usarPrimario;
+        this.escrituras = escrituras;
+        this.lecturas = Collections.unmodifiableMap(new LinkedHashMap<>(lecturas));
+    }
+
+    boolean haySano() {
+        return primarioSano || backupSano;
+    }
+}
@@ -6,13 +6,21 @@ import org.zeromq.ZContext;
 
 import org.zeromq.ZMQ;
 
-import org.zeromq.ZMQ.Poller;
-
 import org.zeromq.SocketType;
 
 
 
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.io.IOException;
+
+import java.util.LinkedHashMap;
+
+import java.util.List;
+
+import java.util.Map;
+
+import java.util.function.ToDoubleFunction;
+
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import java.util.concurrent.Executors;
 
@@ -20,6 +28,8 @@ import java.util.concurrent.ScheduledExecutorService;
 
 import java.util.concurrent.TimeUnit;
 
+import java.util.concurrent.atomic.AtomicReference;
+
 
 
 public class HealthCheckManager {
@@ -44,158 +54,254 @@ public class HealthCheckManager {
 
 
 
-    private static final AtomicBoolean usePrimary = new AtomicBoolean(true);
+    private static final int PUERTO_METRICAS = Integer.getInteger("metricas.puerto", 9102);
+
+    // Hilos de reenvío; con más de uno, un proxy reparte el puerto de DepartmentSchool entre ellos
+
+    private static final int REENVIADORES = Integer.getInteger("healthcheck.reenviadores", 1);
+
+    private static final int HILOS_IO = Integer.getInteger("healthcheck.hilosIO", 1);
+
+
+
+    // Foto de salud: la escribe solo el hilo de health check, los reenviadores la leen sin bloqueos
+
+    private static final AtomicReference<EstadoSalud> salud = new AtomicReference<>(
+
+            new EstadoSalud(false, true, false, true, PRIMARY_SERVER, Map.of(PRIMARY_SERVER, CargaServidor.leer("PONG"))));
+
+    // Servidores que pueden atender consultas: dirección -> nombre en métricas
+
+    private static final Map<String, String> SERVIDORES = new LinkedHashMap<>();
+
+    // Cortacircuitos por dirección de servidor, alimentados por las respuestas que ven los reenviadores
+
+    private static final Map<String, Cortacircuitos> CORTACIRCUITOS = new LinkedHashMap<>();
+
+    // Par activo-activo con otro HealthCheckManager (-Dpar.otro); null si funciona solo
+
+    private static volatile ParHealthCheck par;
+
+
+
+    static {
+
+        SERVIDORES.put(PRIMARY_SERVER, "primario");
+
+        SERVIDORES.put(BACKUP_SERVER, "backup");
+
+        SERVIDORES.forEach((direccion, nombre) -> CORTACIRCUITOS.put(direccion,
+
+                Cortacircuitos.desdePropiedades(nombre, HealthCheckManager::reconsiderar)));
+
+    }
+
+
+
+    private static final Metricas.Histograma latenciaPing = Metricas.histograma("healthcheck_ping_duracion_segundos",
+
+            "Tiempo de ida y vuelta del PING de salud", Metricas.LATENCIA_SEGUNDOS);
+
+    private static final Metricas.Contador pingsFallidos = Metricas.contador("healthcheck_pings_fallidos_total",
+
+            "PING sin PONG dentro de TIMEOUT_MS");
+
+    private static final Metricas.Contador failoverABackup = Metricas.contador("healthcheck_failover_total",
+
+            "Cambios de servidor activo", "destino", "backup");
+
+    private static final Metricas.Contador failoverAPrimario = Metricas.contador("healthcheck_failover_total",
+
+            "Cambios de servidor activo", "destino", "primario");
 
 
 
     public static void main(String[] args) {
 
-        try (ZContext context = new ZContext()) {
+        List<Reenviador> reenviadores = new CopyOnWriteArrayList<>();
 
-            ZMQ.Socket frontend = context.createSocket(SocketType.ROUTER);
+        Metricas.indicador("healthcheck_servidor_activo", "1 si el servidor indicado recibe el tráfico",
 
-            frontend.bind("tcp://*:" + PORT_DEPARTMENT);
+                () -> salud.get().usarPrimario ? 1 : 0, "servidor", "primario");
 
-            System.out.println("ðŸ”Œ Escuchando solicitudes de DepartmentSchool en puerto " + PORT_DEPARTMENT);
+        Metricas.indicador("healthcheck_servidor_activo", "1 si el servidor indicado recibe el tráfico",
 
+                () -> salud.get().usarPrimario ? 0 : 1, "servidor", "backup");
 
+        Metricas.indicador("healthcheck_servidor_sano", "1 si el servidor respondió al último PING",
 
-            ZMQ.Socket backend = context.createSocket(SocketType.DEALER);
+                () -> salud.get().primarioSano ? 1 : 0, "servidor", "primario");
 
-            backend.connect(PRIMARY_SERVER);
+        Metricas.indicador("healthcheck_servidor_sano", "1 si el servidor respondió al último PING",
 
-            System.out.println("ðŸ” Inicialmente conectado al servidor PRIMARY");
+                () -> salud.get().backupSano ? 1 : 0, "servidor", "backup");
 
+        Metricas.indicador("healthcheck_mensajes_en_vuelo", "Solicitudes reenviadas que esperan respuesta",
 
+                () -> reenviadores.stream().mapToInt(Reenviador::enVuelo).sum());
 
-            ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        Metricas.indicador("healthcheck_reenviadores", "Hilos de reenvío", () -> REENVIADORES);
 
+        indicadorCarga("healthcheck_servidor_cola", "Trabajos en las colas del servidor según su último PONG",
 
+                carga -> carga.cola);
 
-            ZMQ.Socket healthSocket = context.createSocket(SocketType.REQ);
+        indicadorCarga("healthcheck_servidor_conexiones_db", "Conexiones JDBC abiertas según el último PONG",
 
-            healthSocket.setReceiveTimeOut(TIMEOUT_MS);
+                carga -> carga.conexiones);
 
-            healthSocket.connect(PRIMARY_HEALTH);
+        indicadorCarga("healthcheck_servidor_p99_segundos", "p99 reciente de las solicitudes según el último PONG",
 
+                carga -> carga.p99Ms / 1000);
 
+        indicadorCarga("healthcheck_servidor_version_inventario", "Versión del inventario en memoria del servidor",
 
-            scheduler.scheduleAtFixedRate(() -> {
+                carga -> carga.version);
+
+        Metricas.exponer(PUERTO_METRICAS);
+
+
+
+        // Spool en disco para cuando no hay ningún servidor sano (-Dspool.directorio); opcional
 
-                try {
+        Spool spool = null;
 
-                    healthSocket.send("PING");
+        try {
 
-                    String resp = healthSocket.recvStr();
+            spool = Spool.abrir();
 
-                    if (!"PONG".equals(resp)) throw new Exception("No PONG");
+        } catch (IOException e) {
+
+            System.err.println("No se pudo abrir el spool, se continúa sin él: " + e.getMessage());
+
+        }
+
+
+
+        LimiteTasa limite = LimiteTasa.desdePropiedades();
 
 
 
-                    if (!usePrimary.get()) {
+        try (ZContext context = new ZContext(HILOS_IO)) {
+
+            ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
 
-                        System.out.println("âœ… PRIMARY recuperado");
 
-                        synchronized (backend) {
+            par = ParHealthCheck.desdePropiedades(context, salud, HealthCheckManager::fijarActivo);
 
-                            backend.disconnect(BACKUP_SERVER);
+            if (par != null) {
 
-                            backend.connect(PRIMARY_SERVER);
+                Thread hiloPar = new Thread(par, "par-healthcheck");
 
-                        }
+                hiloPar.setDaemon(true);
 
-                        usePrimary.set(true);
+                hiloPar.start();
+
+            }
 
-                    }
 
-                } catch (Exception e) {
 
-                    if (usePrimary.get()) {
+            scheduler.scheduleAtFixedRate(() -> {
 
-                        System.out.println("âš ï¸ PRIMARY caÃ­do, cambiando a BACKUP");
+                CargaServidor cargaPrimario = sondear(context, PRIMARY_HEALTH);
 
-                        synchronized (backend) {
+                CargaServidor cargaBackup = sondear(context, BACKUP_HEALTH);
 
-                            backend.disconnect(PRIMARY_SERVER);
+                boolean primario = cargaPrimario != null;
 
-                            backend.connect(BACKUP_SERVER);
+                boolean backup = cargaBackup != null;
 
-                        }
 
-                        healthSocket.disconnect(PRIMARY_HEALTH);
 
-                        healthSocket.connect(BACKUP_HEALTH);
+                Map<String, CargaServidor> lecturas = new LinkedHashMap<>();
 
-                        usePrimary.set(false);
+                if (primario) {
 
-                    }
+                    lecturas.put(PRIMARY_SERVER, cargaPrimario);
 
                 }
 
-            }, 0, HEALTHCHECK_INTERVAL, TimeUnit.SECONDS);
+                if (backup) {
+
+                    lecturas.put(BACKUP_SERVER, cargaBackup);
 
+                }
 
+                // En un par, el respaldo sigue la decisión del primario mientras éste dé latidos
 
-            Poller poller = context.createPoller(2);
+                Boolean adoptada = par != null ? par.decisionAdoptada() : null;
 
-            poller.register(frontend, Poller.POLLIN);
+                boolean usarPrimario = adoptada != null ? adoptada : elegirPrimario(primario, backup);
 
-            poller.register(backend, Poller.POLLIN);
+                // El hilo del par también cambia el servidor activo: se actualiza con CAS
 
+                EstadoSalud antes;
 
+                do {
 
-            while (!Thread.currentThread().isInterrupted()) {
+                    antes = salud.get();
 
-                if (poller.poll(1000) > 0) {
+                } while (!salud.compareAndSet(antes, new EstadoSalud(true, primario, backup, usarPrimario,
 
-                    if (poller.pollin(0)) {
+                        usarPrimario ? PRIMARY_SERVER : BACKUP_SERVER, lecturas)));
 
-                        byte[] identity = frontend.recv(0);
+                avisarCambio(antes.usarPrimario, usarPrimario);
 
-                        frontend.recv(0);
+            }, 0, HEALTHCHECK_INTERVAL, TimeUnit.SECONDS);
 
-                        String msg = frontend.recvStr(0);
 
 
+            System.out.println("ðŸ” Inicialmente conectado al servidor PRIMARY");
 
-                        synchronized (backend) {
+            if (REENVIADORES <= 1) {
 
-                            backend.send(identity, ZMQ.SNDMORE);
+                Reenviador reenviador = new Reenviador(context, "tcp://*:" + PORT_DEPARTMENT, true, salud,
 
-                            backend.send("", ZMQ.SNDMORE);
+                        SERVIDORES, CORTACIRCUITOS, spool, true, limite);
 
-                            backend.send(msg);
+                reenviadores.add(reenviador);
 
-                        }
+                System.out.println("ðŸ”Œ Escuchando solicitudes de DepartmentSchool en puerto " + PORT_DEPARTMENT);
 
-                        System.out.println("ðŸ“¤ Mensaje reenviado al servidor: " + new String(msg));
+                reenviador.run();
 
-                    }
+            } else {
 
+                // El proxy pasa mensajes completos sin tocarlos: ROUTER externo -> DEALER interno, que
 
+                // reparte en round-robin entre los reenviadores y junta sus respuestas
 
-                    if (poller.pollin(1)) {
+                ZMQ.Socket frontend = context.createSocket(SocketType.ROUTER);
 
-                        byte[] identity = backend.recv(0);
+                frontend.bind("tcp://*:" + PORT_DEPARTMENT);
 
-                        backend.recv(0);
+                ZMQ.Socket reparto = context.createSocket(SocketType.DEALER);
 
-                        byte[] reply = backend.recv(0);
+                reparto.bind(Reenviador.REPARTO);
 
+                for (int i = 0; i < REENVIADORES; i++) {
 
+                    Reenviador reenviador = new Reenviador(context, Reenviador.REPARTO, false, salud, SERVIDORES,
 
-                        frontend.send(identity, ZMQ.SNDMORE);
+                            CORTACIRCUITOS, spool, i == 0, limite);
 
-                        frontend.send("", ZMQ.SNDMORE);
+                    reenviadores.add(reenviador);
 
-                        frontend.send(reply);
+                    Thread hilo = new Thread(reenviador, "reenviador-" + i);
 
-                        System.out.println("ðŸ“¬ Respuesta enviada a DepartmentSchool: " + new String(reply));
+                    hilo.setDaemon(true);
 
-                    }
+                    hilo.start();
 
                 }
 
+                System.out.println("ðŸ”Œ Escuchando solicitudes de DepartmentSchool en puerto " + PORT_DEPARTMENT
+
+                        + " con " + REENVIADORES + " hilos de reenvío");
+
+                ZMQ.proxy(frontend, reparto, null);
+
             }
 
 
@@ -206,6 +312,200 @@ public class HealthCheckManager {
 
     }
 
+
+
+    /**
+
+     * Servidor para las escrituras según los sondeos y los cortacircuitos: el primario si
+
+     * responde al PING y su cortacircuitos no está abierto. Con el cortacircuitos del primario
+
+     * abierto se sigue en él solo si el backup tampoco se puede usar.
+
+     */
+
+    private static boolean elegirPrimario(boolean primario, boolean backup) {
+
+        if (!primario) {
+
+            return false;
+
+        }
+
+        boolean backupUsable = backup && CORTACIRCUITOS.get(BACKUP_SERVER).disponible();
+
+        return CORTACIRCUITOS.get(PRIMARY_SERVER).disponible() || !backupUsable;
+
+    }
+
+
+
+    /**
+
+     * Vuelve a decidir el servidor activo con los últimos sondeos cuando se abre o se cierra un
+
+     * cortacircuitos, sin esperar al próximo health check. El respaldo de un par sigue la decisión
+
+     * del primario.
+
+     */
+
+    private static void reconsiderar() {
+
+        ParHealthCheck actual = par;
+
+        if (actual != null && actual.decisionAdoptada() != null) {
+
+            return;
+
+        }
+
+        EstadoSalud antes;
+
+        boolean usarPrimario;
+
+        do {
+
+            antes = salud.get();
+
+            if (!antes.verificado) {
+
+                return;
+
+            }
+
+            usarPrimario = elegirPrimario(antes.primarioSano, antes.backupSano);
+
+            if (antes.usarPrimario == usarPrimario) {
+
+                return;
+
+            }
+
+        } while (!salud.compareAndSet(antes, new EstadoSalud(antes.verificado, antes.primarioSano, antes.backupSano,
+
+                usarPrimario, usarPrimario ? PRIMARY_SERVER : BACKUP_SERVER, antes.lecturas)));
+
+        avisarCambio(antes.usarPrimario, usarPrimario);
+
+    }
+
+
+
+    /** Cambia el servidor que recibe las escrituras; lo llaman el sondeo y el hilo del par. */
+
+    private static void fijarActivo(boolean usarPrimario) {
+
+        EstadoSalud antes;
+
+        do {
+
+            antes = salud.get();
+
+            if (antes.usarPrimario == usarPrimario) {
+
+                return;
+
+            }
+
+        } while (!salud.compareAndSet(antes, new EstadoSalud(antes.verificado, antes.primarioSano, antes.backupSano,
+
+                usarPrimario, usarPrimario ? PRIMARY_SERVER : BACKUP_SERVER, antes.lecturas)));
+
+        avisarCambio(!usarPrimario, usarPrimario);
+
+    }
+
+
+
+    private static void avisarCambio(boolean antes, boolean usarPrimario) {
+
+        if (antes == usarPrimario) {
+
+            return;
+
+        }
+
+        if (usarPrimario) {
+
+            System.out.println("âœ… PRIMARY recuperado");
+
+            failoverAPrimario.inc();
+
+        } else {
+
+            System.out.println("âš ï¸ PRIMARY caÃ­do, cambiando a BACKUP");
+
+            failoverABackup.inc();
+
+        }
+
+    }
+
+
+
+    /** Un dato de la carga de cada servidor; no se publica mientras el servidor no esté sano. */
+
+    private static void indicadorCarga(String nombre, String ayuda, ToDoubleFunction<CargaServidor> dato) {
+
+        SERVIDORES.forEach((direccion, servidor) -> Metricas.indicador(nombre, ayuda, () -> {
+
+            CargaServidor carga = salud.get().lecturas.get(direccion);
+
+            return carga != null ? dato.applyAsDouble(carga) : Double.NaN;
+
+        }, "servidor", servidor));
+
+    }
+
+
+
+    /**
+
+     * Un REQ nuevo por sondeo: un REQ que se quedó sin respuesta no se puede volver a usar.
+
+     * Devuelve la carga informada en el PONG, o null si el servidor no respondió.
+
+     */
+
+    private static CargaServidor sondear(ZContext context, String endpoint) {
+
+        ZMQ.Socket socket = context.createSocket(SocketType.REQ);
+
+        try {
+
+            socket.setLinger(0);
+
+            socket.setReceiveTimeOut(TIMEOUT_MS);
+
+            socket.connect(endpoint);
+
+            long inicioPing = System.nanoTime();
+
+            socket.send("PING");
+
+            CargaServidor carga = CargaServidor.leer(socket.recvStr());
+
+            if (carga == null) {
+
+                pingsFallidos.inc();
+
+                return null;
+
+            }
+
+            latenciaPing.observarDesde(inicioPing);
+
+            return carga;
+
+        } finally {
+
+            socket.close();
+
+        }
+
+    }
+
 }
 
 
@@ -0,0 +1,290 @@
+package com.healthcheck;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Límite de tasa a la entrada del HealthCheckManager, por facultad y por cliente, para que una
+ * facultad o un script de AcademicProgram desbocado no sature al servidor central.
+ *
+ * Cada facultad y cada cliente tienen una cubeta de fichas que se llena a "porSegundo" fichas
+ * por segundo hasta "ráfaga". La cubeta se lleva como GCRA: un solo long con el instante teórico
+ * de la próxima llegada, en un AtomicLong. Revisar es un CAS sin bloqueo, y cuánto falta para la
+ * próxima ficha sale de la misma cuenta. El cliente es el programa que firma la solicitud,
+ * dentro de su facultad: sale del mensaje y no de la identidad del socket, que cambia en cada
+ * ejecución de AcademicProgram y dejaría sin límite a un script que lo lanza en un ciclo.
+ *
+ * Cada límite se escribe "porSegundo[,ráfaga]" (ráfaga por defecto: porSegundo; vacío o 0, sin
+ * límite). -Dlimite.facultad y -Dlimite.cliente dan los valores de arranque. El archivo
+ * -Dlimite.archivo (limites.properties), con las claves facultad, cliente y facultad.<nombre>
+ * para una facultad en particular, los reemplaza y se relee cada segundo si cambió: los límites
+ * se ajustan sin reiniciar.
+ *
+ * Facultad y programa vienen del cliente. Como clave se usan a lo sumo sus primeros 255
+ * caracteres de cada uno, y las métricas llevan como etiqueta solo las facultades conocidas: las
+ * de -Dlimite.facultades (lista separada por comas) y las que tienen límite propio en el archivo.
+ * El resto se cuenta como "otra".
+ */
+final class LimiteTasa {
+
+    private static final long REVISION_MS = 1000;
+    private static final int MAXIMO_FACULTAD = 255;
+    private static final String OTRA = "otra";
+
+    private final Path archivo;
+    private final Tasa facultadInicial;
+    private final Tasa clienteInicial;
+    private final Set<String> conocidas = new HashSet<>();
+    private volatile Configuracion configuracion;
+    private long modificado = -1;   // solo lo toca el hilo de revisión
+
+    private final ConcurrentHashMap<String, Cubeta> facultades = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Cubeta> clientes = new ConcurrentHashMap<>();
+    // facultad conocida u "otra" -> {aceptada, limitada_facultad, limitada_cliente}
+    private final ConcurrentHashMap<String, Metricas.Contador[]> contadores = new ConcurrentHashMap<>();
+
+    static LimiteTasa desdePropiedades() {
+        return new LimiteTasa(Paths.get(System.getProperty("limite.archivo", "limites.properties")),
+                Tasa.leer(System.getProperty("limite.facultad")), Tasa.leer(System.getProperty("limite.cliente")));
+    }
+
+    private LimiteTasa(Path archivo, Tasa facultad, Tasa cliente) {
+        this.archivo = archivo;
+        this.facultadInicial = facultad;
+        this.clienteInicial = cliente;
+        for (String nombre : System.getProperty("limite.facultades", "").split(",")) {
+            if (!nombre.isBlank()) {
+                conocidas.add(nombre.trim());
+            }
+        }
+        this.configuracion = new Configuracion(facultad, cliente, new HashMap<>());
+        revisar();
+        Metricas.indicador("healthcheck_limite_tasa_clientes", "Clientes con cubeta de límite de tasa en uso",
+                clientes::size);
+        Thread hilo = new Thread(() -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                try {
+                    Thread.sleep(REVISION_MS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                revisar();
+                purgar();
+            }
+        }, "limite-tasa");
+        hilo.setDaemon(true);
+        hilo.start();
+    }
+
+    /** false si no hay ningún límite configurado: no hace falta decodificar facultad ni cliente. */
+    boolean activo() {
+        return configuracion.activa();
+    }
+
+    /**
+     * Toma una ficha de la cubeta del cliente y otra de la de su facultad. Devuelve 0 si la
+     * solicitud pasa, o los milisegundos hasta que haya ficha si hay que rechazarla.
+     *
+     * @param programa programa de la solicitud, o "" si el mensaje no lo trae
+     */
+    long esperaMs(String facultad, String programa) {
+        Configuracion actual = configuracion;
+        if (!actual.activa()) {
+            return 0;
+        }
+        if (facultad.length() > MAXIMO_FACULTAD) {
+            facultad = facultad.substring(0, MAXIMO_FACULTAD);
+        }
+        if (programa.length() > MAXIMO_FACULTAD) {
+            programa = programa.substring(0, MAXIMO_FACULTAD);
+        }
+        String etiqueta = conocidas.contains(facultad) || actual.porFacultad.containsKey(facultad) ? facultad : OTRA;
+        Metricas.Contador[] porFacultad = contadores.computeIfAbsent(etiqueta, LimiteTasa::contadores);
+        long ahora = System.nanoTime();
+        if (actual.cliente != null && !programa.isEmpty()) {
+            long espera = clientes.computeIfAbsent(facultad + "/" + programa, clave -> new Cubeta(ahora))
+                    .tomar(actual.cliente, ahora);
+            if (espera > 0) {
+                porFacultad[2].inc();
+                return milisegundos(espera);
+            }
+        }
+        Tasa tasaFacultad = actual.facultad(facultad);
+        if (tasaFacultad != null) {
+            long espera = facultades.computeIfAbsent(facultad, clave -> new Cubeta(ahora))
+                    .tomar(tasaFacultad, ahora);
+            if (espera > 0) {
+                porFacultad[1].inc();
+                return milisegundos(espera);
+            }
+        }
+        porFacultad[0].inc();
+        return 0;
+    }
+
+    private static long milisegundos(long nanos) {
+        return Math.max(1, (nanos + 999_999) / 1_000_000);
+    }
+
+    private static Metricas.Contador[] contadores(String facultad) {
+        String nombre = "healthcheck_limite_tasa_total";
+        String ayuda = "Solicitudes revisadas por el límite de tasa, por facultad";
+        return new Metricas.Contador[] {
+                Metricas.contador(nombre, ayuda, "facultad", facultad, "resultado", "aceptada"),
+                Metricas.contador(nombre, ayuda, "facultad", facultad, "resultado", "limitada_facultad"),
+                Metricas.contador(nombre, ayuda, "facultad", facultad, "resultado", "limitada_cliente")
+        };
+    }
+
+    /** Relee el archivo si cambió; sin archivo quedan los límites de arranque. */
+    private void revisar() {
+        long actual;
+        try {
+            actual = Files.getLastModifiedTime(archivo).toMillis();
+        } catch (NoSuchFileException e) {
+            actual = 0;
+        } catch (IOException e) {
+            System.err.println("No se pudo revisar " + archivo + ": " + e.getMessage());
+            return;
+        }
+        if (actual == modificado) {
+            return;
+        }
+        modificado = actual;
+        if (actual == 0) {
+            configuracion = new Configuracion(facultadInicial, clienteInicial, new HashMap<>());
+            return;
+        }
+        Properties propiedades = new Properties();
+        try (Reader lector = Files.newBufferedReader(archivo, StandardCharsets.UTF_8)) {
+            propiedades.load(lector);
+        } catch (IOException e) {
+            System.err.println("No se pudo leer " + archivo + ", se mantienen los límites actuales: " + e.getMessage());
+            return;
+        }
+        try {
+            Map<String, Tasa> porFacultad = new HashMap<>();
+            for (String clave : propiedades.stringPropertyNames()) {
+                if (clave.startsWith("facultad.")) {
+                    porFacultad.put(clave.substring("facultad.".length()), Tasa.leer(propiedades.getProperty(clave)));
+                }
+            }
+            Tasa facultad = propiedades.containsKey("facultad")
+                    ? Tasa.leer(propiedades.getProperty("facultad")) : facultadInicial;
+            Tasa cliente = propiedades.containsKey("cliente")
+                    ? Tasa.leer(propiedades.getProperty("cliente")) : clienteInicial;
+            configuracion = new Configuracion(facultad, cliente, porFacultad);
+            System.out.println("Límites de tasa cargados desde " + archivo + ": facultad=" + facultad
+                    + ", cliente=" + cliente + ", por facultad=" + porFacultad);
+        } catch (IllegalArgumentException e) {
+            System.err.println("Límite inválido en " + archivo + ", se mantienen los actuales: " + e.getMessage());
+        }
+    }
+
+    // Una cubeta llena es igual a una nueva: se sacan para que los clientes que se fueron no se acumulen
+    private void purgar() {
+        long ahora = System.nanoTime();
+        clientes.values().removeIf(cubeta -> cubeta.llena(ahora));
+        facultades.values().removeIf(cubeta -> cubeta.llena(ahora));
+    }
+
+    /** Tasa de una cubeta: una ficha cada intervaloNs, con hasta toleranciaNs de adelanto (la ráfaga). */
+    static final class Tasa {
+
+        final double porSegundo;
+        final int rafaga;
+        final long intervaloNs;
+        final long toleranciaNs;
+
+        private Tasa(double porSegundo, int rafaga) {
+            this.porSegundo = porSegundo;
+            this.rafaga = rafaga;
+            this.intervaloNs = Math.max(1, (long) (1_000_000_000L / porSegundo));
+            this.toleranciaNs = (rafaga - 1) * intervaloNs;
+        }
+
+        /** "porSegundo[,ráfaga]"; null si no hay límite. */
+        static Tasa leer(String texto) {
+            if (texto == null || texto.isBlank()) {
+                return null;
+            }
+            String[] partes = texto.split(",");
+            try {
+                double porSegundo = Double.parseDouble(partes[0].trim());
+                if (porSegundo <= 0) {
+                    return null;
+                }
+                int rafaga = partes.length > 1 ? Integer.parseInt(partes[1].trim()) : (int) Math.ceil(porSegundo);
+                return new Tasa(porSegundo, Math.max(1, rafaga));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("se esperaba porSegundo[,ráfaga]: " + texto);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return porSegundo + "/s ráfaga " + rafaga;
+        }
+    }
+
+    private static final class Configuracion {
+
+        final Tasa facultad;
+        final Tasa cliente;
+        final Map<String, Tasa> porFacultad;
+
+        Configuracion(Tasa facultad, Tasa cliente, Map<String, Tasa> porFacultad) {
+            this.facultad = facultad;
+            this.cliente = cliente;
+            this.porFacultad = porFacultad;
+        }
+
+        boolean activa() {
+            return facultad != null || cliente != null || !porFacultad.isEmpty();
+        }
+
+        Tasa facultad(String nombre) {
+            return porFacultad.containsKey(nombre) ? porFacultad.get(nombre) : facultad;
+        }
+    }
+
+    private static final class Cubeta {
+
+        // Instante teórico en que se vacía lo ya tomado: la cubeta está llena si ya pasó
+        private final AtomicLong llegada;
+
+        Cubeta(long ahora) {
+            this.llegada = new AtomicLong(ahora);
+        }
+
+        /** 0 si tomó una ficha; si no, los nanosegundos hasta que haya una. */
+        long tomar(Tasa tasa, long ahora) {
+            while (true) {
+                long anterior = llegada.get();
+                long base = Math.max(anterior, ahora);
+                if (base - ahora > tasa.toleranciaNs) {
+                    return base - tasa.toleranciaNs - ahora;
+                }
+                if (llegada.compareAndSet(anterior, base + tasa.intervaloNs)) {
+                    return 0;
+                }
+            }
+        }
+
+        boolean llena(long ahora) {
+            return llegada.get() - ahora <= 0;
+        }
+    }
+}
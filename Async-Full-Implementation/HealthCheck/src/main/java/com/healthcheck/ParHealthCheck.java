@@ -0,0 +1,145 @@
+package com.healthcheck;
+
+import org.zeromq.SocketType;
+import org.zeromq.ZContext;
+import org.zeromq.ZMQ;
+
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Par activo-activo de HealthCheckManager, al estilo de una estrella binaria.
+ *
+ * Los dos reenvían tráfico a la vez (DepartmentSchool se conecta a ambos y reparte), pero el
+ * servidor que recibe las escrituras lo decide uno solo, para que no terminen repartidas entre
+ * las dos bases de datos: el de -Dpar.rol=primario. Cada uno publica en -Dpar.puerto (5560) un
+ * latido cada -Dpar.latidoMs (1000) con su vista de los servidores:
+ *   ESTADO,<rol>,<usarPrimario>,<primarioSano>,<backupSano>
+ * y se suscribe al del otro en -Dpar.otro. El respaldo adopta la decisión del primario mientras
+ * reciba sus latidos; si pasan -Dpar.latidosPerdidos (3) sin ninguno, decide con sus propios
+ * sondeos. Sin -Dpar.otro no hay par y el HealthCheckManager funciona solo, como siempre.
+ */
+final class ParHealthCheck implements Runnable {
+
+    private final ZContext context;
+    private final boolean decide;
+    private final String otro;
+    private final int puerto;
+    private final long latidoMs;
+    private final long vencimientoMs;
+    private final AtomicReference<EstadoSalud> salud;
+    private final Consumer<Boolean> alAdoptar;
+
+    // Lo escribe el hilo del par; el de health check lo lee al decidir
+    private volatile long ultimoLatido;
+    private volatile boolean otroUsaPrimario = true;
+
+    private final Metricas.Contador latidosRecibidos = Metricas.contador("healthcheck_par_latidos_total",
+            "Latidos recibidos del otro HealthCheckManager del par");
+    private final Metricas.Contador adopciones = Metricas.contador("healthcheck_par_decisiones_adoptadas_total",
+            "Cambios de servidor activo tomados de la decisión del otro HealthCheckManager");
+
+    /** El par configurado con -Dpar.otro, o null si este HealthCheckManager funciona solo. */
+    static ParHealthCheck desdePropiedades(ZContext context, AtomicReference<EstadoSalud> salud,
+                                           Consumer<Boolean> alAdoptar) {
+        String otro = System.getProperty("par.otro");
+        if (otro == null || otro.isBlank()) {
+            return null;
+        }
+        long latidoMs = Long.getLong("par.latidoMs", 1000);
+        return new ParHealthCheck(context, !"respaldo".equals(System.getProperty("par.rol", "primario")), otro,
+                Integer.getInteger("par.puerto", 5560), latidoMs,
+                latidoMs * Integer.getInteger("par.latidosPerdidos", 3), salud, alAdoptar);
+    }
+
+    private ParHealthCheck(ZContext context, boolean decide, String otro, int puerto, long latidoMs,
+                           long vencimientoMs, AtomicReference<EstadoSalud> salud, Consumer<Boolean> alAdoptar) {
+        this.context = context;
+        this.decide = decide;
+        this.otro = otro;
+        this.puerto = puerto;
+        this.latidoMs = latidoMs;
+        this.vencimientoMs = vencimientoMs;
+        this.salud = salud;
+        this.alAdoptar = alAdoptar;
+        Metricas.indicador("healthcheck_par_otro_vivo", "1 si llegan latidos del otro HealthCheckManager",
+                () -> otroVivo() ? 1 : 0);
+        Metricas.indicador("healthcheck_par_decide", "1 si este HealthCheckManager decide el servidor activo",
+                () -> decide || !otroVivo() ? 1 : 0);
+    }
+
+    String rol() {
+        return decide ? "primario" : "respaldo";
+    }
+
+    boolean otroVivo() {
+        return System.currentTimeMillis() - ultimoLatido < vencimientoMs;
+    }
+
+    /**
+     * La decisión del otro si hay que seguirla (somos el respaldo y el primario está vivo), o
+     * null si este HealthCheckManager decide por su cuenta.
+     */
+    Boolean decisionAdoptada() {
+        return !decide && otroVivo() ? otroUsaPrimario : null;
+    }
+
+    @Override
+    public void run() {
+        ZMQ.Socket publicador = context.createSocket(SocketType.PUB);
+        publicador.setLinger(0);
+        publicador.bind("tcp://*:" + puerto);
+        ZMQ.Socket suscriptor = context.createSocket(SocketType.SUB);
+        suscriptor.setLinger(0);
+        suscriptor.connect(otro);
+        suscriptor.subscribe("ESTADO".getBytes(ZMQ.CHARSET));
+        System.out.println("Par de HealthCheckManager: rol " + rol() + ", latidos en puerto " + puerto
+                + ", otro en " + otro);
+
+        ZMQ.Poller poller = context.createPoller(1);
+        poller.register(suscriptor, ZMQ.Poller.POLLIN);
+        boolean estabaVivo = false;
+        long proximoLatido = 0;
+        while (!Thread.currentThread().isInterrupted()) {
+            long ahora = System.currentTimeMillis();
+            if (ahora >= proximoLatido) {
+                EstadoSalud estado = salud.get();
+                publicador.send("ESTADO," + rol() + "," + estado.usarPrimario + "," + estado.primarioSano + ","
+                        + estado.backupSano, ZMQ.DONTWAIT);
+                proximoLatido = ahora + latidoMs;
+            }
+            if (poller.poll(Math.max(1, proximoLatido - ahora)) > 0 && poller.pollin(0)) {
+                String latido;
+                while ((latido = suscriptor.recvStr(ZMQ.DONTWAIT)) != null) {
+                    recibir(latido);
+                }
+            }
+            boolean vivo = otroVivo();
+            if (vivo != estabaVivo) {
+                System.out.println(vivo ? "Par de HealthCheckManager: el otro responde"
+                        : "Par de HealthCheckManager: sin latidos del otro, "
+                        + (decide ? "se sigue decidiendo aquí" : "este pasa a decidir el servidor activo"));
+                estabaVivo = vivo;
+            }
+        }
+    }
+
+    private void recibir(String latido) {
+        String[] campos = latido.split(",");
+        if (campos.length < 5) {
+            return;
+        }
+        if (campos[1].equals(rol())) {
+            System.err.println("Par de HealthCheckManager: los dos tienen el rol " + rol() + ", revise -Dpar.rol");
+        }
+        latidosRecibidos.inc();
+        ultimoLatido = System.currentTimeMillis();
+        boolean usaPrimario = Boolean.parseBoolean(campos[2]);
+        otroUsaPrimario = usaPrimario;
+        // El respaldo aplica el cambio en cuanto lo ve, sin esperar a su propio sondeo
+        if (!decide && "primario".equals(campos[1]) && salud.get().usarPrimario != usaPrimario) {
+            adopciones.inc();
+            alAdoptar.accept(usaPrimario);
+        }
+    }
+}
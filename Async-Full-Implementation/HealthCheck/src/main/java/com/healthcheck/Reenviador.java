@@ -0,0 +1,621 @@
+package com.healthcheck;
+
+import org.zeromq.SocketType;
+import org.zeromq.ZContext;
+import org.zeromq.ZMQ;
+import org.zeromq.ZMQ.Poller;
+import zmq.Msg;
+import zmq.SocketBase;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Un hilo de reenvío del HealthCheckManager: recibe solicitudes por su socket de entrada y las
+ * pasa al servidor activo (o a un servidor sano si son consultas), y devuelve las respuestas.
+ *
+ * Cada reenviador es dueño de todos sus sockets. La entrada es el ROUTER del puerto de
+ * DepartmentSchool cuando hay un solo hilo, o un DEALER conectado al reparto interno cuando
+ * hay varios; en ambos casos los mensajes llegan con el mismo sobre. Los cambios de servidor
+ * los toma de la foto de salud publicada por el health check, sin bloqueos.
+ *
+ * Las escrituras van siempre al servidor activo: cada servidor tiene su propia base de datos.
+ * Las consultas, que cualquiera puede responder, se reparten por "dos opciones al azar" según
+ * la carga que cada servidor informa en su PONG y las consultas que este hilo le tiene en curso.
+ *
+ * Con spool, las escrituras que llegan sin ningún servidor sano se guardan en disco y se
+ * responden "Encolada"; el reenviador que drena las reenvía a ritmo controlado cuando vuelve
+ * un servidor.
+ *
+ * Las solicitudes pueden traer al final ",plazo=<epoch ms>": si ya venció al llegar se
+ * responden "Timeout" sin reenviarlas, y las del spool vencidas se descartan al drenar (su
+ * cliente ya recibió "Encolada").
+ *
+ * Antes de reenviar, cada solicitud pasa por el LimiteTasa de su facultad y su programa; la que
+ * lo excede se responde "Error: Límite de tasa excedido, reintente en N ms" sin llegar al servidor.
+ *
+ * Cada respuesta, y cada solicitud que pasa el SLO sin respuesta, se anota en el
+ * Cortacircuitos del servidor que la atendió. Un servidor con el cortacircuitos abierto no
+ * recibe consultas; las escrituras las mueve el health check.
+ */
+class Reenviador implements Runnable {
+
+    static final String REPARTO = "inproc://reenviadores";
+
+    private static final long EXPIRACION_EN_VUELO_NS = 60_000_000_000L;
+    // Cada cuánto se revisa la foto de salud aunque no llegue tráfico
+    private static final long ESPERA_POLL_MS = 100;
+
+    private static final Metricas.Contador reenviadas = Metricas.contador("healthcheck_mensajes_total",
+            "Mensajes reenviados por dirección", "direccion", "solicitud");
+    private static final Metricas.Contador respondidas = Metricas.contador("healthcheck_mensajes_total",
+            "Mensajes reenviados por dirección", "direccion", "respuesta");
+    private static final Metricas.Contador aprobadas = Metricas.contador("healthcheck_respuestas_total",
+            "Respuestas del servidor por resultado", "resultado", "Aprobada");
+    private static final Metricas.Contador denegadas = Metricas.contador("healthcheck_respuestas_total",
+            "Respuestas del servidor por resultado", "resultado", "Denegada");
+    private static final Metricas.Contador errores = Metricas.contador("healthcheck_respuestas_total",
+            "Respuestas del servidor por resultado", "resultado", "Error");
+    private static final Metricas.Contador vencidas = Metricas.contador("healthcheck_respuestas_total",
+            "Respuestas del servidor por resultado", "resultado", "Timeout");
+    private static final Metricas.Contador otras = Metricas.contador("healthcheck_respuestas_total",
+            "Respuestas del servidor por resultado", "resultado", "Otro");
+    private static final Metricas.Contador vencidasEntrada = Metricas.contador("healthcheck_plazo_vencido_total",
+            "Solicitudes descartadas por plazo vencido", "salto", "entrada");
+    private static final Metricas.Contador vencidasSpool = Metricas.contador("healthcheck_plazo_vencido_total",
+            "Solicitudes descartadas por plazo vencido", "salto", "spool");
+    private static final Metricas.Histograma latencia = Metricas.histograma("healthcheck_solicitud_duracion_segundos",
+            "Tiempo entre el reenvío al servidor y su respuesta", Metricas.LATENCIA_SEGUNDOS);
+    private static final Map<String, Metricas.Contador> consultas = new ConcurrentHashMap<>();
+
+    private static final LogAsincrono.Tipo logReenvio = LogAsincrono.tipo("healthcheck.reenvio",
+            LogAsincrono.Nivel.INFO, 1, 50);
+    private static final LogAsincrono.Tipo logRespuesta = LogAsincrono.tipo("healthcheck.respuesta",
+            LogAsincrono.Nivel.INFO, 1, 50);
+
+    private static final byte[] CONSULTA = "CONSULTA,".getBytes(ZMQ.CHARSET);
+    private static final byte[] STATUS = "STATUS".getBytes(ZMQ.CHARSET);
+    private static final byte[] APROBADA = "Aprobada".getBytes(ZMQ.CHARSET);
+    private static final byte[] DENEGADA = "Denegada".getBytes(ZMQ.CHARSET);
+    private static final byte[] ERROR = "Error".getBytes(ZMQ.CHARSET);
+    private static final byte[] TIMEOUT = ",Timeout:".getBytes(ZMQ.CHARSET);
+    private static final byte[] PLAZO = ",plazo=".getBytes(ZMQ.CHARSET);
+    // Errores que son del servidor y no de la solicitud (formato o datos inválidos no cuentan)
+    private static final byte[] ERROR_PROCESANDO = "Error procesando".getBytes(ZMQ.CHARSET);
+    private static final byte[] SATURADO = "Servidor saturado".getBytes(ZMQ.CHARSET);
+    private static final long FORZADO_SPOOL_NS = 1_000_000_000L;
+    // Cada cuánto se buscan solicitudes que pasaron el SLO sin respuesta
+    private static final long REVISION_SLO_NS = 500_000_000L;
+
+    private final ZContext context;
+    private final String entrada;
+    private final boolean enlazar;
+    private final AtomicReference<EstadoSalud> salud;
+    private final String[] servidores;   // dirección de cada servidor que puede atender consultas
+    private final Metricas.Contador[] consultasPorServidor;
+    private final Cortacircuitos[] cortacircuitos;   // uno por servidor, en el orden de "servidores"
+    private final Map<String, Cortacircuitos> cortacircuitosPorDireccion;
+    private final int[] consultasEnCurso;
+    private final int[] sanos;
+    private final Spool spool;     // null si no hay spool
+    private final boolean drena;   // solo un reenviador saca del spool, para no desordenarlo
+    private final LimiteTasa limite;   // compartido por los reenviadores
+    private double fichasDrenado;
+    private long ultimoDrenado = System.nanoTime();
+
+    // requestId -> reenvío sin respuesta; solo lo toca este hilo
+    private final Map<String, EnCurso> enVuelo = new HashMap<>();
+    // Tramas del mensaje en tránsito; la lista se reutiliza entre mensajes
+    private final List<Msg> tramas = new ArrayList<>(8);
+
+    /**
+     * @param entrada dirección del socket de entrada: con enlazar=true se abre un ROUTER con
+     *                bind (hilo único), si no un DEALER conectado al reparto interno
+     * @param servidores dirección -> nombre de los servidores que pueden atender consultas
+     * @param cortacircuitos dirección -> cortacircuitos de cada servidor, compartidos entre reenviadores
+     * @param spool      spool compartido por los reenviadores, o null
+     * @param drena      si este reenviador es el que reenvía lo guardado en el spool
+     * @param limite     límite de tasa por facultad y programa, compartido por los reenviadores
+     */
+    Reenviador(ZContext context, String entrada, boolean enlazar, AtomicReference<EstadoSalud> salud,
+               Map<String, String> servidores, Map<String, Cortacircuitos> cortacircuitos, Spool spool,
+               boolean drena, LimiteTasa limite) {
+        this.context = context;
+        this.entrada = entrada;
+        this.enlazar = enlazar;
+        this.salud = salud;
+        this.servidores = servidores.keySet().toArray(new String[0]);
+        this.consultasPorServidor = new Metricas.Contador[this.servidores.length];
+        for (int i = 0; i < this.servidores.length; i++) {
+            consultasPorServidor[i] = consultas.computeIfAbsent(servidores.get(this.servidores[i]),
+                    nombre -> Metricas.contador("healthcheck_consultas_total",
+                            "Consultas de disponibilidad por servidor que las atendió", "servidor", nombre));
+        }
+        this.cortacircuitosPorDireccion = cortacircuitos;
+        this.cortacircuitos = new Cortacircuitos[this.servidores.length];
+        for (int i = 0; i < this.servidores.length; i++) {
+            this.cortacircuitos[i] = cortacircuitos.get(this.servidores[i]);
+        }
+        this.consultasEnCurso = new int[this.servidores.length];
+        this.sanos = new int[this.servidores.length];
+        this.spool = spool;
+        this.drena = drena && spool != null;
+        this.limite = limite;
+    }
+
+    /** Solicitudes reenviadas que esperan respuesta (lectura aproximada desde el hilo de métricas). */
+    int enVuelo() {
+        return enVuelo.size();
+    }
+
+    @Override
+    public void run() {
+        ZMQ.Socket frontend;
+        if (enlazar) {
+            frontend = context.createSocket(SocketType.ROUTER);
+            frontend.bind(entrada);
+        } else {
+            frontend = context.createSocket(SocketType.DEALER);
+            frontend.connect(entrada);
+        }
+
+        EstadoSalud actual = salud.get();
+        ZMQ.Socket backend = context.createSocket(SocketType.DEALER);
+        backend.connect(actual.escrituras);
+        // Consultas de solo lectura: un DEALER por servidor, siempre conectado; solo se usa si está sano
+        ZMQ.Socket[] lecturas = new ZMQ.Socket[servidores.length];
+        Poller poller = context.createPoller(2 + servidores.length);
+        poller.register(frontend, Poller.POLLIN);
+        poller.register(backend, Poller.POLLIN);
+        for (int i = 0; i < servidores.length; i++) {
+            lecturas[i] = context.createSocket(SocketType.DEALER);
+            lecturas[i].connect(servidores[i]);
+            poller.register(lecturas[i], Poller.POLLIN);
+        }
+        long ultimaLimpieza = System.nanoTime();
+        long ultimoForzado = System.nanoTime();
+        long ultimaRevision = System.nanoTime();
+
+        while (!Thread.currentThread().isInterrupted()) {
+            EstadoSalud nuevo = salud.get();
+            if (nuevo != actual) {
+                aplicar(actual, nuevo, backend);
+                actual = nuevo;
+            }
+
+            if (poller.poll(ESPERA_POLL_MS) > 0) {
+                if (poller.pollin(0)) {
+                    EventosJFR.RecepcionZMQ evRecepcion = new EventosJFR.RecepcionZMQ();
+                    evRecepcion.begin();
+                    byte[] carga = recibir(frontend, tramas);
+                    if (carga == null) {
+                        continue;
+                    }
+                    evRecepcion.registrar("frontend", carga);
+                    if (vencida(carga)) {
+                        vencidasEntrada.inc();
+                        responder(frontend, carga, ",Timeout: plazo vencido en healthcheck");
+                        continue;
+                    }
+                    long espera = limite.activo() ? limite.esperaMs(facultad(carga), programa(carga)) : 0;
+                    if (espera > 0) {
+                        responder(frontend, carga, ",Error: Límite de tasa excedido, reintente en " + espera + " ms");
+                        continue;
+                    }
+
+                    // Sin servidores sanos para leer, la consulta va al activo en lugar de quedarse en un DEALER
+                    boolean consulta = esConsulta(carga);
+                    int lectura = consulta ? elegirLectura(actual) : -1;
+                    if (lectura >= 0) {
+                        reenviar(lecturas[lectura], tramas);
+                        consultasEnCurso[lectura]++;
+                        consultasPorServidor[lectura].inc();
+                        anotarEnVuelo(carga, cortacircuitos[lectura]);
+                        continue;
+                    }
+                    if (!consulta && spool != null && (!actual.haySano() || spool.mensajes() > 0)) {
+                        String facultad = facultad(carga);
+                        if (!actual.haySano() || spool.pendiente(facultad)) {
+                            encolar(frontend, facultad, carga);
+                            continue;
+                        }
+                    }
+
+                    EventosJFR.EnvioZMQ evEnvio = new EventosJFR.EnvioZMQ();
+                    evEnvio.begin();
+                    reenviar(backend, tramas);
+                    evEnvio.registrar("backend", carga);
+                    reenviadas.inc();
+                    anotarEnVuelo(carga, cortacircuitosPorDireccion.get(actual.escrituras));
+                    logReenvio.log("ðŸ“¤ Mensaje reenviado al servidor: {}", carga);
+                }
+
+                if (poller.pollin(1)) {
+                    EventosJFR.RecepcionZMQ evRecepcion = new EventosJFR.RecepcionZMQ();
+                    evRecepcion.begin();
+                    byte[] reply = recibir(backend, tramas);
+                    if (reply == null) {
+                        continue;
+                    }
+                    evRecepcion.registrar("backend", reply);
+
+                    EventosJFR.EnvioZMQ evEnvio = new EventosJFR.EnvioZMQ();
+                    evEnvio.begin();
+                    reenviar(frontend, tramas);
+                    evEnvio.registrar("frontend", reply);
+                    registrarRespuesta(reply);
+                    // El payload se decodifica en el hilo del logger, y solo si el evento pasa los filtros
+                    logRespuesta.log("ðŸ“¬ Respuesta enviada a DepartmentSchool: {}", reply);
+                }
+
+                for (int i = 0; i < lecturas.length; i++) {
+                    byte[] reply;
+                    if (poller.pollin(2 + i) && (reply = recibir(lecturas[i], tramas)) != null) {
+                        reenviar(frontend, tramas);
+                        if (consultasEnCurso[i] > 0) {
+                            consultasEnCurso[i]--;
+                        }
+                        anotarRespuesta(reply);
+                    }
+                }
+            }
+
+            if (drena) {
+                drenar(backend, actual);
+                if (System.nanoTime() - ultimoForzado > FORZADO_SPOOL_NS) {
+                    spool.forzar();
+                    ultimoForzado = System.nanoTime();
+                }
+            }
+
+            if (System.nanoTime() - ultimaRevision > REVISION_SLO_NS) {
+                revisarSinRespuesta();
+                ultimaRevision = System.nanoTime();
+            }
+
+            if (System.nanoTime() - ultimaLimpieza > EXPIRACION_EN_VUELO_NS) {
+                purgarExpiradas();
+                ultimaLimpieza = System.nanoTime();
+            }
+        }
+    }
+
+    /** Lleva los sockets propios de la foto anterior a la nueva. */
+    private void aplicar(EstadoSalud antes, EstadoSalud ahora, ZMQ.Socket backend) {
+        if (!antes.escrituras.equals(ahora.escrituras)) {
+            backend.disconnect(antes.escrituras);
+            backend.connect(ahora.escrituras);
+        }
+        // Lo que un servidor caído tenía en curso ya no va a volver
+        for (int i = 0; i < servidores.length; i++) {
+            if (!ahora.lecturas.containsKey(servidores[i])) {
+                consultasEnCurso[i] = 0;
+            }
+        }
+    }
+
+    /** Guarda el mensaje en el spool y responde de inmediato con el mismo sobre. */
+    private void encolar(ZMQ.Socket frontend, String facultad, byte[] carga) {
+        responder(frontend, carga, spool.guardar(facultad, tramas)
+                ? ",Encolada: sin servidores disponibles, se enviará cuando vuelva el servicio"
+                : ",Error: No hay servidores disponibles y la solicitud no cabe en la cola en disco");
+    }
+
+    /** Responde al mensaje en "tramas" con el mismo sobre, sin pasarlo al servidor. */
+    private void responder(ZMQ.Socket frontend, byte[] carga, String respuesta) {
+        String requestId = requestId(carga);
+        tramas.set(tramas.size() - 1, new Msg(((requestId != null ? requestId : "Error") + respuesta).getBytes(ZMQ.CHARSET)));
+        reenviar(frontend, tramas);
+    }
+
+    /**
+     * Reenvía lo guardado en el spool a lo sumo a spool.drenadoPorSegundo mensajes por segundo
+     * (cubeta de fichas de un segundo), solo mientras haya un servidor sano según un sondeo real:
+     * la foto inicial supone sano al primario, y lo enviado a un servidor que resulta caído se
+     * pierde al desconectarlo.
+     */
+    private void drenar(ZMQ.Socket backend, EstadoSalud estado) {
+        long ahora = System.nanoTime();
+        if (spool.mensajes() == 0 || !estado.verificado || !estado.haySano()) {
+            ultimoDrenado = ahora;
+            fichasDrenado = 0;
+            return;
+        }
+        fichasDrenado = Math.min(spool.drenadoPorSegundo,
+                fichasDrenado + (ahora - ultimoDrenado) / 1e9 * spool.drenadoPorSegundo);
+        ultimoDrenado = ahora;
+        while (fichasDrenado >= 1) {
+            byte[][] mensaje = spool.tomar();
+            if (mensaje == null) {
+                return;
+            }
+            if (vencida(mensaje[mensaje.length - 1])) {
+                vencidasSpool.inc();
+                continue;
+            }
+            for (int i = 0; i < mensaje.length; i++) {
+                backend.send(mensaje[i], i < mensaje.length - 1 ? ZMQ.SNDMORE : 0);
+            }
+            reenviadas.inc();
+            anotarEnVuelo(mensaje[mensaje.length - 1], cortacircuitosPorDireccion.get(estado.escrituras));
+            fichasDrenado--;
+        }
+    }
+
+    /**
+     * Servidor para una consulta: de dos servidores sanos tomados al azar, el de menor costo
+     * estimado (ver CargaServidor.costo). Con dos servidores equivale a elegir siempre el menos
+     * cargado. -1 si no hay ninguno sano y con el cortacircuitos cerrado o medio abierto.
+     */
+    private int elegirLectura(EstadoSalud estado) {
+        int cantidad = 0;
+        for (int i = 0; i < servidores.length; i++) {
+            if (estado.lecturas.containsKey(servidores[i]) && cortacircuitos[i].disponible()) {
+                sanos[cantidad++] = i;
+            }
+        }
+        if (cantidad <= 1) {
+            return cantidad == 1 ? sanos[0] : -1;
+        }
+        ThreadLocalRandom azar = ThreadLocalRandom.current();
+        int a = azar.nextInt(cantidad);
+        int b = azar.nextInt(cantidad - 1);
+        if (b >= a) {
+            b++;
+        }
+        int primero = sanos[a];
+        int segundo = sanos[b];
+        double costoPrimero = estado.lecturas.get(servidores[primero]).costo(consultasEnCurso[primero]);
+        double costoSegundo = estado.lecturas.get(servidores[segundo]).costo(consultasEnCurso[segundo]);
+        return costoPrimero <= costoSegundo ? primero : segundo;
+    }
+
+    /**
+     * Recibe un mensaje multiparte completo en "tramas" y devuelve los bytes de la última trama
+     * (la carga), o null si la recepción se interrumpió.
+     *
+     * Se usan los zmq.Msg del socket tal como llegan: sus buffers los asigna una sola vez el
+     * decodificador y reenviar() los entrega sin copiarlos, y data() devuelve el arreglo de la
+     * trama sin copiarlo. Las tramas de sobre (identidades, delimitador y cualquier trama extra)
+     * pasan intactas, sean cuantas sean.
+     */
+    private static byte[] recibir(ZMQ.Socket socket, List<Msg> tramas) {
+        SocketBase base = socket.base();
+        Msg trama;
+        do {
+            trama = base.recv(0);
+            if (trama == null) {
+                tramas.clear();
+                return null;
+            }
+            tramas.add(trama);
+        } while (trama.hasMore());
+        return trama.data();
+    }
+
+    /** Envía las tramas recibidas por recibir() tal cual y deja la lista vacía para el siguiente mensaje. */
+    private static void reenviar(ZMQ.Socket socket, List<Msg> tramas) {
+        SocketBase base = socket.base();
+        int ultima = tramas.size() - 1;
+        for (int i = 0; i <= ultima; i++) {
+            base.send(tramas.get(i), i < ultima ? ZMQ.SNDMORE : 0);
+        }
+        tramas.clear();
+    }
+
+    // requestId,CONSULTA,... sin decodificar el resto del mensaje
+    private static boolean esConsulta(byte[] carga) {
+        int coma = indiceComa(carga);
+        if (coma + 1 + CONSULTA.length > carga.length) {
+            return false;
+        }
+        for (int i = 0; i < CONSULTA.length; i++) {
+            if (carga[coma + 1 + i] != CONSULTA[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Solo se decodifica el requestId (hasta la primera coma), no el payload completo
+    private static String requestId(byte[] carga) {
+        int coma = indiceComa(carga);
+        return coma > 0 && coma < carga.length ? new String(carga, 0, coma, ZMQ.CHARSET) : null;
+    }
+
+    /**
+     * Facultad de la solicitud: tercer campo en las asignaciones (requestId,semestre,facultad,...)
+     * y cuarto con un comando (requestId,LIBERAR,semestre,facultad,...; igual CANCELAR, CONSULTA y
+     * STATS). STATUS no la lleva y queda "". Solo se decodifica hasta ese campo.
+     */
+    private static String facultad(byte[] carga) {
+        return campoDesdeFacultad(carga, 0);
+    }
+
+    /**
+     * Programa de la solicitud: el campo que sigue a la facultad en las asignaciones, LIBERAR y
+     * CANCELAR. "" si el mensaje no lo lleva (STATUS, CONSULTA sin programa).
+     */
+    private static String programa(byte[] carga) {
+        return campoDesdeFacultad(carga, 1);
+    }
+
+    private static String campoDesdeFacultad(byte[] carga, int salto) {
+        int inicio = indiceComa(carga) + 1;
+        int fin = siguienteComa(carga, inicio);
+        if (inicio >= carga.length) {
+            return "";
+        }
+        boolean comando = true;
+        for (int i = inicio; i < fin && comando; i++) {
+            comando = carga[i] >= 'A' && carga[i] <= 'Z';
+        }
+        if (comando && fin - inicio == STATUS.length && igualEn(carga, inicio, STATUS)) {
+            return "";
+        }
+        for (int campo = (comando ? 3 : 2) + salto; campo > 1; campo--) {
+            if (fin >= carga.length) {
+                return "";
+            }
+            inicio = fin + 1;
+            fin = siguienteComa(carga, inicio);
+        }
+        return new String(carga, inicio, fin - inicio, ZMQ.CHARSET);
+    }
+
+    private static boolean igualEn(byte[] datos, int desde, byte[] patron) {
+        for (int i = 0; i < patron.length; i++) {
+            if (datos[desde + i] != patron[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int siguienteComa(byte[] carga, int desde) {
+        int coma = desde;
+        while (coma < carga.length && carga[coma] != ',') {
+            coma++;
+        }
+        return coma;
+    }
+
+    /** true si la carga termina en ",plazo=<epoch ms>" y ese instante ya pasó; se lee sin decodificarla. */
+    private static boolean vencida(byte[] carga) {
+        int inicio = carga.length;
+        long plazo = 0;
+        long escala = 1;
+        while (inicio > 0 && carga[inicio - 1] >= '0' && carga[inicio - 1] <= '9' && escala <= 1_000_000_000_000_000L) {
+            plazo += (carga[--inicio] - '0') * escala;
+            escala *= 10;
+        }
+        if (inicio == carga.length || inicio < PLAZO.length) {
+            return false;
+        }
+        for (int i = 0; i < PLAZO.length; i++) {
+            if (carga[inicio - PLAZO.length + i] != PLAZO[i]) {
+                return false;
+            }
+        }
+        return System.currentTimeMillis() >= plazo;
+    }
+
+    private static int indiceComa(byte[] carga) {
+        int coma = 0;
+        while (coma < carga.length && carga[coma] != ',') {
+            coma++;
+        }
+        return coma;
+    }
+
+    private void registrarRespuesta(byte[] reply) {
+        respondidas.inc();
+        long reenviado = anotarRespuesta(reply);
+        if (reenviado != 0) {
+            latencia.observarDesde(reenviado);
+        }
+        if (terminaCon(reply, APROBADA)) {
+            aprobadas.inc();
+        } else if (terminaCon(reply, DENEGADA)) {
+            denegadas.inc();
+        } else if (contiene(reply, TIMEOUT)) {
+            vencidas.inc();
+        } else if (contiene(reply, ERROR)) {
+            errores.inc();
+        } else {
+            otras.inc();
+        }
+    }
+
+    private static boolean terminaCon(byte[] datos, byte[] sufijo) {
+        int desde = datos.length - sufijo.length;
+        if (desde < 0) {
+            return false;
+        }
+        for (int i = 0; i < sufijo.length; i++) {
+            if (datos[desde + i] != sufijo[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean contiene(byte[] datos, byte[] patron) {
+        for (int i = 0; i + patron.length <= datos.length; i++) {
+            int j = 0;
+            while (j < patron.length && datos[i + j] == patron[j]) {
+                j++;
+            }
+            if (j == patron.length) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void anotarEnVuelo(byte[] carga, Cortacircuitos destino) {
+        String requestId = requestId(carga);
+        if (requestId != null) {
+            enVuelo.put(requestId, new EnCurso(System.nanoTime(), destino));
+        }
+    }
+
+    /**
+     * Saca la solicitud de las que esperan respuesta y anota el resultado en el cortacircuitos
+     * de su servidor (salvo que ya se haya anotado como sin respuesta). Devuelve el instante de
+     * reenvío, o 0 si la respuesta no corresponde a nada en vuelo.
+     */
+    private long anotarRespuesta(byte[] reply) {
+        String requestId = requestId(reply);
+        EnCurso enCurso = requestId != null ? enVuelo.remove(requestId) : null;
+        if (enCurso == null) {
+            return 0;
+        }
+        if (enCurso.destino != null && !enCurso.sinRespuesta) {
+            enCurso.destino.registrar(enCurso.reenviado,
+                    contiene(reply, ERROR_PROCESANDO) || contiene(reply, SATURADO));
+        }
+        return enCurso.reenviado;
+    }
+
+    /** Anota como lentas, una sola vez, las solicitudes que pasaron el SLO de su servidor sin respuesta. */
+    private void revisarSinRespuesta() {
+        long ahora = System.nanoTime();
+        for (EnCurso enCurso : enVuelo.values()) {
+            if (!enCurso.sinRespuesta && enCurso.destino != null
+                    && ahora - enCurso.reenviado > enCurso.destino.sloNs()) {
+                enCurso.sinRespuesta = true;
+                enCurso.destino.sinRespuesta(enCurso.reenviado);
+            }
+        }
+    }
+
+    private void purgarExpiradas() {
+        long limite = System.nanoTime() - EXPIRACION_EN_VUELO_NS;
+        Iterator<EnCurso> it = enVuelo.values().iterator();
+        while (it.hasNext()) {
+            if (it.next().reenviado < limite) {
+                it.remove();
+            }
+        }
+    }
+
+    /** Una solicitud reenviada que espera respuesta. */
+    private static final class EnCurso {
+
+        final long reenviado;
+        final Cortacircuitos destino;
+        boolean sinRespuesta;   // ya se anotó como lenta por pasar el SLO
+
+        EnCurso(long reenviado, Cortacircuitos destino) {
+            this.reenviado = reenviado;
+            this.destino = destino;
+        }
+    }
+}
@@ -0,0 +1,264 @@
+package com.healthcheck;
+
+import zmq.Msg;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Cola en disco para las solicitudes que llegan mientras ningún servidor está sano.
+ *
+ * Es un anillo de -Dspool.segmentos archivos de -Dspool.segmentoBytes mapeados en memoria
+ * dentro de -Dspool.directorio (sin esa propiedad no hay spool). Cada registro guarda las
+ * tramas completas del mensaje, la facultad y el instante en que se encoló:
+ *   int largo | long encolado | short largoFacultad | facultad | short tramas | (int largo | bytes)*
+ * Los dos short se leen sin signo. Una facultad de más de 255 bytes o un mensaje de más de
+ * 65535 tramas no se guardan: vienen del cliente y no deben poder dejar un registro ilegible.
+ * Un largo 0 marca el fin de los datos y -1 el salto al segmento siguiente. El largo se escribe
+ * al final, así que un registro a medio escribir se lee como fin de datos. La posición de
+ * lectura vive en spool.cab; la de escritura y los conteos se reconstruyen al abrir.
+ *
+ * El orden es FIFO global, y mientras una facultad tenga mensajes en el spool sus mensajes
+ * nuevos también van al spool: así no se adelantan a los viejos. Todos los métodos que tocan
+ * el anillo son synchronized porque varios reenviadores pueden encolar a la vez.
+ */
+final class Spool {
+
+    private static final int FIN = 0;
+    private static final int SALTO = -1;
+    private static final int MAXIMO_FACULTAD = 255;
+    private static final int MAXIMO_TRAMAS = 0xFFFF;
+
+    private final MappedByteBuffer[] segmentos;
+    private final boolean[] sucios;
+    private final MappedByteBuffer cabecera;
+    private final int tamanoSegmento;
+    final int drenadoPorSegundo;
+
+    private int segLectura;
+    private int offLectura;
+    private int segEscritura;
+    private int offEscritura;
+    private volatile int mensajes;
+    private long bytes;
+    private final Map<String, Integer> porFacultad = new HashMap<>();
+
+    private final Metricas.Contador encolados = Metricas.contador("healthcheck_spool_encolados_total",
+            "Solicitudes guardadas en el spool por no haber servidores sanos");
+    private final Metricas.Contador drenados = Metricas.contador("healthcheck_spool_drenados_total",
+            "Solicitudes del spool reenviadas al volver un servidor");
+    private final Metricas.Contador rechazados = Metricas.contador("healthcheck_spool_rechazados_total",
+            "Solicitudes rechazadas por spool lleno");
+    private final Metricas.Contador invalidos = Metricas.contador("healthcheck_spool_invalidos_total",
+            "Solicitudes no guardadas en el spool por facultad demasiado larga o demasiadas tramas");
+
+    /** El spool configurado en -Dspool.directorio, o null si no hay. */
+    static Spool abrir() throws IOException {
+        String directorio = System.getProperty("spool.directorio");
+        if (directorio == null || directorio.isBlank()) {
+            return null;
+        }
+        return new Spool(new File(directorio), Integer.getInteger("spool.segmentos", 16),
+                Integer.getInteger("spool.segmentoBytes", 4 * 1024 * 1024),
+                Integer.getInteger("spool.drenadoPorSegundo", 200));
+    }
+
+    private Spool(File directorio, int cantidad, int tamanoSegmento, int drenadoPorSegundo) throws IOException {
+        if (!directorio.isDirectory() && !directorio.mkdirs()) {
+            throw new IOException("No se pudo crear el directorio del spool " + directorio);
+        }
+        this.tamanoSegmento = tamanoSegmento;
+        this.drenadoPorSegundo = Math.max(1, drenadoPorSegundo);
+        this.segmentos = new MappedByteBuffer[Math.max(2, cantidad)];
+        this.sucios = new boolean[segmentos.length];
+        for (int i = 0; i < segmentos.length; i++) {
+            segmentos[i] = mapear(new File(directorio, String.format("spool-%02d.seg", i)), tamanoSegmento);
+        }
+        cabecera = mapear(new File(directorio, "spool.cab"), 8);
+        segLectura = Math.floorMod(cabecera.getInt(0), segmentos.length);
+        offLectura = Math.max(0, Math.min(cabecera.getInt(4), tamanoSegmento - 4));
+        recuperar();
+
+        Metricas.indicador("healthcheck_spool_mensajes", "Solicitudes esperando en el spool", () -> mensajes);
+        Metricas.indicador("healthcheck_spool_bytes", "Bytes ocupados por las solicitudes del spool", this::bytes);
+        Metricas.indicador("healthcheck_spool_antiguedad_segundos", "Edad de la solicitud más vieja del spool",
+                this::antiguedadSegundos);
+        Metricas.indicador("healthcheck_spool_drenado_limite_por_segundo",
+                "Solicitudes por segundo que se reenvían desde el spool", () -> this.drenadoPorSegundo);
+        System.out.println("Spool en " + directorio + ": " + mensajes + " solicitudes pendientes");
+    }
+
+    private static MappedByteBuffer mapear(File archivo, int tamano) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(archivo, "rw")) {
+            if (raf.length() != tamano) {
+                raf.setLength(tamano);
+            }
+            // El mapeo sigue válido después de cerrar el archivo
+            return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, tamano);
+        }
+    }
+
+    /** Recorre los registros desde la posición de lectura para hallar la de escritura y los conteos. */
+    private void recuperar() {
+        int seg = segLectura;
+        int off = offLectura;
+        int saltos = 0;
+        while (saltos < segmentos.length) {
+            int largo = segmentos[seg].getInt(off);
+            if (largo == SALTO) {
+                seg = (seg + 1) % segmentos.length;
+                off = 0;
+                saltos++;
+                continue;
+            }
+            if (largo <= 0 || off + 4 + largo > tamanoSegmento - 4) {
+                break;
+            }
+            MappedByteBuffer segmento = segmentos[seg];
+            String facultad = leerFacultad(segmento, off + 4 + 8);
+            porFacultad.merge(facultad, 1, Integer::sum);
+            mensajes++;
+            bytes += largo;
+            off += 4 + largo;
+        }
+        segEscritura = seg;
+        offEscritura = off;
+        segmentos[seg].putInt(off, FIN);
+    }
+
+    private static String leerFacultad(MappedByteBuffer segmento, int posicion) {
+        byte[] facultad = new byte[Short.toUnsignedInt(segmento.getShort(posicion))];
+        segmento.get(posicion + 2, facultad);
+        return new String(facultad, StandardCharsets.UTF_8);
+    }
+
+    int mensajes() {
+        return mensajes;
+    }
+
+    /** true si la facultad tiene mensajes esperando: los nuevos deben ir detrás de ellos. */
+    synchronized boolean pendiente(String facultad) {
+        return porFacultad.containsKey(facultad);
+    }
+
+    /** Guarda las tramas del mensaje; false si el spool está lleno o el registro no cabe en el formato. */
+    synchronized boolean guardar(String facultad, List<Msg> tramas) {
+        byte[] nombre = facultad.getBytes(StandardCharsets.UTF_8);
+        if (nombre.length > MAXIMO_FACULTAD || tramas.size() > MAXIMO_TRAMAS) {
+            invalidos.inc();
+            return false;
+        }
+        int largo = 8 + 2 + nombre.length + 2;
+        for (Msg trama : tramas) {
+            largo += 4 + trama.size();
+        }
+        // Cada registro deja lugar para el marcador (FIN o SALTO) que va detrás
+        if (4 + largo + 4 > tamanoSegmento) {
+            rechazados.inc();
+            return false;
+        }
+        if (offEscritura + 4 + largo + 4 > tamanoSegmento) {
+            int siguiente = (segEscritura + 1) % segmentos.length;
+            if (siguiente == segLectura) {
+                rechazados.inc();
+                return false;
+            }
+            segmentos[siguiente].putInt(0, FIN);
+            segmentos[segEscritura].putInt(offEscritura, SALTO);
+            sucios[segEscritura] = true;
+            segEscritura = siguiente;
+            offEscritura = 0;
+        }
+
+        MappedByteBuffer segmento = segmentos[segEscritura];
+        int posicion = offEscritura + 4;
+        segmento.putLong(posicion, System.currentTimeMillis());
+        posicion += 8;
+        segmento.putShort(posicion, (short) nombre.length);
+        segmento.put(posicion + 2, nombre);
+        posicion += 2 + nombre.length;
+        segmento.putShort(posicion, (short) tramas.size());
+        posicion += 2;
+        for (Msg trama : tramas) {
+            segmento.putInt(posicion, trama.size());
+            segmento.put(posicion + 4, trama.data());
+            posicion += 4 + trama.size();
+        }
+        segmento.putInt(posicion, FIN);
+        segmento.putInt(offEscritura, largo);
+        sucios[segEscritura] = true;
+
+        offEscritura = posicion;
+        porFacultad.merge(facultad, 1, Integer::sum);
+        bytes += largo;
+        mensajes++;
+        encolados.inc();
+        return true;
+    }
+
+    /** Saca el mensaje más viejo (sus tramas), o null si no hay. */
+    synchronized byte[][] tomar() {
+        if (mensajes == 0) {
+            return null;
+        }
+        if (segmentos[segLectura].getInt(offLectura) == SALTO) {
+            segLectura = (segLectura + 1) % segmentos.length;
+            offLectura = 0;
+        }
+        MappedByteBuffer segmento = segmentos[segLectura];
+        int largo = segmento.getInt(offLectura);
+        String facultad = leerFacultad(segmento, offLectura + 4 + 8);
+        int posicion = offLectura + 4 + 8 + 2 + Short.toUnsignedInt(segmento.getShort(offLectura + 4 + 8));
+        byte[][] tramas = new byte[Short.toUnsignedInt(segmento.getShort(posicion))][];
+        posicion += 2;
+        for (int i = 0; i < tramas.length; i++) {
+            tramas[i] = new byte[segmento.getInt(posicion)];
+            segmento.get(posicion + 4, tramas[i]);
+            posicion += 4 + tramas[i].length;
+        }
+
+        offLectura += 4 + largo;
+        cabecera.putInt(0, segLectura);
+        cabecera.putInt(4, offLectura);
+        porFacultad.computeIfPresent(facultad, (f, n) -> n > 1 ? n - 1 : null);
+        bytes -= largo;
+        mensajes--;
+        drenados.inc();
+        return tramas;
+    }
+
+    /** Baja a disco los segmentos modificados; lo llama periódicamente el reenviador que drena. */
+    synchronized void forzar() {
+        for (int i = 0; i < segmentos.length; i++) {
+            if (sucios[i]) {
+                segmentos[i].force();
+                sucios[i] = false;
+            }
+        }
+        cabecera.force();
+    }
+
+    private synchronized double bytes() {
+        return bytes;
+    }
+
+    private synchronized double antiguedadSegundos() {
+        if (mensajes == 0) {
+            return 0;
+        }
+        int seg = segLectura;
+        int off = offLectura;
+        if (segmentos[seg].getInt(off) == SALTO) {
+            seg = (seg + 1) % segmentos.length;
+            off = 0;
+        }
+        return (System.currentTimeMillis() - segmentos[seg].getLong(off + 4)) / 1000.0;
+    }
+}
@@ -0,0 +1,118 @@
+package com.backupserver;
+
+import org.zeromq.SocketType;
+import org.zeromq.ZContext;
+import org.zeromq.ZFrame;
+import org.zeromq.ZMQ;
+import org.zeromq.ZMQ.Poller;
+import org.zeromq.ZMsg;
+
+import java.util.concurrent.ExecutorService;
+import java.util.function.Function;
+
+/**
+ * Lado trabajador del protocolo de BrokerZeroMQ: se registra con LISTO y su capacidad,
+ * intercambia latidos y procesa las solicitudes en el pool del servidor.
+ *
+ * El DEALER hacia el broker solo lo usa este hilo; los hilos del pool le devuelven las
+ * respuestas por un PUSH inproc. Si el broker deja de enviar latidos se cierra el socket,
+ * se abre uno nuevo y se vuelve a enviar LISTO.
+ */
+public class TrabajadorBroker implements Runnable {
+
+    // Protocolo con BrokerZeroMQ
+    static final String LISTO = "LISTO";
+    static final String LATIDO = "LATIDO";
+    static final String SOLICITUD = "SOLICITUD";
+    static final String RESPUESTA = "RESPUESTA";
+    static final long INTERVALO_LATIDO_MS = 1000;
+    static final int LATIDOS_PERDIDOS = 3;
+
+    private static final String RESPUESTAS = "inproc://respuestas-broker";
+
+    private final String direccion;
+    private final int capacidad;
+    private final ExecutorService pool;
+    private final Function<String, String> procesar;
+
+    public TrabajadorBroker(String direccion, int capacidad, ExecutorService pool, Function<String, String> procesar) {
+        this.direccion = direccion;
+        this.capacidad = capacidad;
+        this.pool = pool;
+        this.procesar = procesar;
+    }
+
+    @Override
+    public void run() {
+        try (ZContext context = new ZContext()) {
+            ZMQ.Socket respuestas = context.createSocket(SocketType.PULL);
+            respuestas.bind(RESPUESTAS);
+            ThreadLocal<ZMQ.Socket> salidas = ThreadLocal.withInitial(() -> {
+                ZMQ.Socket salida = context.createSocket(SocketType.PUSH);
+                salida.connect(RESPUESTAS);
+                return salida;
+            });
+
+            ZMQ.Socket broker = conectar(context);
+            long vence = System.currentTimeMillis() + INTERVALO_LATIDO_MS * LATIDOS_PERDIDOS;
+            long proximoLatido = System.currentTimeMillis() + INTERVALO_LATIDO_MS;
+
+            Poller poller = context.createPoller(2);
+            int indiceRespuestas = poller.register(respuestas, Poller.POLLIN);
+            int indiceBroker = poller.register(broker, Poller.POLLIN);
+
+            while (!Thread.currentThread().isInterrupted()) {
+                poller.poll(INTERVALO_LATIDO_MS);
+
+                if (poller.pollin(indiceBroker)) {
+                    ZMsg msg = ZMsg.recvMsg(broker);
+                    vence = System.currentTimeMillis() + INTERVALO_LATIDO_MS * LATIDOS_PERDIDOS;
+                    if (SOLICITUD.equals(msg.popString())) {
+                        ZFrame cliente = msg.pop();
+                        msg.pop(); // frame vacío
+                        String solicitud = msg.popString();
+                        pool.execute(() -> {
+                            ZMsg respuesta = new ZMsg();
+                            respuesta.add(cliente);
+                            respuesta.add(procesar.apply(solicitud));
+                            respuesta.send(salidas.get());
+                        });
+                    }
+                    msg.destroy();
+                }
+                if (poller.pollin(indiceRespuestas)) {
+                    ZMsg respuesta = ZMsg.recvMsg(respuestas); // cliente, respuesta
+                    ZFrame cuerpo = respuesta.removeLast();
+                    respuesta.add("");
+                    respuesta.add(cuerpo);
+                    respuesta.push(RESPUESTA);
+                    respuesta.send(broker);
+                }
+
+                long ahora = System.currentTimeMillis();
+                if (ahora > vence) {
+                    System.err.println("⚠️ Sin latidos del broker, reconectando a " + direccion);
+                    poller.unregister(broker);
+                    broker.close();
+                    broker = conectar(context);
+                    indiceBroker = poller.register(broker, Poller.POLLIN);
+                    vence = ahora + INTERVALO_LATIDO_MS * LATIDOS_PERDIDOS;
+                }
+                if (ahora >= proximoLatido) {
+                    broker.send(LATIDO);
+                    proximoLatido = ahora + INTERVALO_LATIDO_MS;
+                }
+            }
+        }
+    }
+
+    private ZMQ.Socket conectar(ZContext context) {
+        ZMQ.Socket broker = context.createSocket(SocketType.DEALER);
+        broker.setLinger(0);
+        broker.connect(direccion);
+        broker.send(LISTO, ZMQ.SNDMORE);
+        broker.send(String.valueOf(capacidad));
+        System.out.println("Trabajador registrado en el broker " + direccion + " (capacidad " + capacidad + ")");
+        return broker;
+    }
+}
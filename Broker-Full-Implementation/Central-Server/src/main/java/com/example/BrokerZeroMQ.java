@@ -1,46 +1,237 @@
 package com.example;
 
+import org.zeromq.SocketType;
 import org.zeromq.ZContext;
+import org.zeromq.ZFrame;
 import org.zeromq.ZMQ;
 import org.zeromq.ZMQ.Poller;
+import org.zeromq.ZMsg;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Broker de servicio entre facultades (clientes, puerto 5555) y servidores (trabajadores).
+ *
+ * Los trabajadores se conectan al puerto -Dbroker.puertoTrabajadores (5557 por defecto; el
+ * 5556 es del ServidorCentral) y hablan este protocolo, siempre detrás de la identidad que
+ * agrega el ROUTER:
+ *   trabajador -> broker: LISTO capacidad | LATIDO | RESPUESTA cliente "" respuesta
+ *   broker -> trabajador: SOLICITUD cliente "" solicitud | LATIDO
+ *
+ * Cada solicitud va al trabajador con capacidad libre que lleva más tiempo sin recibir una
+ * (LRU). Un trabajador que pasa LATIDOS_PERDIDOS intervalos sin dar señales se descarta y
+ * sus solicitudes en curso reciben error. Si no hay ningún trabajador vivo, el cliente
+ * recibe error de inmediato; si todos están llenos, la solicitud espera en una cola acotada.
+ */
 public class BrokerZeroMQ {
 
-    public static void main(String[] args) {
-        try (ZContext context = new ZContext()) {
-            ZMQ.Socket frontend = context.createSocket(ZMQ.ROUTER); // para clientes (facultades)
-            ZMQ.Socket backend = context.createSocket(ZMQ.DEALER);  // para workers (servidor central)
+    private static final int PUERTO_CLIENTES = 5555;
+    private static final int PUERTO_TRABAJADORES = Integer.getInteger("broker.puertoTrabajadores", 5557);
+    private static final int MAX_EN_ESPERA = Integer.getInteger("broker.cola", 1000);
 
-            frontend.bind("tcp://*:5555"); // Clientes se conectan aquí
-            backend.bind("tcp://*:5556");  // Workers se conectan aquí
+    private final Map<String, Trabajador> trabajadores = new HashMap<>();
+    private final ArrayDeque<Trabajador> disponibles = new ArrayDeque<>(); // el primero es el menos usado
+    private final ArrayDeque<ZMsg> enEspera = new ArrayDeque<>();
+    private ZMQ.Socket frontend;
+    private ZMQ.Socket backend;
 
-            System.out.println("🧭 Broker iniciado en puertos 5555 (clientes) y 5556 (workers)...");
+    public static void main(String[] args) {
+        new BrokerZeroMQ().iniciar();
+    }
+
+    private void iniciar() {
+        try (ZContext context = new ZContext()) {
+            frontend = context.createSocket(SocketType.ROUTER); // para clientes (facultades)
+            backend = context.createSocket(SocketType.ROUTER);  // para trabajadores (servidores)
+            frontend.bind("tcp://*:" + PUERTO_CLIENTES);
+            backend.bind("tcp://*:" + PUERTO_TRABAJADORES);
+            System.out.println("🧭 Broker iniciado en puertos " + PUERTO_CLIENTES + " (clientes) y "
+                    + PUERTO_TRABAJADORES + " (trabajadores)...");
 
             Poller poller = context.createPoller(2);
-            poller.register(frontend, Poller.POLLIN);
             poller.register(backend, Poller.POLLIN);
+            poller.register(frontend, Poller.POLLIN);
+            long proximoLatido = System.currentTimeMillis() + TrabajadorBroker.INTERVALO_LATIDO_MS;
 
             while (!Thread.currentThread().isInterrupted()) {
-                poller.poll();
-
+                poller.poll(TrabajadorBroker.INTERVALO_LATIDO_MS);
                 if (poller.pollin(0)) {
-                    byte[] clientId = frontend.recv(0);
-                    byte[] empty = frontend.recv(0);
-                    byte[] request = frontend.recv(0);
+                    atenderTrabajador(ZMsg.recvMsg(backend));
+                }
+                if (poller.pollin(1)) {
+                    ZMsg solicitud = ZMsg.recvMsg(frontend);
+                    if (!disponibles.isEmpty()) {
+                        despachar(solicitud);
+                    } else if (trabajadores.isEmpty() || enEspera.size() >= MAX_EN_ESPERA) {
+                        rechazar(solicitud, trabajadores.isEmpty()
+                                ? "No hay servidores disponibles" : "Servidores saturados, intente más tarde");
+                    } else {
+                        enEspera.add(solicitud);
+                    }
+                }
+                while (!enEspera.isEmpty() && !disponibles.isEmpty()) {
+                    despachar(enEspera.poll());
+                }
 
-                    backend.send(clientId, ZMQ.SNDMORE);
-                    backend.send("", ZMQ.SNDMORE);
-                    backend.send(request);
+                long ahora = System.currentTimeMillis();
+                if (ahora >= proximoLatido) {
+                    for (Trabajador trabajador : trabajadores.values()) {
+                        enviarATrabajador(trabajador, TrabajadorBroker.LATIDO);
+                    }
+                    descartarVencidos(ahora);
+                    proximoLatido = ahora + TrabajadorBroker.INTERVALO_LATIDO_MS;
                 }
+            }
+        }
+    }
 
-                if (poller.pollin(1)) {
-                    byte[] workerId = backend.recv(0);
-                    byte[] empty = backend.recv(0);
-                    byte[] response = backend.recv(0);
+    private void atenderTrabajador(ZMsg msg) {
+        ZFrame identidad = msg.pop();
+        String clave = identidad.strhex();
+        String comando = msg.popString();
+        Trabajador trabajador = trabajadores.get(clave);
+
+        if (TrabajadorBroker.LISTO.equals(comando)) {
+            int capacidad = capacidad(msg.popString());
+            if (capacidad <= 0) {
+                // Un par mal formado en el puerto de trabajadores no puede tumbar el broker
+                System.err.println("⚠️ LISTO sin capacidad válida de " + clave + ", se ignora");
+                msg.destroy();
+                identidad.destroy();
+                return;
+            }
+            if (trabajador != null) {
+                // Se reconectó: lo que tenía en curso ya no va a responder
+                descartar(trabajador, "El servidor que atendía la solicitud se reinició");
+            }
+            trabajador = new Trabajador(identidad.getData(), clave, capacidad);
+            trabajadores.put(clave, trabajador);
+            disponibles.addLast(trabajador);
+            trabajador.disponible = true;
+            System.out.println("✅ Trabajador " + clave + " listo (capacidad " + trabajador.capacidad + ")");
+        } else if (trabajador == null) {
+            // Mensaje de un trabajador descartado o desconocido: se ignora hasta que vuelva a enviar LISTO
+            msg.destroy();
+            identidad.destroy();
+            return;
+        } else if (TrabajadorBroker.RESPUESTA.equals(comando)) {
+            if (msg.size() < 3) {
+                // Sin sobre cliente "" respuesta no hay a quién contestar
+                System.err.println("⚠️ RESPUESTA mal formada de " + clave + ", se ignora");
+                msg.destroy();
+                identidad.destroy();
+                return;
+            }
+            trabajador.terminar(msg.getFirst().getData());
+            if (!trabajador.disponible) {
+                disponibles.addLast(trabajador);
+                trabajador.disponible = true;
+            }
+            msg.send(frontend); // cliente, "", respuesta
+        }
+        trabajador.vence = System.currentTimeMillis() + TrabajadorBroker.INTERVALO_LATIDO_MS * TrabajadorBroker.LATIDOS_PERDIDOS;
+        msg.destroy();
+        identidad.destroy();
+    }
+
+    /** Capacidad anunciada en LISTO; -1 si falta o no es un número. */
+    private static int capacidad(String trama) {
+        if (trama == null) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(trama.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /** Envía la solicitud (cliente, "", solicitud) al trabajador disponible menos usado. */
+    private void despachar(ZMsg solicitud) {
+        Trabajador trabajador = disponibles.pollFirst();
+        trabajador.enCurso.add(solicitud.getFirst().getData());
+        if (trabajador.enCurso.size() < trabajador.capacidad) {
+            disponibles.addLast(trabajador);
+        } else {
+            trabajador.disponible = false;
+        }
+        solicitud.push(TrabajadorBroker.SOLICITUD);
+        solicitud.push(trabajador.identidad);
+        solicitud.send(backend);
+    }
+
+    private void descartarVencidos(long ahora) {
+        List<Trabajador> vencidos = new ArrayList<>();
+        for (Trabajador trabajador : trabajadores.values()) {
+            if (trabajador.vence < ahora) {
+                vencidos.add(trabajador);
+            }
+        }
+        for (Trabajador trabajador : vencidos) {
+            System.out.println("⚠️ Trabajador " + trabajador.clave + " sin latidos, descartado");
+            descartar(trabajador, "El servidor que atendía la solicitud dejó de responder");
+        }
+        if (trabajadores.isEmpty()) {
+            while (!enEspera.isEmpty()) {
+                rechazar(enEspera.poll(), "No hay servidores disponibles");
+            }
+        }
+    }
+
+    private void descartar(Trabajador trabajador, String motivo) {
+        trabajadores.remove(trabajador.clave);
+        disponibles.remove(trabajador);
+        for (byte[] cliente : trabajador.enCurso) {
+            ZMsg error = new ZMsg();
+            error.add(cliente);
+            error.add("");
+            error.add("Error," + motivo);
+            error.send(frontend);
+        }
+        trabajador.enCurso.clear();
+    }
+
+    /** Responde al cliente con error sin pasar por ningún trabajador. */
+    private void rechazar(ZMsg solicitud, String motivo) {
+        String cuerpo = solicitud.getLast().getString(ZMQ.CHARSET);
+        int coma = cuerpo.indexOf(',');
+        solicitud.removeLast().destroy();
+        solicitud.add((coma > 0 ? cuerpo.substring(0, coma) : "Error") + ",Error: " + motivo);
+        solicitud.send(frontend);
+    }
+
+    private void enviarATrabajador(Trabajador trabajador, String comando) {
+        backend.send(trabajador.identidad, ZMQ.SNDMORE);
+        backend.send(comando);
+    }
+
+    private static final class Trabajador {
+
+        final byte[] identidad;
+        final String clave;
+        final int capacidad;
+        final List<byte[]> enCurso = new ArrayList<>(); // identidades de clientes esperando respuesta
+        boolean disponible;
+        long vence = System.currentTimeMillis() + TrabajadorBroker.INTERVALO_LATIDO_MS * TrabajadorBroker.LATIDOS_PERDIDOS;
+
+        Trabajador(byte[] identidad, String clave, int capacidad) {
+            this.identidad = identidad;
+            this.clave = clave;
+            this.capacidad = Math.max(1, capacidad);
+        }
 
-                    frontend.send(workerId, ZMQ.SNDMORE);
-                    frontend.send("", ZMQ.SNDMORE);
-                    frontend.send(response);
+        void terminar(byte[] cliente) {
+            Iterator<byte[]> it = enCurso.iterator();
+            while (it.hasNext()) {
+                if (Arrays.equals(it.next(), cliente)) {
+                    it.remove();
+                    return;
                 }
             }
         }
@@ -60,6 +60,20 @@ public class ServidorCentral {
 
 
 
+        // Con -Dbroker.direccion=tcp://<broker>:5557 además se registra como trabajador de BrokerZeroMQ
+
+        String broker = System.getProperty("broker.direccion");
+
+        if (broker != null) {
+
+            new Thread(new TrabajadorBroker(broker, Integer.getInteger("broker.capacidad", 10), pool,
+
+                    ServidorCentral::procesarSolicitud), "trabajador-broker").start();
+
+        }
+
+
+
         try (ZContext context = new ZContext()) {
 
             ZMQ.Socket worker = context.createSocket(SocketType.DEALER);